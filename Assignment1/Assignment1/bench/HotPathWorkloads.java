@@ -0,0 +1,204 @@
+import benchmarks.Workload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The workloads of {@code benchmarks.HotPathBenchmarks}, over the hot paths of the ScroogeCoin
+ * handlers: {@code isValidTx}, {@code TxHandler.handleTxs}, {@code MaxFeeTxHandler.handleTxs},
+ * copying and looking up a {@code UTXOPool}, and {@code Transaction.getRawTx} and
+ * {@code getRawDataToSign}.
+ *
+ * The data of a workload is generated from a {@code PRGen} seeded with the name of its factory and
+ * its arguments, so a run can be repeated exactly. Operations over single transactions or lookups
+ * rotate through {@value #ROTATION} of them. A handleTxs operation includes copying the pool into a
+ * new handler, which the {@code poolCopy} workload measures on its own. The corruption rate is the
+ * share of generated transactions that break a rule of isValidTx, or of lookups that miss the pool.
+ */
+public class HotPathWorkloads {
+
+    private static final int ROTATION = 256;
+
+    public static Workload isValidTx(int poolSize, int inputs, double corruption, long seed) {
+        PRGen random = Random("isValidTx", poolSize, inputs, corruption, seed);
+        Synthetic data = new Synthetic(random, poolSize);
+        Transaction[] txs = new Transaction[ROTATION];
+        for (int i = 0; i < txs.length; i++) {
+            txs[i] = data.spending(inputs, 2, random.nextDouble() < corruption);
+        }
+        TxHandler txHandler = new TxHandler(data.pool);
+        int[] next = {0};
+        return () -> txHandler.isValidTx(txs[next[0]++ & (ROTATION - 1)]) ? 1 : 0;
+    }
+
+    public static Workload handleTxs(int poolSize, int epochSize, double corruption, long seed) {
+        PRGen random = Random("handleTxs", poolSize, epochSize, corruption, seed);
+        Synthetic data = new Synthetic(random, poolSize);
+        Transaction[] epoch = data.epoch(epochSize, corruption);
+        return () -> new TxHandler(data.pool).handleTxs(epoch).length;
+    }
+
+    /* The selection of MaxFeeTxHandler runs until it proves its set optimal or
+     * selectionBudgetMillis runs out, so the budget bounds the operation.
+     */
+    public static Workload maxFeeHandleTxs(int poolSize, int epochSize, double corruption, long seed, long selectionBudgetMillis) {
+        PRGen random = Random("maxFeeHandleTxs", poolSize, epochSize, corruption, seed);
+        Synthetic data = new Synthetic(random, poolSize);
+        Transaction[] epoch = data.epoch(epochSize, corruption);
+        return () -> {
+            MaxFeeTxHandler txHandler = new MaxFeeTxHandler(data.pool);
+            txHandler.setSelectionBudget(selectionBudgetMillis);
+            return txHandler.handleTxs(epoch).length;
+        };
+    }
+
+    public static Workload poolCopy(int poolSize, long seed) {
+        Synthetic data = new Synthetic(Random("poolCopy", poolSize, seed), poolSize);
+        return () -> new UTXOPool(data.pool).hashCode();
+    }
+
+    public static Workload poolLookup(int poolSize, double corruption, long seed) {
+        PRGen random = Random("poolLookup", poolSize, corruption, seed);
+        Synthetic data = new Synthetic(random, poolSize);
+        UTXO[] lookups = new UTXO[ROTATION];
+        for (int i = 0; i < lookups.length; i++) {
+            UTXO utxo = data.utxos.get(random.nextInt(data.utxos.size()));
+            lookups[i] = random.nextDouble() < corruption ? new UTXO(utxo.getTxHash(), utxo.getIndex() + 1) : utxo;
+        }
+        int[] next = {0};
+        return () -> data.pool.getTxOutput(lookups[next[0]++ & (ROTATION - 1)]) == null ? 0 : 1;
+    }
+
+    public static Workload rawTx(int inputs, int outputs, long seed) {
+        PRGen random = Random("rawTx", inputs, outputs, seed);
+        Transaction tx = new Synthetic(random, inputs).spending(inputs, outputs, false);
+        return () -> tx.getRawTx().length;
+    }
+
+    public static Workload rawDataToSign(int inputs, int outputs, long seed) {
+        PRGen random = Random("rawDataToSign", inputs, outputs, seed);
+        Transaction tx = new Synthetic(random, inputs).spending(inputs, outputs, false);
+        int[] next = {0};
+        return () -> tx.getRawDataToSign(next[0]++ % tx.numInputs()).length;
+    }
+
+    private static PRGen Random(String factory, Object... arguments) {
+        byte[] seed = new byte[PRGen.KeySizeBytes];
+        byte[] bytes = (factory + Arrays.toString(arguments)).getBytes();
+        for (int i = 0; i < bytes.length; i++) seed[i % seed.length] = (byte) (31 * seed[i % seed.length] + bytes[i]);
+        return new PRGen(seed);
+    }
+
+    /**
+     * A pool of outputs paid to a few key pairs, all drawn from one {@code PRGen}, and the
+     * transactions spending them. A corrupt transaction breaks one rule of isValidTx, picked at
+     * random: a signature by the wrong key, a claimed output missing from the pool, an output
+     * claimed twice, a negative output, or outputs exceeding the inputs.
+     */
+    private static final class Synthetic {
+        private static final int KEY_PAIRS = 4;
+        private static final int CORRUPTIONS = 5;
+
+        private final PRGen random;
+        private final RSAKeyPair[] keyPairs = new RSAKeyPair[KEY_PAIRS];
+        private final UTXOPool pool = new UTXOPool();
+        private final List<UTXO> utxos = new ArrayList<>();
+        private final Map<UTXO, RSAKeyPair> owners = new LinkedHashMap<>();
+
+        private Synthetic(PRGen random, int poolSize) {
+            this.random = random;
+            for (int i = 0; i < keyPairs.length; i++) keyPairs[i] = new RSAKeyPair(random, 265);
+            for (int i = 0; i < poolSize; i++) {
+                byte[] txHash = new byte[32];
+                random.nextBytes(txHash);
+                UTXO utxo = new UTXO(txHash, random.nextInt(4));
+                RSAKeyPair owner = keyPairs[random.nextInt(KEY_PAIRS)];
+                pool.addUTXO(utxo, new Transaction().new Output(1 + random.nextInt(100), owner.getPublicKey()));
+                utxos.add(utxo);
+                owners.put(utxo, owner);
+            }
+        }
+
+        private Transaction spending(int inputs, int outputs, boolean corrupt) {
+            List<UTXO> claimed = new ArrayList<>();
+            Set<UTXO> distinct = new HashSet<>();
+            while (claimed.size() < Math.min(inputs, utxos.size())) {
+                UTXO utxo = utxos.get(random.nextInt(utxos.size()));
+                if (distinct.add(utxo)) claimed.add(utxo);
+            }
+            return Signed(claimed, outputs, pool, corrupt ? random.nextInt(CORRUPTIONS) : -1);
+        }
+
+        /**
+         * An epoch of two-input, two-output transactions, a third of them spending outputs
+         * created earlier in the epoch, with double spends of already claimed outputs among the
+         * corrupt ones, in shuffled order.
+         */
+        private Transaction[] epoch(int epochSize, double corruption) {
+            UTXOPool spendable = new UTXOPool(pool);
+            List<UTXO> fromPool = new ArrayList<>(utxos);
+            Collections.shuffle(fromPool, random);
+            List<UTXO> created = new ArrayList<>();
+            List<UTXO> spent = new ArrayList<>();
+            List<Transaction> epoch = new ArrayList<>();
+            for (int i = 0; i < epochSize; i++) {
+                boolean corrupt = random.nextDouble() < corruption;
+                List<UTXO> claimed = new ArrayList<>();
+                for (int input = 0; input < 2; input++) {
+                    List<UTXO> source = !created.isEmpty() && random.nextInt(3) == 0 ? created
+                            : corrupt && !spent.isEmpty() && input == 0 ? spent : fromPool;
+                    if (source.isEmpty()) break;
+                    UTXO utxo = source == spent ? spent.get(random.nextInt(spent.size())) : source.remove(source.size() - 1);
+                    if (!claimed.contains(utxo)) claimed.add(utxo);
+                }
+                if (claimed.isEmpty()) break;
+                Transaction tx = Signed(claimed, 2, spendable, corrupt ? random.nextInt(CORRUPTIONS + 1) : -1);
+                for (UTXO utxo : claimed) if (!spent.contains(utxo)) spent.add(utxo);
+                for (int output = 0; output < tx.numOutputs(); output++) {
+                    UTXO utxo = new UTXO(tx.getHash(), output);
+                    spendable.addUTXO(utxo, tx.getOutput(output));
+                    owners.put(utxo, Owner(tx.getOutput(output).address));
+                    created.add(utxo);
+                }
+                epoch.add(tx);
+            }
+            Collections.shuffle(epoch, random);
+            return epoch.toArray(new Transaction[epoch.size()]);
+        }
+
+        /** Corruption CORRUPTIONS, only drawn for epochs, is the double spend already in claimed */
+        private Transaction Signed(List<UTXO> claimed, int outputs, UTXOPool claimedFrom, int corruption) {
+            Transaction tx = new Transaction();
+            double total = 0;
+            for (UTXO utxo : claimed) {
+                tx.addInput(utxo.getTxHash(), utxo.getIndex());
+                total += claimedFrom.getTxOutput(utxo).value;
+            }
+            if (corruption == 1) tx.getInput(0).prevTxHash = new byte[]{1};
+            if (corruption == 2) tx.addInput(claimed.get(0).getTxHash(), claimed.get(0).getIndex());
+            double value = Math.floor(total * 90 / outputs) / 100;
+            if (corruption == 4) value = total;
+            for (int output = 0; output < outputs; output++) {
+                tx.addOutput(corruption == 3 && output == 0 ? -value : value, keyPairs[random.nextInt(KEY_PAIRS)].getPublicKey());
+            }
+            for (int input = 0; input < tx.numInputs(); input++) {
+                RSAKeyPair owner = owners.get(claimed.get(Math.min(input, claimed.size() - 1)));
+                if (corruption == 0) owner = keyPairs[(Arrays.asList(keyPairs).indexOf(owner) + 1) % KEY_PAIRS];
+                tx.addSignature(owner.getPrivateKey().sign(tx.getRawDataToSign(input)), input);
+            }
+            tx.finalize();
+            return tx;
+        }
+
+        private RSAKeyPair Owner(RSAKey address) {
+            for (RSAKeyPair keyPair : keyPairs) if (keyPair.getPublicKey() == address) return keyPair;
+            throw new IllegalStateException("not one of the generated addresses");
+        }
+    }
+}
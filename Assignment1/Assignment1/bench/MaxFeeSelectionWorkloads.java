@@ -0,0 +1,150 @@
+import benchmarks.Workload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The workloads of {@code benchmarks.MaxFeeSelectionBenchmarks}, selecting the transactions of a
+ * set with {@code MaxFeeTxHandler}, which searches for the set with the highest fees within its
+ * selection budget, or with the greedy order it used before: every transaction by decreasing fee,
+ * as ordered by {@code FeeMempool}, handed to a plain {@code TxHandler}. When an exact workload
+ * is made, the total fees of both selections are printed, with whether the search proved its set
+ * optimal within the budget.
+ *
+ * A set is either {@code fixture1} to {@code fixture3}, the SampleMaxFee fixtures of the grader,
+ * read from files/, or {@code synthetic<groups>x<chainLength>}, groups of a parent, a conflict and
+ * three children where a low-fee parent conflicting with a higher-fee transaction unlocks children
+ * paying more than the conflict, neighbouring groups of a chain sharing an output.
+ */
+public class MaxFeeSelectionWorkloads {
+
+    private static final int CHILDREN = 3;
+    private static final Pattern SYNTHETIC = Pattern.compile("synthetic(\\d+)x(\\d+)");
+
+    public static Workload greedy(String set) throws IOException {
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction[] txs = Set(set, utxoPool);
+        return () -> new TxHandler(utxoPool).handleTxs(ByDecreasingFees(utxoPool, txs)).length;
+    }
+
+    public static Workload exact(String set, long selectionBudgetMillis) throws IOException {
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction[] txs = Set(set, utxoPool);
+        PrintFees(set, utxoPool, txs, selectionBudgetMillis);
+        return () -> {
+            MaxFeeTxHandler txHandler = new MaxFeeTxHandler(utxoPool);
+            txHandler.setSelectionBudget(selectionBudgetMillis);
+            return txHandler.handleTxs(txs).length;
+        };
+    }
+
+    /** @return the transactions of {@code set}, adding the outputs they claim to {@code utxoPool} */
+    private static Transaction[] Set(String set, UTXOPool utxoPool) throws IOException {
+        if (set.startsWith("fixture")) {
+            SampleKeyPairs keyPairs = SampleKeyPairsFileHandler.readKeyPairsFromFile("files/SampleMaxFeeKeyPairs.txt");
+            UTXOPool fixturePool = SampleUTXOPoolFileHandler.readSampleUTXOPoolFromFile(keyPairs, "files/SampleMaxFeeUTXOPool.txt").getPool();
+            for (UTXO utxo : fixturePool.getAllUTXO()) utxoPool.addUTXO(utxo, fixturePool.getTxOutput(utxo));
+            return TransactionsArrayFileHandler.readTransactionsFromFile("files/SampleMaxFeeTxsTest1-" + set.substring("fixture".length()) + ".txt");
+        }
+        Matcher synthetic = SYNTHETIC.matcher(set);
+        if (!synthetic.matches())
+            throw new IllegalArgumentException("unknown set " + set);
+        int groups = Integer.parseInt(synthetic.group(1));
+        byte[] seed = new byte[32];
+        for (int i = 0; i < seed.length; i++) seed[i] = (byte) 2;
+        PRGen prGen = new PRGen(seed);
+        RSAKeyPair owner = new RSAKeyPair(prGen, 265);
+        RSAKeyPair parentReceiver = new RSAKeyPair(prGen, 265);
+        return SyntheticSet(groups, Integer.parseInt(synthetic.group(2)), owner, parentReceiver, utxoPool, new Random(groups));
+    }
+
+    private static void PrintFees(String set, UTXOPool utxoPool, Transaction[] txs, long selectionBudgetMillis) {
+        Transaction[] greedy = new TxHandler(utxoPool).handleTxs(ByDecreasingFees(utxoPool, txs));
+        MaxFeeSelector.Selection selection = new MaxFeeSelector(utxoPool, new VerifiedSignatures(), selectionBudgetMillis).select(txs);
+        System.out.printf("%n%s: %d transactions, greedy fees %.6f, exact fees %.6f, optimal %b%n", set, txs.length,
+                Fees(utxoPool, greedy), selection.getFees(), selection.isOptimal());
+    }
+
+    private static Transaction[] ByDecreasingFees(UTXOPool utxoPool, Transaction[] txs) {
+        FeeMempool mempool = new FeeMempool(utxoPool);
+        for (Transaction tx : txs) mempool.add(tx);
+        return mempool.inPriorityOrder();
+    }
+
+    // Total fees of accepted transactions, which each only claim outputs of the pool or of earlier ones
+    private static double Fees(UTXOPool utxoPool, Transaction[] accepted) {
+        Map<UTXO, Transaction.Output> created = new HashMap<>();
+        double fees = 0;
+        for (Transaction tx : accepted) {
+            for (Transaction.Input input : tx.getInputs()) {
+                UTXO utxo = new UTXO(input);
+                Transaction.Output output = utxoPool.contains(utxo) ? utxoPool.getTxOutput(utxo) : created.get(utxo);
+                fees += output.value;
+            }
+            for (int index = 0; index < tx.numOutputs(); index++) {
+                fees -= tx.getOutput(index).value;
+                created.put(new UTXO(tx.getHash(), index), tx.getOutput(index));
+            }
+        }
+        return fees;
+    }
+
+    // Per group: a pool output of 10, a parent spending it with a fee of 1, a transaction spending
+    // it with a fee between 2 and 4, and children of the parent paying up to 2 each. Neighbouring
+    // groups of a chain share a second pool output claimed by one child of each
+    private static Transaction[] SyntheticSet(int groups, int chainLength, RSAKeyPair owner, RSAKeyPair parentReceiver, UTXOPool utxoPool, Random random) {
+        List<Transaction> txs = new ArrayList<>();
+        byte[] previousShared = null;
+        for (int g = 0; g < groups; g++) {
+            byte[] funding = Hash(random);
+            byte[] shared = Hash(random);
+            utxoPool.addUTXO(new UTXO(funding, 0), new Transaction().new Output(10, owner.getPublicKey()));
+            utxoPool.addUTXO(new UTXO(shared, 0), new Transaction().new Output(1, owner.getPublicKey()));
+
+            Transaction parent = new Transaction();
+            parent.addInput(funding, 0);
+            for (int i = 0; i < CHILDREN; i++) parent.addOutput(3, parentReceiver.getPublicKey());
+            Sign(parent, owner);
+            txs.add(parent);
+
+            Transaction conflict = new Transaction();
+            conflict.addInput(funding, 0);
+            conflict.addOutput(8 - 2 * random.nextDouble(), owner.getPublicKey());
+            Sign(conflict, owner);
+            txs.add(conflict);
+
+            for (int i = 0; i < CHILDREN; i++) {
+                Transaction child = new Transaction();
+                child.addInput(parent.getHash(), i);
+                child.addOutput(3 - 2 * random.nextDouble(), owner.getPublicKey());
+                if (i == 0 && g % chainLength != 0) child.addInput(previousShared, 0);
+                if (i == CHILDREN - 1) child.addInput(shared, 0);
+                child.addSignature(parentReceiver.getPrivateKey().sign(child.getRawDataToSign(0)), 0);
+                if (child.numInputs() > 1) child.addSignature(owner.getPrivateKey().sign(child.getRawDataToSign(1)), 1);
+                child.finalize();
+                txs.add(child);
+            }
+            previousShared = shared;
+        }
+        return txs.toArray(new Transaction[txs.size()]);
+    }
+
+    private static byte[] Hash(Random random) {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    private static void Sign(Transaction tx, RSAKeyPair payer) {
+        for (int index = 0; index < tx.numInputs(); index++) {
+            tx.addSignature(payer.getPrivateKey().sign(tx.getRawDataToSign(index)), index);
+        }
+        tx.finalize();
+    }
+}
@@ -0,0 +1,122 @@
+import benchmarks.Workload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The workloads of {@code benchmarks.ParallelEpochBenchmarks}, deciding epochs with
+ * {@code TxHandler.handleTxs} in one sequential pass or spread over threads:
+ *
+ * {@code signatureStage} decides the {@code TestTxHandler} sample epochs with a
+ * {@code SignatureVerificationStage} verifying their signatures on {@code threads} threads.
+ * {@code partitioned} decides a large synthetic epoch as the components of
+ * {@code EpochPartition}, four tasks per thread. That epoch spends every output of the pool
+ * through a short chain of transactions, with a double spend for every other output, all
+ * shuffled; it is generated from fixed seeds.
+ *
+ * With 0 threads, both decide their epochs sequentially. Otherwise the workload owns its threads,
+ * which it stops when closed, and checks at setup that it accepts the same transactions as the
+ * sequential pass.
+ */
+public class ParallelEpochWorkloads {
+
+    public static Workload signatureStage(int threads) throws IOException {
+        SampleKeyPairs keyPairs = SampleKeyPairsFileHandler.readKeyPairsFromFile("files/SampleKeyPairs.txt");
+        UTXOPool utxoPool = SampleUTXOPoolFileHandler.readSampleUTXOPoolFromFile(keyPairs, "files/SampleUTXOPool.txt").getPool();
+        List<Transaction[]> epochs = new ArrayList<>();
+        for (int test = 1; test <= 8; test++) {
+            for (int file = 1; file <= 3; file++) {
+                epochs.add(TransactionsArrayFileHandler.readTransactionsFromFile("files/SampleTxsTest" + test + "-" + file + ".txt"));
+            }
+        }
+        SignatureVerificationStage stage = threads == 0 ? null : SignatureVerificationStage.withParallelism(threads);
+        Workload workload = new Workload() {
+            @Override
+            public int run() {
+                int accepted = 0;
+                for (Transaction[] epoch : epochs) {
+                    TxHandler txHandler = new TxHandler(utxoPool);
+                    txHandler.setSignatureVerificationStage(stage);
+                    accepted += txHandler.handleTxs(epoch).length;
+                }
+                return accepted;
+            }
+
+            @Override
+            public void close() {
+                if (stage != null) stage.close();
+            }
+        };
+        for (Transaction[] epoch : epochs) {
+            TxHandler txHandler = new TxHandler(utxoPool);
+            txHandler.setSignatureVerificationStage(stage);
+            CheckSameResultAsSequential(workload, txHandler.handleTxs(epoch), new TxHandler(utxoPool).handleTxs(epoch));
+        }
+        return workload;
+    }
+
+    public static Workload partitioned(int outputs, int chainLength, int threads) {
+        RSAKeyPair keyPair = new RSAKeyPair(new PRGen(new byte[32]), 265);
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction[] epoch = SyntheticEpoch(keyPair, utxoPool, outputs, chainLength);
+        ExecutorService executor = threads == 0 ? null : Executors.newFixedThreadPool(threads);
+        Workload workload = new Workload() {
+            @Override
+            public int run() {
+                TxHandler txHandler = new TxHandler(utxoPool);
+                txHandler.setPartitionExecutor(executor, 4 * threads);
+                return txHandler.handleTxs(epoch).length;
+            }
+
+            @Override
+            public void close() {
+                if (executor != null) executor.shutdown();
+            }
+        };
+        TxHandler txHandler = new TxHandler(utxoPool);
+        txHandler.setPartitionExecutor(executor, 4 * threads);
+        CheckSameResultAsSequential(workload, txHandler.handleTxs(epoch), new TxHandler(utxoPool).handleTxs(epoch));
+        return workload;
+    }
+
+    private static void CheckSameResultAsSequential(Workload workload, Transaction[] accepted, Transaction[] expected) {
+        if (!Arrays.equals(accepted, expected)) {
+            workload.close();
+            throw new IllegalStateException("deciding in parallel changed the accepted transactions");
+        }
+    }
+
+    private static Transaction[] SyntheticEpoch(RSAKeyPair keyPair, UTXOPool utxoPool, int outputs, int chainLength) {
+        byte[] poolTransaction = {0};
+        List<Transaction> epoch = new ArrayList<>();
+        for (int i = 0; i < outputs; i++) {
+            utxoPool.addUTXO(new UTXO(poolTransaction, i), new Transaction().new Output(10, keyPair.getPublicKey()));
+            byte[] spentTransaction = poolTransaction;
+            int spentIndex = i;
+            for (int link = 0; link < chainLength; link++) {
+                byte[] txHash = {1, (byte) (i >> 16), (byte) (i >> 8), (byte) i, (byte) link};
+                epoch.add(Payment(keyPair, spentTransaction, spentIndex, 10, txHash));
+                spentTransaction = txHash;
+                spentIndex = 0;
+            }
+            if (i % 2 == 0) epoch.add(Payment(keyPair, poolTransaction, i, 9, new byte[]{2, (byte) (i >> 16), (byte) (i >> 8), (byte) i}));
+        }
+        Collections.shuffle(epoch, new Random(42));
+        return epoch.toArray(new Transaction[epoch.size()]);
+    }
+
+    private static Transaction Payment(RSAKeyPair keyPair, byte[] spentTransaction, int spentIndex, double value, byte[] txHash) {
+        Transaction payment = new Transaction();
+        payment.addInput(spentTransaction, spentIndex);
+        payment.addOutput(value, keyPair.getPublicKey());
+        payment.addSignature(keyPair.getPrivateKey().sign(payment.getRawDataToSign(0)), 0);
+        payment.setHash(txHash);
+        return payment;
+    }
+}
@@ -0,0 +1,82 @@
+import benchmarks.Workload;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The workloads of {@code benchmarks.ValidationPipelineBenchmarks}, validating with
+ * {@code TxHandler.isValidTx} the corrupt-transaction mixes of {@code TestTxHandler}'s isValidTx
+ * tests, cheapest rules first or in the documented order. A run validates every transaction of
+ * the mix and returns the number of RSA verifications the validator recorded in its
+ * {@code ValidationMetrics}.
+ *
+ * When a mix is recorded, that number is printed with the one of the previous validator, which
+ * checked membership first and then verified the signature of every input of every transaction
+ * whose claimed outputs were all in the pool. Mixes are random, so each configuration records its
+ * own.
+ */
+public class ValidationPipelineWorkloads {
+
+    private static final String[] TESTS = {"valid", "wrong data signed", "wrong key", "outputs exceed inputs",
+            "missing input", "duplicate input", "negative output"};
+
+    public static Workload isValidTx(int txsPerTest, double pCorrupt, int test, boolean cheapestRulesFirst) throws IOException {
+        TestIsValidTx tester = new TestIsValidTx(20, 20, 20, 20, txsPerTest, 20, 20, pCorrupt);
+        RecordingTxHandler recorder = new RecordingTxHandler(tester.utxoPool);
+        tester.txHandler = recorder;
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        try {
+            switch (test) {
+                case 1: tester.test1(); break;
+                case 2: tester.test2(); break;
+                case 3: tester.test3(); break;
+                case 4: tester.test4(); break;
+                case 5: tester.test5(); break;
+                case 6: tester.test6(); break;
+                default: tester.test7(); break;
+            }
+        } finally {
+            System.setOut(out);
+        }
+        Transaction[] txs = recorder.transactions.toArray(new Transaction[recorder.transactions.size()]);
+        TxHandler txHandler = new TxHandler(tester.utxoPool);
+        ValidationMetrics metrics = new ValidationMetrics();
+        txHandler.setValidationMetrics(metrics);
+        txHandler.setCheapestRulesFirst(cheapestRulesFirst);
+        Workload workload = () -> {
+            metrics.reset();
+            for (Transaction tx : txs) txHandler.isValidTx(tx);
+            return (int) metrics.getSignatureVerifications();
+        };
+        System.out.printf("%n%s: %d transactions, %d verifications before, %d now%n", TESTS[test - 1], txs.length,
+                recorder.verificationsBefore, workload.run());
+        return workload;
+    }
+
+    private static final class RecordingTxHandler extends TxHandler {
+        private final List<Transaction> transactions = new ArrayList<>();
+        private long verificationsBefore;
+
+        private RecordingTxHandler(UTXOPool utxoPool) {
+            super(utxoPool);
+        }
+
+        @Override
+        public boolean isValidTx(Transaction tx) {
+            transactions.add(tx);
+            boolean allClaimedInPool = true;
+            for (Transaction.Input input : tx.getInputs()) allClaimedInPool &= utxoPool.contains(new UTXO(input));
+            if (allClaimedInPool) verificationsBefore += tx.numInputs();
+            return super.isValidTx(tx);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hot paths of the ScroogeCoin handlers: {@code isValidTx}, {@code TxHandler.handleTxs},
+ * {@code MaxFeeTxHandler.handleTxs}, copying and looking up a {@code UTXOPool}, and
+ * {@code Transaction.getRawTx} and {@code getRawDataToSign}, over the synthetic data of
+ * {@code HotPathWorkloads}.
+ *
+ * The selection of {@code MaxFeeTxHandler} is given a budget of {@code selectionBudgetMillis},
+ * small enough that an operation measures the handler rather than the budget.
+ *
+ * Usage (from the Assignment1 directory, with the classes of src, bench and libs on the classpath):
+ * java org.openjdk.jmh.Main HotPathBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class HotPathBenchmarks {
+
+    private static final String WORKLOADS = "HotPathWorkloads";
+
+    @State(Scope.Thread)
+    public static class IsValidTx {
+        @Param({"1000", "100000"})
+        public int poolSize;
+        @Param({"1", "4", "16"})
+        public int inputs;
+        @Param({"0", "0.25"})
+        public double corruption;
+        @Param({"1"})
+        public long seed;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "isValidTx", poolSize, inputs, corruption, seed);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Epoch {
+        @Param({"1000", "100000"})
+        public int poolSize;
+        @Param({"200"})
+        public int epochSize;
+        @Param({"0", "0.25"})
+        public double corruption;
+        @Param({"1"})
+        public long seed;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "handleTxs", poolSize, epochSize, corruption, seed);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MaxFeeEpoch {
+        @Param({"1000", "100000"})
+        public int poolSize;
+        @Param({"200"})
+        public int epochSize;
+        @Param({"0", "0.25"})
+        public double corruption;
+        @Param({"1"})
+        public long seed;
+        @Param({"5"})
+        public long selectionBudgetMillis;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "maxFeeHandleTxs", poolSize, epochSize, corruption, seed, selectionBudgetMillis);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PoolCopy {
+        @Param({"1000", "100000"})
+        public int poolSize;
+        @Param({"1"})
+        public long seed;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "poolCopy", poolSize, seed);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PoolLookup {
+        @Param({"1000", "100000"})
+        public int poolSize;
+        @Param({"0", "0.25"})
+        public double corruption;
+        @Param({"1"})
+        public long seed;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "poolLookup", poolSize, corruption, seed);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Serialization {
+        @Param({"1", "4", "16"})
+        public int inputs;
+        @Param({"1", "4"})
+        public int outputs;
+        @Param({"1"})
+        public long seed;
+
+        Workload rawTx;
+        Workload rawDataToSign;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rawTx = Workloads.of(WORKLOADS, "rawTx", inputs, outputs, seed);
+            rawDataToSign = Workloads.of(WORKLOADS, "rawDataToSign", inputs, outputs, seed);
+        }
+    }
+
+    @Benchmark
+    public int isValidTx(IsValidTx state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int handleTxs(Epoch state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int maxFeeHandleTxs(MaxFeeEpoch state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int poolCopy(PoolCopy state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int poolGetTxOutput(PoolLookup state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int getRawTx(Serialization state) {
+        return state.rawTx.run();
+    }
+
+    @Benchmark
+    public int getRawDataToSign(Serialization state) {
+        return state.rawDataToSign.run();
+    }
+}
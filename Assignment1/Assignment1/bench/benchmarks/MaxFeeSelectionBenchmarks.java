@@ -0,0 +1,74 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selecting the transactions of a set with {@code MaxFeeTxHandler} against the greedy order by
+ * decreasing fee, over the workloads of {@code MaxFeeSelectionWorkloads}, which print the fees of
+ * both selections at setup. The search is given a budget of {@code selectionBudgetMillis}, small
+ * enough that the exact rows measure the search rather than the budget; synthetic200x200, a
+ * single chain of 200 groups, exceeds it.
+ *
+ * Usage (from the Assignment1 directory holding files/, with the classes of src, test, bench and
+ * libs on the classpath): java org.openjdk.jmh.Main MaxFeeSelectionBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class MaxFeeSelectionBenchmarks {
+
+    private static final String WORKLOADS = "MaxFeeSelectionWorkloads";
+
+    @State(Scope.Thread)
+    public static class Greedy {
+        @Param({"fixture1", "fixture2", "fixture3", "synthetic10x4", "synthetic100x4", "synthetic1000x4", "synthetic200x200"})
+        public String set;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "greedy", set);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Exact {
+        @Param({"fixture1", "fixture2", "fixture3", "synthetic10x4", "synthetic100x4", "synthetic1000x4", "synthetic200x200"})
+        public String set;
+        @Param({"5"})
+        public long selectionBudgetMillis;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "exact", set, selectionBudgetMillis);
+        }
+    }
+
+    @Benchmark
+    public int greedy(Greedy state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int exact(Exact state) {
+        return state.workload.run();
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deciding epochs with {@code TxHandler.handleTxs} sequentially, with threads 0, against
+ * verifying their signatures or deciding their {@code EpochPartition} components on a growing
+ * number of threads, over the workloads of {@code ParallelEpochWorkloads}.
+ *
+ * Usage (from the Assignment1 directory holding files/, with the classes of src, test, bench and
+ * libs on the classpath):
+ * java org.openjdk.jmh.Main ParallelEpochBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParallelEpochBenchmarks {
+
+    private static final String WORKLOADS = "ParallelEpochWorkloads";
+
+    @State(Scope.Thread)
+    public static class SampleEpochs {
+        @Param({"0", "1", "2", "4", "8", "16"})
+        public int threads;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "signatureStage", threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SyntheticEpoch {
+        @Param({"2000"})
+        public int outputs;
+        @Param({"3"})
+        public int chainLength;
+        @Param({"0", "1", "2", "4", "8", "16"})
+        public int threads;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "partitioned", outputs, chainLength, threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            workload.close();
+        }
+    }
+
+    @Benchmark
+    public int signatureStage(SampleEpochs state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int partitioned(SyntheticEpoch state) {
+        return state.workload.run();
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code TxHandler.isValidTx} over the corrupt-transaction mixes of {@code TestTxHandler}'s
+ * isValidTx tests, at several corruption rates, cheapest rules first or in the documented order,
+ * over the workloads of {@code ValidationPipelineWorkloads}, which print the RSA verifications
+ * each configuration makes per mix at setup.
+ *
+ * Usage (from the Assignment1 directory, with the classes of src, test, bench and libs on the
+ * classpath): java org.openjdk.jmh.Main ValidationPipelineBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class ValidationPipelineBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Mix {
+        @Param({"200"})
+        public int txsPerTest;
+        @Param({"0.1", "0.5", "0.9"})
+        public double pCorrupt;
+        @Param({"1", "2", "3", "4", "5", "6", "7"})
+        public int test;
+        @Param({"true", "false"})
+        public boolean cheapestRulesFirst;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of("ValidationPipelineWorkloads", "isValidTx", txsPerTest, pCorrupt, test, cheapestRulesFirst);
+        }
+    }
+
+    @Benchmark
+    public int isValidTx(Mix mix) {
+        return mix.workload.run();
+    }
+}
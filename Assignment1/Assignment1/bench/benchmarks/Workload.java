@@ -0,0 +1,18 @@
+package benchmarks;
+
+/**
+ * The operation a benchmark times, over data built once per trial. The ScroogeCoin classes live in
+ * the unnamed package, which JMH refuses to generate code for and which no named package can
+ * import, so the benchmarks of this package get their workloads from factories of the unnamed
+ * package through {@link Workloads}.
+ */
+public interface Workload extends AutoCloseable {
+
+    /** @return a value depending on the work done, which the benchmark hands back to JMH */
+    int run();
+
+    /** Stops the threads of the workload, if it has any */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Splits an epoch of transactions into components that handleTxs can decide
+ * independently of each other.
+ *
+ * Two transactions are in the same component when they claim the same
+ * output, or when one claims an output the other creates; transactions with
+ * the same hash create the same outputs and are joined as well. Whether a
+ * transaction is accepted only depends on the pool entries of the outputs it
+ * claims, and only transactions of its own component ever add or remove
+ * those, so every component is decided exactly as within the whole epoch.
+ */
+public class EpochPartition {
+
+    private EpochPartition() {
+    }
+
+    /* Returns the components of txs as the indices of their transactions in
+     * ascending order, the components ordered by their first index.
+     */
+    public static List<int[]> components(Transaction[] txs) {
+        int[] parents = new int[txs.length];
+        for (int index = 0; index < txs.length; index++) parents[index] = index;
+
+        Map<UTXO, Integer> firstClaimants = new HashMap<>();
+        Map<UTXO, Integer> creators = new HashMap<>();
+        for (int index = 0; index < txs.length; index++) {
+            Transaction tx = txs[index];
+            for (Transaction.Input input : tx.getInputs()) {
+                Integer claimant = firstClaimants.putIfAbsent(new UTXO(input), index);
+                if (claimant != null) Union(parents, claimant, index);
+            }
+            if (tx.getHash() == null) continue;
+            for (int output = 0; output < tx.numOutputs(); output++) {
+                Integer creator = creators.putIfAbsent(new UTXO(tx.getHash(), output), index);
+                if (creator != null) Union(parents, creator, index);
+            }
+        }
+        for (Map.Entry<UTXO, Integer> claim : firstClaimants.entrySet()) {
+            Integer creator = creators.get(claim.getKey());
+            if (creator != null) Union(parents, creator, claim.getValue());
+        }
+
+        Map<Integer, List<Integer>> byRoot = new LinkedHashMap<>();
+        for (int index = 0; index < txs.length; index++) {
+            byRoot.computeIfAbsent(Find(parents, index), root -> new ArrayList<>()).add(index);
+        }
+        List<int[]> components = new ArrayList<>(byRoot.size());
+        for (List<Integer> component : byRoot.values()) {
+            components.add(component.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return components;
+    }
+
+    /* Packs the components of txs into at most groupCount groups of about
+     * the same number of transactions, each a union of whole components, as
+     * indices in ascending order.
+     */
+    public static List<int[]> groups(Transaction[] txs, int groupCount) {
+        int target = (txs.length + groupCount - 1) / Math.max(groupCount, 1);
+        List<int[]> groups = new ArrayList<>();
+        List<int[]> group = new ArrayList<>();
+        int groupSize = 0;
+        for (int[] component : components(txs)) {
+            group.add(component);
+            groupSize += component.length;
+            if (groupSize >= target) {
+                groups.add(Merged(group, groupSize));
+                group.clear();
+                groupSize = 0;
+            }
+        }
+        if (groupSize > 0) groups.add(Merged(group, groupSize));
+        return groups;
+    }
+
+    private static int[] Merged(List<int[]> components, int size) {
+        int[] indices = new int[size];
+        int position = 0;
+        for (int[] component : components) {
+            System.arraycopy(component, 0, indices, position, component.length);
+            position += component.length;
+        }
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    private static int Find(int[] parents, int index) {
+        while (parents[index] != index) {
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+        return index;
+    }
+
+    private static void Union(int[] parents, int first, int second) {
+        int firstRoot = Find(parents, first);
+        int secondRoot = Find(parents, second);
+        if (firstRoot < secondRoot) parents[secondRoot] = firstRoot;
+        else parents[firstRoot] = secondRoot;
+    }
+}
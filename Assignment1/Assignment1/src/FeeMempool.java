@@ -0,0 +1,438 @@
+import java.util.*;
+
+/* Pending transactions indexed by fee.
+ *
+ * The fee of a transaction is computed once, when all the outputs it claims
+ * are known, either from the UTXO pool or from another transaction of the
+ * mempool, and the transaction is then kept in a sorted set ordered by
+ * decreasing fee (earlier arrivals first among equal fees). A transaction
+ * claiming an output nobody created yet waits for it without a fee. The
+ * outputs claimed from the mempool are kept with the claiming transaction as
+ * soon as it is linked to their creator, so its fee can still be computed
+ * once the creator has left the mempool, e.g. polled into a block.
+ *
+ * Transactions of the mempool spending each other's outputs are linked, and
+ * every transaction tracks the number and total fees of its in-mempool
+ * ancestors and descendants. Adding or removing a transaction only recomputes
+ * these packages for the transactions whose ancestors or descendants it
+ * changes.
+ *
+ * A transaction whose ancestors all have a known fee is also kept in a second
+ * sorted set, ordered by the fee rate of its ancestor package: the total fees
+ * over the total raw size of the transaction and its ancestors. Mining the
+ * package with the highest rate first lets a high-fee child pay for its
+ * low-fee parents (child pays for parent).
+ *
+ * A mempool is kept across blocks: confirm moves it onto the UTXO pool right
+ * after a block, dropping the transactions of the block and those spending
+ * the same outputs, so that only the transactions the block changes are
+ * touched.
+ */
+public class FeeMempool {
+
+    private UTXOPool utxoPool;
+    private final Map<Transaction, Entry> entries = new IdentityHashMap<>();
+    private final Map<UTXO, Entry> creators = new HashMap<>();
+    private final Map<UTXO, List<Entry>> spenders = new HashMap<>();
+    private final Map<UTXO, List<Entry>> waiting = new HashMap<>();
+    private final TreeSet<Entry> byFee = new TreeSet<>(HighestFeeFirst());
+    private final TreeSet<Entry> byAncestorFeeRate = new TreeSet<>(HighestAncestorFeeRateFirst());
+    private long arrivals;
+
+    /* Creates an empty mempool whose transactions claim outputs of utxoPool,
+     * which is read but never modified, until confirm moves it onto another
+     * pool.
+     */
+    public FeeMempool(UTXOPool utxoPool) {
+        this.utxoPool = utxoPool;
+    }
+
+    /* Adds tx, computing its fee if all the outputs it claims are known. Does
+     * nothing if tx is already in the mempool.
+     */
+    public void add(Transaction tx) {
+        if (entries.containsKey(tx)) return;
+        Entry entry = new Entry(tx, arrivals++);
+        entries.put(tx, entry);
+        if (tx.getHash() != null) {
+            for (int index = 0; index < tx.numOutputs(); index++) {
+                UTXO created = new UTXO(tx.getHash(), index);
+                creators.putIfAbsent(created, entry);
+            }
+        }
+        for (Transaction.Input input : tx.getInputs()) {
+            UTXO claimed = new UTXO(input);
+            spenders.computeIfAbsent(claimed, spent -> new ArrayList<>()).add(entry);
+            Entry parent = creators.get(claimed);
+            if (parent != null && parent != entry) {
+                Link(parent, entry, claimed);
+            } else if (!utxoPool.contains(claimed)) {
+                entry.missingInputs++;
+                waiting.computeIfAbsent(claimed, missing -> new ArrayList<>()).add(entry);
+            }
+        }
+        if (entry.missingInputs == 0) entry.fee = ComputeFee(entry);
+        // entry is a new descendant of each of its ancestors, and has none itself yet
+        for (Entry ancestor : Ancestors(entry)) {
+            entry.ancestorCount++;
+            entry.ancestorFees += KnownFee(ancestor);
+            entry.ancestorSize += ancestor.size;
+            if (Double.isNaN(ancestor.fee)) entry.unknownAncestorFees++;
+            Reindex(ancestor, () -> {
+                ancestor.descendantCount++;
+                ancestor.descendantFees += KnownFee(entry);
+            });
+        }
+        entry.ancestorFees += KnownFee(entry);
+        if (Double.isNaN(entry.fee)) entry.unknownAncestorFees++;
+        entry.descendantFees = KnownFee(entry);
+        Index(entry);
+        ReleaseWaitingFor(entry);
+    }
+
+    /* Removes tx, e.g. once it is in a block, leaving its descendants in the
+     * mempool with their fees unchanged.
+     */
+    public void remove(Transaction tx) {
+        Entry entry = entries.remove(tx);
+        if (entry == null) return;
+        Set<Entry> ancestors = Ancestors(entry);
+        Set<Entry> descendants = Descendants(entry);
+        Unindex(entry);
+        for (Entry parent : entry.parents) parent.children.remove(entry);
+        for (Entry child : entry.children) child.parents.remove(entry);
+        if (tx.getHash() != null) {
+            for (int index = 0; index < tx.numOutputs(); index++) creators.remove(new UTXO(tx.getHash(), index), entry);
+        }
+        for (Transaction.Input input : tx.getInputs()) {
+            UTXO claimed = new UTXO(input);
+            List<Entry> waitingForInput = waiting.get(claimed);
+            if (waitingForInput != null && waitingForInput.remove(entry) && waitingForInput.isEmpty()) waiting.remove(claimed);
+            List<Entry> spending = spenders.get(claimed);
+            spending.remove(entry);
+            if (spending.isEmpty()) spenders.remove(claimed);
+        }
+        if (!ancestors.isEmpty() && !descendants.isEmpty()) {
+            // descendants may only have reached some ancestors through entry
+            ancestors.forEach(this::RecomputePackages);
+            descendants.forEach(this::RecomputePackages);
+            return;
+        }
+        for (Entry ancestor : ancestors) {
+            Reindex(ancestor, () -> {
+                ancestor.descendantCount--;
+                ancestor.descendantFees -= KnownFee(entry);
+            });
+        }
+        for (Entry descendant : descendants) {
+            Reindex(descendant, () -> {
+                descendant.ancestorCount--;
+                descendant.ancestorFees -= KnownFee(entry);
+                descendant.ancestorSize -= entry.size;
+                if (Double.isNaN(entry.fee)) descendant.unknownAncestorFees--;
+            });
+        }
+    }
+
+    /* Moves the mempool onto utxoPool, the pool once txs, a block, are
+     * connected on top of the current one. The transactions of the block are
+     * removed, leaving their descendants in the mempool, and so are those
+     * spending an output the block spends, with their descendants, as they
+     * can no longer be mined. Transactions waiting for an output the block
+     * created get their fee.
+     */
+    public void confirm(List<Transaction> txs, UTXOPool utxoPool) {
+        this.utxoPool = utxoPool;
+        for (Transaction tx : txs) {
+            for (Transaction.Input input : tx.getInputs()) {
+                List<Entry> spending = spenders.get(new UTXO(input));
+                if (spending == null) continue;
+                for (Entry spender : new ArrayList<>(spending)) {
+                    if (!entries.containsKey(spender.tx)) continue;
+                    if (spender.tx == tx || Arrays.equals(spender.tx.getHash(), tx.getHash())) remove(spender.tx);
+                    else RemoveWithDescendants(spender);
+                }
+            }
+            remove(tx);
+        }
+        for (Transaction tx : txs) {
+            if (tx.getHash() == null) continue;
+            for (int index = 0; index < tx.numOutputs(); index++) {
+                UTXO created = new UTXO(tx.getHash(), index);
+                if (utxoPool.contains(created)) ReleaseWaitingFor(created);
+            }
+        }
+    }
+
+    /* Removes and returns the transaction with the highest fee, or null if no
+     * transaction of the mempool has a known fee.
+     */
+    public Transaction poll() {
+        if (byFee.isEmpty()) return null;
+        Transaction tx = byFee.first().tx;
+        remove(tx);
+        return tx;
+    }
+
+    /* Removes and returns the ancestor package with the highest fee rate,
+     * parents before children, or null if no transaction of the mempool has
+     * ancestors with known fees only. The descendants of the package stay in
+     * the mempool, with their packages now ending at the package.
+     */
+    public Transaction[] pollPackage() {
+        if (byAncestorFeeRate.isEmpty()) return null;
+        Entry top = byAncestorFeeRate.first();
+        Set<Entry> members = Ancestors(top);
+        members.add(top);
+        List<Transaction> ordered = new ArrayList<>(members.size());
+        Set<Entry> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Entry member : members) AddParentsFirst(member, members, visited, ordered);
+        // parents first, so each removed transaction has no ancestor left
+        ordered.forEach(this::remove);
+        return ordered.toArray(new Transaction[ordered.size()]);
+    }
+
+    /* Removes every transaction and returns them package by package, as
+     * pollPackage would, followed by those whose package cannot be mined from
+     * the pool and the mempool, in the order of inPriorityOrder.
+     */
+    public Transaction[] drainInPackageOrder() {
+        List<Transaction> ordered = new ArrayList<>(entries.size());
+        for (Transaction[] pkg = pollPackage(); pkg != null; pkg = pollPackage()) ordered.addAll(Arrays.asList(pkg));
+        Transaction[] unminable = inPriorityOrder();
+        ordered.addAll(Arrays.asList(unminable));
+        for (Transaction tx : unminable) remove(tx);
+        return ordered.toArray(new Transaction[ordered.size()]);
+    }
+
+    /* Returns every transaction, those with a known fee by decreasing fee
+     * followed by the others in arrival order, without removing them.
+     */
+    public Transaction[] inPriorityOrder() {
+        List<Transaction> ordered = new ArrayList<>(entries.size());
+        byFee.forEach(entry -> ordered.add(entry.tx));
+        entries.values().stream()
+                .filter(entry -> Double.isNaN(entry.fee))
+                .sorted(Comparator.comparingLong(entry -> entry.arrival))
+                .forEach(entry -> ordered.add(entry.tx));
+        return ordered.toArray(new Transaction[ordered.size()]);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /* Returns the fee of tx, or NaN if it claims an output nobody created */
+    public double getFee(Transaction tx) {
+        return entries.get(tx).fee;
+    }
+
+    /* Returns the total known fees of tx and its in-mempool ancestors */
+    public double getAncestorFees(Transaction tx) {
+        return entries.get(tx).ancestorFees;
+    }
+
+    /* Returns the total raw size in bytes of tx and its in-mempool ancestors */
+    public long getAncestorSize(Transaction tx) {
+        return entries.get(tx).ancestorSize;
+    }
+
+    /* Returns the number of in-mempool ancestors of tx, tx included */
+    public int getAncestorCount(Transaction tx) {
+        return entries.get(tx).ancestorCount;
+    }
+
+    /* Returns the total known fees of tx and its in-mempool descendants */
+    public double getDescendantFees(Transaction tx) {
+        return entries.get(tx).descendantFees;
+    }
+
+    /* Returns the number of in-mempool descendants of tx, tx included */
+    public int getDescendantCount(Transaction tx) {
+        return entries.get(tx).descendantCount;
+    }
+
+    private void Link(Entry parent, Entry child, UTXO claimed) {
+        parent.children.add(child);
+        child.parents.add(parent);
+        child.claimedInMempool.put(claimed, parent.tx.getOutput(claimed.getIndex()));
+    }
+
+    // Resolves the transactions that were waiting for an output of entry
+    private void ReleaseWaitingFor(Entry entry) {
+        Transaction tx = entry.tx;
+        if (tx.getHash() == null) return;
+        for (int index = 0; index < tx.numOutputs(); index++) {
+            UTXO created = new UTXO(tx.getHash(), index);
+            List<Entry> released = waiting.remove(created);
+            if (released == null) continue;
+            for (Entry child : released) {
+                Link(entry, child, created);
+                Reindex(child, () -> {
+                    if (--child.missingInputs == 0) child.fee = ComputeFee(child);
+                });
+                RecomputePackagesAround(child);
+            }
+        }
+    }
+
+    // Resolves the transactions that were waiting for created, now in the pool
+    private void ReleaseWaitingFor(UTXO created) {
+        List<Entry> released = waiting.remove(created);
+        if (released == null) return;
+        for (Entry child : released) {
+            Reindex(child, () -> {
+                if (--child.missingInputs == 0) child.fee = ComputeFee(child);
+            });
+            RecomputePackagesAround(child);
+        }
+    }
+
+    private void RemoveWithDescendants(Entry entry) {
+        Set<Entry> descendants = Descendants(entry);
+        remove(entry.tx);
+        for (Entry descendant : descendants) remove(descendant.tx);
+    }
+
+    // Recomputes the packages of entry, of its ancestors and of its descendants
+    private void RecomputePackagesAround(Entry entry) {
+        Set<Entry> affected = Ancestors(entry);
+        affected.addAll(Descendants(entry));
+        affected.add(entry);
+        affected.forEach(this::RecomputePackages);
+    }
+
+    private void RecomputePackages(Entry entry) {
+        Reindex(entry, () -> {
+            entry.ancestorCount = 1;
+            entry.ancestorFees = KnownFee(entry);
+            entry.ancestorSize = entry.size;
+            entry.unknownAncestorFees = Double.isNaN(entry.fee) ? 1 : 0;
+            for (Entry ancestor : Ancestors(entry)) {
+                entry.ancestorCount++;
+                entry.ancestorFees += KnownFee(ancestor);
+                entry.ancestorSize += ancestor.size;
+                if (Double.isNaN(ancestor.fee)) entry.unknownAncestorFees++;
+            }
+            entry.descendantCount = 1;
+            entry.descendantFees = KnownFee(entry);
+            for (Entry descendant : Descendants(entry)) {
+                entry.descendantCount++;
+                entry.descendantFees += KnownFee(descendant);
+            }
+        });
+    }
+
+    // Applies change to entry out of the sorted sets, so their order stays consistent
+    private void Reindex(Entry entry, Runnable change) {
+        Unindex(entry);
+        change.run();
+        if (entries.containsKey(entry.tx)) Index(entry);
+    }
+
+    private void Index(Entry entry) {
+        if (!Double.isNaN(entry.fee)) byFee.add(entry);
+        if (entry.unknownAncestorFees == 0) byAncestorFeeRate.add(entry);
+    }
+
+    private void Unindex(Entry entry) {
+        byFee.remove(entry);
+        byAncestorFeeRate.remove(entry);
+    }
+
+    private void AddParentsFirst(Entry entry, Set<Entry> members, Set<Entry> visited, List<Transaction> ordered) {
+        if (!visited.add(entry)) return;
+        for (Entry parent : entry.parents) {
+            if (members.contains(parent)) AddParentsFirst(parent, members, visited, ordered);
+        }
+        ordered.add(entry.tx);
+    }
+
+    private double KnownFee(Entry entry) {
+        return Double.isNaN(entry.fee) ? 0 : entry.fee;
+    }
+
+    private Set<Entry> Ancestors(Entry entry) {
+        Set<Entry> ancestors = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Entry> toVisit = new ArrayDeque<>(entry.parents);
+        while (!toVisit.isEmpty()) {
+            Entry ancestor = toVisit.pop();
+            if (ancestors.add(ancestor)) toVisit.addAll(ancestor.parents);
+        }
+        return ancestors;
+    }
+
+    private Set<Entry> Descendants(Entry entry) {
+        Set<Entry> descendants = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Entry> toVisit = new ArrayDeque<>(entry.children);
+        while (!toVisit.isEmpty()) {
+            Entry descendant = toVisit.pop();
+            if (descendants.add(descendant)) toVisit.addAll(descendant.children);
+        }
+        return descendants;
+    }
+
+    // Claimed outputs are looked up in the pool first, then among those the
+    // entry was linked to, whether or not their creator is still in the
+    // mempool. The fee is exact to the satoshi; amounts beyond a long of
+    // satoshis give a fee of minus infinity, so the transaction comes last
+    private double ComputeFee(Entry entry) {
+        Transaction tx = entry.tx;
+        List<Transaction.Output> claimedOutputs = new ArrayList<>(tx.numInputs());
+        for (Transaction.Input input : tx.getInputs()) {
+            UTXO claimed = new UTXO(input);
+            Transaction.Output output = utxoPool.getTxOutput(claimed);
+            if (output == null) output = entry.claimedInMempool.get(claimed);
+            claimedOutputs.add(output);
+        }
+        try {
+            return Satoshis.toCoins(Math.subtractExact(Satoshis.sumOf(claimedOutputs), Satoshis.sumOf(tx.getOutputs())));
+        } catch (ArithmeticException e) {
+            return Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static Comparator<Entry> HighestFeeFirst() {
+        return (entry1, entry2) -> {
+            int byFee = Double.compare(entry2.fee, entry1.fee);
+            return byFee != 0 ? byFee : Long.compare(entry1.arrival, entry2.arrival);
+        };
+    }
+
+    private static Comparator<Entry> HighestAncestorFeeRateFirst() {
+        return (entry1, entry2) -> {
+            int byRate = Double.compare(entry2.ancestorFees / entry2.ancestorSize, entry1.ancestorFees / entry1.ancestorSize);
+            return byRate != 0 ? byRate : Long.compare(entry1.arrival, entry2.arrival);
+        };
+    }
+
+    private static final class Entry {
+        private final Transaction tx;
+        private final long arrival;
+        private final int size;
+        private final Set<Entry> parents = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<Entry> children = Collections.newSetFromMap(new IdentityHashMap<>());
+        // outputs claimed from transactions of the mempool, kept after these leave it
+        private final Map<UTXO, Transaction.Output> claimedInMempool = new HashMap<>();
+        private int missingInputs;
+        private double fee = Double.NaN;
+        private int ancestorCount = 1;
+        private double ancestorFees;
+        private long ancestorSize;
+        // number of transactions among entry and its ancestors whose fee is unknown
+        private int unknownAncestorFees;
+        private int descendantCount = 1;
+        private double descendantFees;
+
+        private Entry(Transaction tx, long arrival) {
+            this.tx = tx;
+            this.arrival = arrival;
+            this.size = tx.getRawTx().length;
+            this.ancestorSize = size;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/* A histogram of latencies in nanoseconds in the style of HdrHistogram:
+ * values below 128 are counted exactly, and every larger power-of-two range
+ * is split into 64 linear sub-buckets, so any recorded value is known within
+ * 1/64 (about 1.6%) of its magnitude. Recording is a couple of shifts and an
+ * array increment, whatever the value, and the whole range of a long fits
+ * in 3776 counters. Not thread-safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+
+    private final long[] counts = new long[EXACT + (Long.SIZE - SUB_BUCKET_BITS - 1) * SUB_BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /* Records a latency; negative values count as 0 */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[IndexOf(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /* Adds every value recorded by other to this histogram */
+    public void add(LatencyHistogram other) {
+        for (int index = 0; index < counts.length; index++) counts[index] += other.counts[index];
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /* Returns the smallest value recorded, or 0 if none */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /* Returns the exact mean of the recorded values, or 0 if none */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /* Returns the value below or at which percentile percent of the recorded
+     * values fall, as the highest value of its bucket, capped by the maximum.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= rank) return Math.min(HighestValueAt(index), max);
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /* Returns the summary of the histogram as a JSON object */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"count\":%d,\"min\":%d,\"mean\":%.1f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                count, getMin(), getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), max);
+    }
+
+    private static int IndexOf(long value) {
+        if (value < EXACT) return (int) value;
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long HighestValueAt(int index) {
+        if (index < EXACT) return index;
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long subBucket = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
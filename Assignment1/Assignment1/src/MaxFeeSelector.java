@@ -0,0 +1,394 @@
+import java.util.*;
+
+/* Selects the set of mutually valid transactions with the highest total fees.
+ *
+ * Every transaction is first checked on its own: each output it claims must
+ * be in the UTXO pool or created by another transaction of the batch, its
+ * signatures must be valid, it must not claim an output twice, its outputs
+ * must be non-negative and cover no more than its inputs. A transaction
+ * spending an output of another transaction depends on it, and two
+ * transactions claiming the same output conflict. The transactions linked by
+ * dependencies or conflicts form independent components.
+ *
+ * Each component is solved by a branch-and-bound search over its
+ * transactions in dependency order, starting from the greedy answer (each
+ * transaction in the order given, whenever its parents are in and it
+ * conflicts with nothing; MaxFeeTxHandler gives them by ancestor package) and
+ * pruning every branch that cannot beat the best set found so far even if it
+ * got all the fees still reachable. Once the wall-clock budget of the search,
+ * which starts after the checks above, is spent, the remaining components
+ * keep the best set found so far, at worst the greedy one.
+ */
+public class MaxFeeSelector {
+
+    private final UTXOPool utxoPool;
+    private final VerifiedSignatures verifiedSignatures;
+    private final long budgetNanos;
+
+    /* Creates a selector of transactions claiming outputs of utxoPool. The
+     * inputs verifiedSignatures covers are known to be correctly signed for
+     * the message and output they were verified with; the inputs the
+     * selector verifies itself are recorded in it.
+     */
+    public MaxFeeSelector(UTXOPool utxoPool, VerifiedSignatures verifiedSignatures, long budgetMillis) {
+        this.utxoPool = utxoPool;
+        this.verifiedSignatures = verifiedSignatures;
+        this.budgetNanos = budgetMillis * 1_000_000;
+    }
+
+    /* The transactions selected, in an order in which each one comes after
+     * the transactions it depends on, with their total fees.
+     */
+    public static class Selection {
+        private final Transaction[] transactions;
+        private final double fees;
+        private final double greedyFees;
+        private final boolean optimal;
+
+        private Selection(Transaction[] transactions, double fees, double greedyFees, boolean optimal) {
+            this.transactions = transactions;
+            this.fees = fees;
+            this.greedyFees = greedyFees;
+            this.optimal = optimal;
+        }
+
+        public Transaction[] getTransactions() {
+            return transactions;
+        }
+
+        public double getFees() {
+            return fees;
+        }
+
+        /* Returns the total fees of the greedy answer the search started from */
+        public double getGreedyFees() {
+            return greedyFees;
+        }
+
+        /* Returns true if every component was searched to the end within the budget */
+        public boolean isOptimal() {
+            return optimal;
+        }
+    }
+
+    public Selection select(Transaction[] possibleTxs) {
+        Candidate[] candidates = Candidates(possibleTxs);
+        List<Candidate> ordered = InDependencyOrder(candidates);
+        List<List<Candidate>> components = Components(ordered);
+        long deadline = System.nanoTime() + budgetNanos;
+
+        List<Candidate> selected = new ArrayList<>();
+        double fees = 0;
+        double greedyFees = 0;
+        boolean optimal = true;
+        for (List<Candidate> component : components) {
+            Search search = new Search(component, deadline);
+            greedyFees += search.bestFees;
+            optimal &= search.run();
+            fees += search.bestFees;
+            for (int i = 0; i < component.size(); i++) {
+                if (search.best[i]) selected.add(component.get(i));
+            }
+        }
+        selected.sort(Comparator.comparingInt(candidate -> candidate.order));
+        Transaction[] transactions = new Transaction[selected.size()];
+        for (int i = 0; i < transactions.length; i++) transactions[i] = selected.get(i).tx;
+        return new Selection(transactions, fees, greedyFees, optimal);
+    }
+
+    private static final class Candidate {
+        private final Transaction tx;
+        private final int arrival;
+        private final List<Candidate> parents = new ArrayList<>();
+        private final List<Candidate> children = new ArrayList<>();
+        private final List<UTXO> claimed = new ArrayList<>();
+        private boolean valid = true;
+        private double fee;
+        private int order = -1;
+
+        private Candidate(Transaction tx, int arrival) {
+            this.tx = tx;
+            this.arrival = arrival;
+        }
+    }
+
+    // Checks every transaction on its own and links it to its parents
+    private Candidate[] Candidates(Transaction[] possibleTxs) {
+        Candidate[] candidates = new Candidate[possibleTxs.length];
+        Map<UTXO, Candidate> creators = new HashMap<>();
+        for (int i = 0; i < possibleTxs.length; i++) {
+            candidates[i] = new Candidate(possibleTxs[i], i);
+            Transaction tx = possibleTxs[i];
+            if (tx.getHash() == null) continue;
+            for (int index = 0; index < tx.numOutputs(); index++) creators.putIfAbsent(new UTXO(tx.getHash(), index), candidates[i]);
+        }
+        for (Candidate candidate : candidates) {
+            Transaction tx = candidate.tx;
+            List<Transaction.Output> claimedOutputs = new ArrayList<>(tx.numInputs());
+            for (int index = 0; index < tx.numInputs() && candidate.valid; index++) {
+                Transaction.Input input = tx.getInput(index);
+                UTXO utxo = new UTXO(input);
+                Transaction.Output output = utxoPool.getTxOutput(utxo);
+                if (output == null) {
+                    Candidate parent = creators.get(utxo);
+                    if (parent == null || parent == candidate || utxo.getIndex() < 0 || utxo.getIndex() >= parent.tx.numOutputs()) {
+                        candidate.valid = false;
+                        break;
+                    }
+                    output = parent.tx.getOutput(utxo.getIndex());
+                    if (!candidate.parents.contains(parent)) {
+                        candidate.parents.add(parent);
+                        parent.children.add(candidate);
+                    }
+                }
+                candidate.valid = !candidate.claimed.contains(utxo) && IsCorrectlySigned(tx, index, output);
+                candidate.claimed.add(utxo);
+                claimedOutputs.add(output);
+            }
+            for (Transaction.Output output : tx.getOutputs()) {
+                if (!(output.value >= 0)) candidate.valid = false;
+            }
+            try {
+                candidate.fee = Satoshis.toCoins(Math.subtractExact(Satoshis.sumOf(claimedOutputs), Satoshis.sumOf(tx.getOutputs())));
+            } catch (ArithmeticException e) {
+                candidate.valid = false;
+            }
+            if (candidate.fee < 0) candidate.valid = false;
+        }
+        return candidates;
+    }
+
+    private boolean IsCorrectlySigned(Transaction tx, int index, Transaction.Output output) {
+        Transaction.Input input = tx.getInput(index);
+        if (verifiedSignatures.covers(tx, index, output)) return true;
+        if (input.signature == null || output.address == null) return false;
+        byte[] message = tx.getRawDataToSign(index);
+        if (!output.address.verifySignature(message, input.signature)) return false;
+        verifiedSignatures.record(input, message, output);
+        return true;
+    }
+
+    // Valid candidates whose ancestors are all valid, parents first and
+    // otherwise by decreasing fee; candidates on a dependency cycle are left out
+    private List<Candidate> InDependencyOrder(Candidate[] candidates) {
+        Map<Candidate, Integer> pendingParents = new IdentityHashMap<>();
+        PriorityQueue<Candidate> ready = new PriorityQueue<>(HighestFeeFirst());
+        for (Candidate candidate : candidates) {
+            if (!candidate.valid) continue;
+            pendingParents.put(candidate, candidate.parents.size());
+            if (candidate.parents.isEmpty()) ready.add(candidate);
+        }
+        List<Candidate> ordered = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            Candidate candidate = ready.poll();
+            candidate.order = ordered.size();
+            ordered.add(candidate);
+            for (Candidate child : candidate.children) {
+                Integer pending = pendingParents.get(child);
+                if (pending == null) continue;
+                pendingParents.put(child, pending - 1);
+                if (pending == 1) ready.add(child);
+            }
+        }
+        return ordered;
+    }
+
+    // Candidates linked by dependencies or conflicts, each in dependency order
+    private List<List<Candidate>> Components(List<Candidate> ordered) {
+        int[] component = new int[ordered.size()];
+        for (int i = 0; i < component.length; i++) component[i] = i;
+        Map<UTXO, Candidate> firstClaimer = new HashMap<>();
+        for (Candidate candidate : ordered) {
+            for (Candidate parent : candidate.parents) Union(component, candidate.order, parent.order);
+            for (UTXO utxo : candidate.claimed) {
+                Candidate other = firstClaimer.putIfAbsent(utxo, candidate);
+                if (other != null) Union(component, candidate.order, other.order);
+            }
+        }
+        Map<Integer, List<Candidate>> byRoot = new LinkedHashMap<>();
+        for (Candidate candidate : ordered) {
+            byRoot.computeIfAbsent(Find(component, candidate.order), root -> new ArrayList<>()).add(candidate);
+        }
+        return new ArrayList<>(byRoot.values());
+    }
+
+    private static int Find(int[] component, int i) {
+        while (component[i] != i) {
+            component[i] = component[component[i]];
+            i = component[i];
+        }
+        return i;
+    }
+
+    private static void Union(int[] component, int i, int j) {
+        component[Find(component, i)] = Find(component, j);
+    }
+
+    private static Comparator<Candidate> HighestFeeFirst() {
+        return (candidate1, candidate2) -> {
+            int byFee = Double.compare(candidate2.fee, candidate1.fee);
+            return byFee != 0 ? byFee : Integer.compare(candidate1.arrival, candidate2.arrival);
+        };
+    }
+
+    // Branch and bound over one component, whose candidates are in dependency order
+    private static final class Search {
+        private static final int CHOSEN = 1;
+        private static final int LEFT_OUT = 2;
+
+        private final Candidate[] candidates;
+        private final int[][] parents;
+        private final int[][] claims;
+        private final long deadline;
+        private final boolean[] chosen;
+        private final int[] claimCount;
+        private final boolean[] reachable;
+        private final int[] reachableClaimants;
+        private final double[] highestClaimantFee;
+        private boolean[] best;
+        private double bestFees;
+        private long nodes;
+
+        private Search(List<Candidate> component, long deadline) {
+            this.candidates = component.toArray(new Candidate[component.size()]);
+            this.deadline = deadline;
+            Map<Candidate, Integer> position = new IdentityHashMap<>();
+            for (int i = 0; i < candidates.length; i++) position.put(candidates[i], i);
+            Map<UTXO, Integer> claimIds = new HashMap<>();
+            parents = new int[candidates.length][];
+            claims = new int[candidates.length][];
+            for (int i = 0; i < candidates.length; i++) {
+                Candidate candidate = candidates[i];
+                parents[i] = candidate.parents.stream().mapToInt(position::get).toArray();
+                claims[i] = candidate.claimed.stream().mapToInt(utxo -> claimIds.computeIfAbsent(utxo, id -> claimIds.size())).toArray();
+            }
+            chosen = new boolean[candidates.length];
+            claimCount = new int[claimIds.size()];
+            reachable = new boolean[candidates.length];
+            reachableClaimants = new int[claimIds.size()];
+            highestClaimantFee = new double[claimIds.size()];
+            Greedy();
+        }
+
+        // In the order given, whenever the parents are in and nothing conflicts
+        private void Greedy() {
+            Integer[] inOrderGiven = new Integer[candidates.length];
+            for (int i = 0; i < inOrderGiven.length; i++) inOrderGiven[i] = i;
+            Arrays.sort(inOrderGiven, Comparator.comparingInt(i -> candidates[i].arrival));
+            boolean added = true;
+            while (added) {
+                added = false;
+                for (int i : inOrderGiven) {
+                    if (!chosen[i] && CanChoose(i)) {
+                        Choose(i, true);
+                        added = true;
+                    }
+                }
+            }
+            best = chosen.clone();
+            bestFees = FeesOf(chosen);
+            Arrays.fill(chosen, false);
+            Arrays.fill(claimCount, 0);
+        }
+
+        // Depth-first over the candidates, trying to choose each one before
+        // leaving it out; returns true if the search ended before the deadline
+        private boolean run() {
+            int[] decision = new int[candidates.length + 1];
+            int i = 0;
+            double fees = 0;
+            while (i >= 0) {
+                if ((++nodes & 0xFF) == 0 && System.nanoTime() > deadline) return false;
+                boolean backtrack;
+                if (i == candidates.length) {
+                    if (fees > bestFees) {
+                        bestFees = fees;
+                        best = chosen.clone();
+                    }
+                    backtrack = true;
+                } else if (fees + ReachableFees(i) <= bestFees) {
+                    backtrack = true;
+                } else {
+                    decision[i] = CanChoose(i) ? CHOSEN : LEFT_OUT;
+                    if (decision[i] == CHOSEN) {
+                        Choose(i, true);
+                        fees += candidates[i].fee;
+                    }
+                    i++;
+                    backtrack = false;
+                }
+                while (backtrack && --i >= 0) {
+                    if (decision[i] == CHOSEN) {
+                        Choose(i, false);
+                        fees -= candidates[i].fee;
+                        decision[i++] = LEFT_OUT;
+                        backtrack = false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Upper bound on the fees the candidates from i on can still add:
+        // the fees of those that could still be chosen, except that of the
+        // candidates competing for the same output only the highest fee counts
+        private double ReachableFees(int from) {
+            double bound = 0;
+            for (int i = from; i < candidates.length; i++) {
+                boolean possible = true;
+                for (int claim : claims[i]) possible &= claimCount[claim] == 0;
+                for (int parent : parents[i]) possible &= parent >= from ? reachable[parent] : chosen[parent];
+                reachable[i] = possible;
+                if (possible) {
+                    for (int claim : claims[i]) reachableClaimants[claim]++;
+                }
+            }
+            for (int i = from; i < candidates.length; i++) {
+                if (!reachable[i]) continue;
+                int contested = -1;
+                for (int claim : claims[i]) {
+                    if (reachableClaimants[claim] > 1) {
+                        contested = claim;
+                        break;
+                    }
+                }
+                if (contested < 0) {
+                    bound += candidates[i].fee;
+                } else if (candidates[i].fee > highestClaimantFee[contested]) {
+                    bound += candidates[i].fee - highestClaimantFee[contested];
+                    highestClaimantFee[contested] = candidates[i].fee;
+                }
+            }
+            for (int i = from; i < candidates.length; i++) {
+                for (int claim : claims[i]) {
+                    reachableClaimants[claim] = 0;
+                    highestClaimantFee[claim] = 0;
+                }
+            }
+            return bound;
+        }
+
+        private boolean CanChoose(int i) {
+            for (int parent : parents[i]) {
+                if (!chosen[parent]) return false;
+            }
+            for (int claim : claims[i]) {
+                if (claimCount[claim] > 0) return false;
+            }
+            return true;
+        }
+
+        private void Choose(int i, boolean choose) {
+            chosen[i] = choose;
+            for (int claim : claims[i]) claimCount[claim] += choose ? 1 : -1;
+        }
+
+        private double FeesOf(boolean[] set) {
+            double fees = 0;
+            for (int i = 0; i < set.length; i++) {
+                if (set[i]) fees += candidates[i].fee;
+            }
+            return fees;
+        }
+    }
+}
@@ -1,38 +1,40 @@
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.stream.Collectors;
-
 public class MaxFeeTxHandler extends TxHandler {
 
+    private long selectionBudgetMillis = 500;
+    // reads the UTXO pool of the handler, which handled transactions update in place
+    private final FeeMempool mempool;
+
     public MaxFeeTxHandler(UTXOPool utxoPool) {
         super(utxoPool);
+        this.mempool = new FeeMempool(this.utxoPool);
     }
 
-    @Override
-    public Transaction[] handleTxs(Transaction[] possibleTxs) {
-        return super.handleTxs(SortedByFeesInDecreasingOrder(possibleTxs));
-    }
-
-    private Transaction[] SortedByFeesInDecreasingOrder(Transaction[] possibleTxs) {
-        return ToArray(Arrays.asList(possibleTxs).stream()
-                             .sorted(HighFeesFirst())
-                             .collect(Collectors.toList()));
+    /* Sets the wall-clock time the search for the highest total fees may
+     * take per call to handleTxs, after which the best set found so far is
+     * handled.
+     */
+    public void setSelectionBudget(long millis) {
+        this.selectionBudgetMillis = millis;
     }
 
-    private Comparator<Transaction> HighFeesFirst() {
-        return (tx1, tx2) -> {
-            boolean tx1FeesCanBeCalculated = AllUTXOsRequiredByTransactionAreInPool(tx1);
-            boolean tx2FeesCanBeCalculated = AllUTXOsRequiredByTransactionAreInPool(tx2);
-            if (!tx1FeesCanBeCalculated && !tx2FeesCanBeCalculated) return 0;
-            if (!tx1FeesCanBeCalculated) return 1;
-            if (!tx2FeesCanBeCalculated) return -1;
-            return Fees(tx2) - Fees(tx1) < 0 ? -1 : 1;
-        };
+    /* Handles the set of mutually valid transactions with the highest total
+     * fees found by a MaxFeeSelector within the selection budget. The
+     * candidates are first ordered by a FeeMempool, whole ancestor packages
+     * by decreasing fee rate, so that the search starts from the set a
+     * child-pays-for-parent miner would pick. The handler keeps its mempool
+     * from call to call; draining it leaves it empty, as the transactions of
+     * an epoch that are not handled are dropped with it.
+     */
+    @Override
+    public Transaction[] handleTxs(Transaction[] possibleTxs) {
+        Transaction[] candidates = ByAncestorPackages(possibleTxs);
+        VerifiedSignatures verified = SignaturesVerifiedAhead(candidates);
+        MaxFeeSelector selector = new MaxFeeSelector(utxoPool, verified, selectionBudgetMillis);
+        return HandleTxsWithVerifiedSignatures(selector.select(candidates).getTransactions(), verified);
     }
 
-    private double Fees(Transaction tx) {
-        double totalClaimedUTXOs = UTXOsFromInputs(tx).mapToDouble(utxo -> utxoPool.getTxOutput(utxo).value).sum();
-        double totalOutputs = tx.getOutputs().stream().mapToDouble(output -> output.value).sum();
-        return totalClaimedUTXOs - totalOutputs;
+    private Transaction[] ByAncestorPackages(Transaction[] possibleTxs) {
+        for (Transaction tx : possibleTxs) mempool.add(tx);
+        return mempool.drainInPackageOrder();
     }
 }
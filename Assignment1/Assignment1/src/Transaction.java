@@ -30,15 +30,54 @@ public class Transaction {
       public double value;        // value in bitcoins of the output
       public RSAKey address;      // the address or public key of the recipient
 
+      private EncodedAddress encodedAddress;  // cached serialization of address
+
       public Output(double v, RSAKey addr) {
          value = v;
          address = addr;
       }
+
+      // Returns value in satoshis; throws ArithmeticException if it is not an amount
+      public long getSatoshis() {
+         return Satoshis.fromCoins(value);
+      }
+
+      // Returns the serialized address, computing it only when the address changed
+      private byte[] addressBytes() {
+         RSAKey addr = address;
+         EncodedAddress encoded = encodedAddress;
+         if (encoded == null || encoded.address != addr) {
+            encoded = new EncodedAddress(addr);
+            encodedAddress = encoded;
+         }
+         return encoded.bytes;
+      }
+   }
+
+   // Exponent followed by modulus of an address, as written in the raw data.
+   // Immutable, so it can be shared by threads verifying the same transaction
+   private static final class EncodedAddress {
+      private final RSAKey address;
+      private final byte[] bytes;
+
+      private EncodedAddress(RSAKey address) {
+         this.address = address;
+         if (address == null) {
+            // outputs without an address (e.g. in tests) serialize no key
+            this.bytes = new byte[0];
+            return;
+         }
+         byte[] exponent = address.getExponent().toByteArray();
+         byte[] modulus = address.getModulus().toByteArray();
+         this.bytes = Arrays.copyOf(exponent, exponent.length + modulus.length);
+         System.arraycopy(modulus, 0, bytes, exponent.length, modulus.length);
+      }
    }
 
    private byte[] hash;    // hash of the transaction, its unique id
    private ArrayList<Input> inputs;   // inputs
    private ArrayList<Output> outputs; // outputs
+   private RawOutputs rawOutputsCache; // cached serialization of outputs
 
    public Transaction() {
       inputs = new ArrayList<Input>();
@@ -68,7 +107,7 @@ public class Transaction {
    public void removeInput(UTXO ut) {
       for (int i = 0; i < inputs.size(); i++) {
          Input in = inputs.get(i);
-         UTXO u = new UTXO(in.prevTxHash, in.outputIndex);
+         UTXO u = new UTXO(in);
          if (u.equals(ut)) {
             inputs.remove(i);
             return;
@@ -78,37 +117,20 @@ public class Transaction {
 
    public byte[] getRawDataToSign(int index) {
       // ith input and all outputs
-      ArrayList<Byte> sigData = new ArrayList<Byte>();
       if (index > inputs.size()) 
          return null;
       Input in = inputs.get(index);
       byte[] prevTxHash = in.prevTxHash;
-      ByteBuffer b = ByteBuffer.allocate(Integer.SIZE/8);
-      b.putInt(in.outputIndex);
-      byte[] outputIndex = b.array();
+      byte[] rawOutputs = rawOutputs();
+      int size = Integer.SIZE/8 + rawOutputs.length;
       if (prevTxHash != null)
-         for (int i = 0; i < prevTxHash.length; i++)
-            sigData.add(prevTxHash[i]);
-      for (int i = 0; i < outputIndex.length; i++)
-         sigData.add(outputIndex[i]);
-      for (Output op : outputs) {
-         ByteBuffer bo = ByteBuffer.allocate(Double.SIZE/8);
-         bo.putDouble(op.value);
-         byte[] value = bo.array();
-         byte[] addressExponent = op.address.getExponent().toByteArray();
-         byte[] addressModulus = op.address.getModulus().toByteArray();
-         for (int i = 0; i < value.length; i++)
-            sigData.add(value[i]);
-         for (int i = 0; i < addressExponent.length; i++)
-            sigData.add(addressExponent[i]);
-         for (int i = 0; i < addressModulus.length; i++)
-            sigData.add(addressModulus[i]);
-      }
-      byte[] sigD = new byte[sigData.size()];
-      int i = 0;
-      for(Byte sb : sigData)
-         sigD[i++] = sb;
-      return sigD;
+         size += prevTxHash.length;
+      ByteBuffer sigData = ByteBuffer.wrap(new byte[size]);
+      if (prevTxHash != null)
+         sigData.put(prevTxHash);
+      sigData.putInt(in.outputIndex);
+      sigData.put(rawOutputs);
+      return sigData.array();
    }
 
    public void addSignature(byte[] signature, int index) {
@@ -116,40 +138,77 @@ public class Transaction {
    }
 
    public byte[] getRawTx() {
-      ArrayList<Byte> rawTx = new ArrayList<Byte>();
+      byte[] rawOutputs = rawOutputs();
+      int size = rawOutputs.length;
       for (Input in : inputs) {
-         byte[] prevTxHash = in.prevTxHash;
-         ByteBuffer b = ByteBuffer.allocate(Integer.SIZE/8);
-         b.putInt(in.outputIndex);
-         byte[] outputIndex = b.array();
-         byte[] signature = in.signature;
-         if (prevTxHash != null)
-            for (int i = 0; i < prevTxHash.length; i++)
-               rawTx.add(prevTxHash[i]);
-         for (int i = 0; i < outputIndex.length; i++)
-            rawTx.add(outputIndex[i]);
-         if (signature != null)
-            for (int i = 0; i < signature.length; i++)
-               rawTx.add(signature[i]);
+         size += Integer.SIZE/8;
+         if (in.prevTxHash != null)
+            size += in.prevTxHash.length;
+         if (in.signature != null)
+            size += in.signature.length;
       }
-      for (Output op : outputs) {
-         ByteBuffer b = ByteBuffer.allocate(Double.SIZE/8);
-         b.putDouble(op.value);
-         byte[] value = b.array();
-         byte[] addressExponent = op.address.getExponent().toByteArray();
-         byte[] addressModulus = op.address.getModulus().toByteArray();
-         for (int i = 0; i < value.length; i++)
-            rawTx.add(value[i]);
-         for (int i = 0; i < addressExponent.length; i++)
-            rawTx.add(addressExponent[i]);
-         for (int i = 0; i < addressModulus.length; i++)
-            rawTx.add(addressModulus[i]);
+      ByteBuffer rawTx = ByteBuffer.wrap(new byte[size]);
+      for (Input in : inputs) {
+         if (in.prevTxHash != null)
+            rawTx.put(in.prevTxHash);
+         rawTx.putInt(in.outputIndex);
+         if (in.signature != null)
+            rawTx.put(in.signature);
+      }
+      rawTx.put(rawOutputs);
+      return rawTx.array();
+   }
+
+   // Returns the value and address of every output, serialized in order. The
+   // bytes are shared by the signing data of every input and by the raw
+   // transaction, and serialized again only once an output was added, removed,
+   // replaced or modified
+   private byte[] rawOutputs() {
+      RawOutputs cached = rawOutputsCache;
+      if (cached == null || !cached.isFor(outputs)) {
+         cached = new RawOutputs(outputs);
+         rawOutputsCache = cached;
+      }
+      return cached.bytes;
+   }
+
+   // Serialized outputs together with the state of the outputs they were
+   // serialized from. Immutable, so it can be shared by threads verifying the
+   // same transaction
+   private static final class RawOutputs {
+      private final Output[] outputs;
+      private final long[] values;
+      private final RSAKey[] addresses;
+      private final byte[] bytes;
+
+      private RawOutputs(ArrayList<Output> ops) {
+         outputs = ops.toArray(new Output[ops.size()]);
+         values = new long[outputs.length];
+         addresses = new RSAKey[outputs.length];
+         int size = 0;
+         for (int i = 0; i < outputs.length; i++) {
+            values[i] = Double.doubleToRawLongBits(outputs[i].value);
+            addresses[i] = outputs[i].address;
+            size += Double.SIZE/8 + outputs[i].addressBytes().length;
+         }
+         ByteBuffer b = ByteBuffer.wrap(new byte[size]);
+         for (int i = 0; i < outputs.length; i++) {
+            b.putLong(values[i]);
+            b.put(outputs[i].addressBytes());
+         }
+         bytes = b.array();
+      }
+
+      private boolean isFor(ArrayList<Output> ops) {
+         if (ops.size() != outputs.length)
+            return false;
+         for (int i = 0; i < outputs.length; i++) {
+            Output op = ops.get(i);
+            if (op != outputs[i] || Double.doubleToRawLongBits(op.value) != values[i] || op.address != addresses[i])
+               return false;
+         }
+         return true;
       }
-      byte[] tx = new byte[rawTx.size()];
-      int i = 0;
-      for(Byte b : rawTx)
-         tx[i++] = b;
-      return tx;
    }
 
    public void finalize() {
@@ -1,13 +1,35 @@
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toList;
-
 public class TxHandler {
 
 	protected UTXOPool utxoPool;
 
+    // The rules in the order of the comment of isValidTx, and starting with
+    // those that only look at the transaction itself; the rules reading the
+    // claimed outputs must come after MISSING_INPUT
+    private static final RejectionReason[] DOCUMENTED_ORDER = RejectionReason.values();
+    private static final RejectionReason[] CHEAPEST_FIRST = {
+            RejectionReason.DUPLICATE_INPUT,
+            RejectionReason.NEGATIVE_OUTPUT,
+            RejectionReason.MISSING_INPUT,
+            RejectionReason.OUTPUTS_EXCEED_INPUTS,
+            RejectionReason.INVALID_SIGNATURE
+    };
+
+    // Looked up when there is neither a stage nor signatures verified ahead
+    private static final VerifiedSignatures NO_VERIFIED_SIGNATURES = new VerifiedSignatures();
+
+    private SignatureVerificationStage signatureVerificationStage;
+    private RejectionReason[] ruleOrder = CHEAPEST_FIRST;
+    private ValidationMetrics validationMetrics;
+    private VerifiedSignatures verifiedSignatures;
+    private Executor partitionExecutor;
+    private int partitionTasks;
+
 	/* Creates a public ledger whose current UTXOPool (collection of unspent
 	 * transaction outputs) is utxoPool. This should make a defensive copy of
 	 * utxoPool by using the UTXOPool(UTXOPool uPool) constructor.
@@ -16,6 +38,45 @@ public class TxHandler {
 		this.utxoPool = new UTXOPool(utxoPool);
 	}
 
+    /* Opts into verifying signatures concurrently on the given stage. Pass
+     * null to go back to verifying them one at a time on the caller thread.
+     */
+    public void setSignatureVerificationStage(SignatureVerificationStage signatureVerificationStage) {
+        this.signatureVerificationStage = signatureVerificationStage;
+    }
+
+    /* Checks the rules of isValidTx from the cheapest to the most expensive,
+     * with the signatures last, so that a transaction breaking a cheap rule is
+     * rejected without any RSA work; this is the default. Otherwise they are
+     * checked in the order of the comment of isValidTx. The same transactions
+     * are valid either way, but one breaking several rules may be rejected for
+     * another reason, and a stream may then reject it at once rather than
+     * park it.
+     */
+    public void setCheapestRulesFirst(boolean cheapestRulesFirst) {
+        this.ruleOrder = cheapestRulesFirst ? CHEAPEST_FIRST : DOCUMENTED_ORDER;
+    }
+
+    /* Records the invocations, rejections and latency of every rule into
+     * metrics. Pass null to stop recording.
+     */
+    public void setValidationMetrics(ValidationMetrics validationMetrics) {
+        this.validationMetrics = validationMetrics;
+    }
+
+    /* Opts into splitting each epoch of handleTxs into the components of
+     * EpochPartition, packed into at most tasks groups that are decided
+     * concurrently on executor, each against its own copy of the outputs it
+     * claims. The pool is only updated once every group is decided, in the
+     * order the sequential pass would have accepted the transactions, so the
+     * result does not depend on thread scheduling. Pass null to decide every
+     * epoch in one sequential pass again.
+     */
+    public void setPartitionExecutor(Executor executor, int tasks) {
+        this.partitionExecutor = executor;
+        this.partitionTasks = tasks;
+    }
+
 	/* Returns true if 
 	 * (1) all outputs claimed by tx are in the current UTXO pool, 
 	 * (2) the signatures on each input of tx are valid, 
@@ -28,67 +89,379 @@ public class TxHandler {
 
 	public boolean isValidTx(Transaction tx) {
 
-        return  AllUTXOsRequiredByTransactionAreInPool(tx) &&
-                AllSignaturesAreValid(tx) &&
-                AllUTXOsAreClaimedOnlyOnce(tx) &&
-                AllTxOutputsHaveNonNegativeValues(tx) &&
-                TotalClaimedUTXOsAreAtLeastEqualToOutputs(tx);
+        return validate(tx).isValid();
 	}
 
-    private boolean TotalClaimedUTXOsAreAtLeastEqualToOutputs(Transaction tx) {
-        double totalClaimedUTXOs = UTXOsFromInputs(tx).mapToDouble(utxo -> utxoPool.getTxOutput(utxo).value).sum();
-        double totalOutputs = tx.getOutputs().stream().mapToDouble(output -> output.value).sum();
-        return totalClaimedUTXOs >= totalOutputs;
+    /* Same as isValidTx, returning the reason of the first rule tx breaks.
+     *
+     * Each claimed output is looked up in the pool once, the first time a
+     * rule needs it, and every later rule reads the outputs already found.
+     * Signatures are checked one input at a time and stop at the first one
+     * that is wrong.
+     */
+    public ValidationResult validate(Transaction tx) {
+        Claims claims = new Claims(tx);
+        ValidationResult result = ValidationResult.VALID;
+        for (RejectionReason rule : ruleOrder) {
+            if (!Follows(claims, rule)) {
+                result = ValidationResult.rejected(rule);
+                break;
+            }
+        }
+        if (validationMetrics != null) validationMetrics.recordResult(result);
+        return result;
+    }
+
+    private boolean Follows(Claims claims, RejectionReason rule) {
+        if (validationMetrics == null) return Check(claims, rule);
+        long start = System.nanoTime();
+        boolean followed = Check(claims, rule);
+        validationMetrics.recordRule(rule, followed, System.nanoTime() - start);
+        return followed;
+    }
+
+    private boolean Check(Claims claims, RejectionReason rule) {
+        switch (rule) {
+            case MISSING_INPUT: return AllUTXOsRequiredByTransactionAreInPool(claims);
+            case INVALID_SIGNATURE: return AllSignaturesAreValid(claims);
+            case DUPLICATE_INPUT: return AllUTXOsAreClaimedOnlyOnce(claims);
+            case NEGATIVE_OUTPUT: return AllTxOutputsHaveNonNegativeValues(claims.tx);
+            case OUTPUTS_EXCEED_INPUTS: return TotalClaimedUTXOsAreAtLeastEqualToOutputs(claims);
+            default: throw new IllegalArgumentException("unknown rule " + rule);
+        }
+    }
+
+    // Compares exact sums of satoshis; amounts beyond a long of satoshis are invalid
+    private boolean TotalClaimedUTXOsAreAtLeastEqualToOutputs(Claims claims) {
+        try {
+            return Satoshis.sumOf(Arrays.asList(claims.outputs())) >= Satoshis.sumOf(claims.tx.getOutputs());
+        } catch (ArithmeticException e) {
+            return false;
+        }
     }
 
     private boolean AllTxOutputsHaveNonNegativeValues(Transaction tx) {
-        return tx.getOutputs().stream().allMatch(output -> output.value >= 0);
+        for (Transaction.Output output : tx.getOutputs()) {
+            if (!(output.value >= 0)) return false;
+        }
+        return true;
+    }
+
+    private boolean AllUTXOsAreClaimedOnlyOnce(Claims claims) {
+        UTXO[] utxos = claims.utxos;
+        if (utxos.length > 8) return utxos.length == new HashSet<>(Arrays.asList(utxos)).size();
+        for (int i = 0; i < utxos.length; i++) {
+            for (int j = 0; j < i; j++) {
+                if (utxos[i].equals(utxos[j])) return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean AllSignaturesAreValid(Claims claims) {
+        Transaction tx = claims.tx;
+        Transaction.Output[] outputs = claims.outputs();
+        VerifiedSignatures verified = SignaturesVerifiedAhead(tx);
+        for (int index = 0; index < outputs.length; index++) {
+            Transaction.Input txInput = tx.getInput(index);
+            if (verified.covers(tx, index, outputs[index])) continue;
+            if (txInput.signature == null) return false;
+            if (validationMetrics != null) validationMetrics.recordSignatureVerification();
+            if (!outputs[index].address.verifySignature(tx.getRawDataToSign(index), txInput.signature)) return false;
+        }
+        return true;
     }
 
-    private boolean AllUTXOsAreClaimedOnlyOnce(Transaction tx) {
-        List<UTXO> claimedUtxos = UTXOsFromInputs(tx).collect(toList());
-        return claimedUtxos.size() == new HashSet<>(claimedUtxos).size();
+    private VerifiedSignatures SignaturesVerifiedAhead(Transaction tx) {
+        if (verifiedSignatures != null) return verifiedSignatures;
+        if (signatureVerificationStage == null) return NO_VERIFIED_SIGNATURES;
+        return signatureVerificationStage.verify(new Transaction[]{tx}, utxoPool);
     }
 
-    private boolean AllSignaturesAreValid(Transaction tx) {
-        ArrayList<Transaction.Input> txInputs = tx.getInputs();
-        return !(IntStream.range(0, txInputs.size())
-                .mapToObj(index -> {
-                    Transaction.Input txInput = txInputs.get(index);
-                    Transaction.Output txOutput = utxoPool.getTxOutput(new UTXO(txInput.prevTxHash, txInput.outputIndex));
-                    return txInput.signature != null && txOutput.address.verifySignature(tx.getRawDataToSign(index), txInput.signature);
-                }).collect(toList())
-                .contains(false));
+    private boolean AllUTXOsRequiredByTransactionAreInPool(Claims claims) {
+        for (Transaction.Output claimed : claims.outputs()) {
+            if (claimed == null) return false;
+        }
+        return true;
     }
 
-    protected boolean AllUTXOsRequiredByTransactionAreInPool(Transaction tx) {
-        ArrayList<UTXO> utxosInPool = utxoPool.getAllUTXO();
-        return UTXOsFromInputs(tx).allMatch(utxosInPool::contains);
+    // The outputs claimed by a transaction, looked up in the pool at most once
+    // for all the rules
+    private final class Claims {
+        private final Transaction tx;
+        private final UTXO[] utxos;
+        private Transaction.Output[] outputs;
+
+        private Claims(Transaction tx) {
+            this.tx = tx;
+            this.utxos = new UTXO[tx.numInputs()];
+            for (int index = 0; index < utxos.length; index++) utxos[index] = new UTXO(tx.getInput(index));
+        }
+
+        // the claimed outputs, null where the pool has none
+        private Transaction.Output[] outputs() {
+            if (outputs == null) {
+                outputs = new Transaction.Output[utxos.length];
+                for (int index = 0; index < utxos.length; index++) outputs[index] = utxoPool.getTxOutput(utxos[index]);
+            }
+            return outputs;
+        }
     }
 
     /* Handles each epoch by receiving an unordered array of proposed
      * transactions, checking each transaction for correctness,
      * returning a mutually valid array of accepted transactions,
      * and updating the current UTXO pool as appropriate.
+     *
+     * Transactions are checked in rounds, in their order in possibleTxs. A
+     * rejected transaction that claims an output missing from the pool is
+     * parked on that output and only checked again once a later transaction
+     * creates it: in the current round if it comes after its parent, in the
+     * next one otherwise. This accepts the same transactions, in the same
+     * order, as re-checking every rejected transaction until a round accepts
+     * nothing, but each transaction is only checked again when it may have
+     * become valid.
+     *
+     * With a signature verification stage, the signatures of the whole epoch
+     * are verified concurrently before the pool is modified, and the
+     * sequential pass only reuses those results. With a partition executor,
+     * the independent parts of the epoch are decided concurrently instead, to
+     * the same result.
      */
 	public Transaction[] handleTxs(Transaction[] possibleTxs) {
-        ArrayList<Transaction> acceptedTransactions = new ArrayList<>();
-        ArrayList<Transaction> notAcceptedTransactions = new ArrayList<>();
-        for (Transaction tx : possibleTxs) {
-            if (isValidTx(tx)){
-                UpdateUTXOPool(tx);
-                acceptedTransactions.add(tx);
-            }else{
-                notAcceptedTransactions.add(tx);
+        if (signatureVerificationStage == null) return HandleTxsInRounds(possibleTxs);
+        return HandleTxsWithVerifiedSignatures(possibleTxs, signatureVerificationStage.verify(possibleTxs, utxoPool));
+	}
+
+    /* Returns the signatures of possibleTxs verified ahead by the signature
+     * verification stage, or none without a stage.
+     */
+    protected VerifiedSignatures SignaturesVerifiedAhead(Transaction[] possibleTxs) {
+        if (signatureVerificationStage == null) return new VerifiedSignatures();
+        return signatureVerificationStage.verify(possibleTxs, utxoPool);
+    }
+
+    /* Same as handleTxs, reusing the inputs of verified whose signature is
+     * already known to be valid for the message they sign and the output
+     * they claim.
+     */
+    protected Transaction[] HandleTxsWithVerifiedSignatures(Transaction[] possibleTxs, VerifiedSignatures verified) {
+        verifiedSignatures = verified;
+        try {
+            return HandleTxsInRounds(possibleTxs);
+        } finally {
+            verifiedSignatures = null;
+        }
+    }
+
+    private Transaction[] HandleTxsInRounds(Transaction[] possibleTxs) {
+        if (partitionExecutor != null && partitionTasks > 1 && possibleTxs.length > 1) {
+            return HandleGroupsConcurrently(possibleTxs);
+        }
+        TxStream stream = new TxStream(TxListener.IGNORE, verifiedSignatures, false);
+        stream.submit(possibleTxs);
+        return stream.endEpoch();
+    }
+
+    /* A transaction is accepted in the same round, counted from 0, whether
+     * its group is decided alone or within the whole epoch, and every round
+     * accepts in ascending index order, so sorting the acceptances of all the
+     * groups by round and index gives the order of the sequential pass.
+     */
+    private Transaction[] HandleGroupsConcurrently(Transaction[] possibleTxs) {
+        List<int[]> groups = EpochPartition.groups(possibleTxs, partitionTasks);
+        List<CompletableFuture<GroupDecision>> decisions = new ArrayList<>(groups.size());
+        for (int[] group : groups) {
+            decisions.add(CompletableFuture.supplyAsync(() -> GroupDecided(possibleTxs, group), partitionExecutor));
+        }
+
+        List<long[]> acceptances = new ArrayList<>();
+        for (CompletableFuture<GroupDecision> decision : decisions) {
+            GroupDecision group = decision.join();
+            if (validationMetrics != null) validationMetrics.add(group.metrics);
+            acceptances.addAll(group.acceptances);
+        }
+        acceptances.sort(Comparator.<long[]>comparingLong(acceptance -> acceptance[0]).thenComparingLong(acceptance -> acceptance[1]));
+        Transaction[] accepted = new Transaction[acceptances.size()];
+        for (int i = 0; i < accepted.length; i++) {
+            accepted[i] = possibleTxs[(int) acceptances.get(i)[1]];
+            UpdateUTXOPool(accepted[i]);
+        }
+        return accepted;
+    }
+
+    /* Decides the transactions of possibleTxs at the indices of group with
+     * a handler whose pool only holds the outputs they claim.
+     */
+    private GroupDecision GroupDecided(Transaction[] possibleTxs, int[] group) {
+        TxHandler handler = new TxHandler(new UTXOPool());
+        handler.ruleOrder = ruleOrder;
+        if (validationMetrics != null) handler.validationMetrics = new ValidationMetrics();
+        Transaction[] txs = new Transaction[group.length];
+        for (int i = 0; i < group.length; i++) {
+            txs[i] = possibleTxs[group[i]];
+            UTXOsFromInputs(txs[i])
+                    .filter(utxo -> utxoPool.contains(utxo))
+                    .forEach(utxo -> handler.utxoPool.addUTXO(utxo, utxoPool.getTxOutput(utxo)));
+        }
+        TxStream stream = handler.new TxStream(TxListener.IGNORE, verifiedSignatures, false);
+        stream.submit(txs);
+        stream.RunRemainingRounds();
+        GroupDecision decision = new GroupDecision(handler.validationMetrics);
+        for (int i = 0; i < stream.acceptedIndices.size(); i++) {
+            decision.acceptances.add(new long[]{stream.acceptedRounds.get(i), group[stream.acceptedIndices.get(i)]});
+        }
+        return decision;
+    }
+
+    /* The round and index in the epoch of every transaction a group accepted,
+     * with what its rules recorded
+     */
+    private static final class GroupDecision {
+        private final List<long[]> acceptances = new ArrayList<>();
+        private final ValidationMetrics metrics;
+
+        private GroupDecision(ValidationMetrics metrics) {
+            this.metrics = metrics;
+        }
+    }
+
+    /* Opens a stream handling transactions as they arrive, one at a time or
+     * in micro-batches, and reporting each decision to listener as soon as it
+     * is made. The transactions submitted between two calls to endEpoch form
+     * an epoch, which ends with the same accepted transactions, in the same
+     * order, as handleTxs given them in submission order. Only one stream
+     * should be open on a handler at a time.
+     */
+    public TxStream openStream(TxListener listener) {
+        return new TxStream(listener, new VerifiedSignatures(), true);
+    }
+
+    /* The first round of handleTxs runs as transactions are submitted: each
+     * one is checked on arrival against the pool left by the ones before it.
+     * A transaction claiming an output that is missing is parked on it, and
+     * once a later transaction creates that output it goes to the next round,
+     * which like every later round only runs when the epoch ends: until then
+     * a later transaction may still claim the outputs it claims.
+     */
+    public class TxStream {
+        private final TxListener listener;
+        private final VerifiedSignatures verified;
+        private final boolean verifiesSubmissions;
+        private final ArrayList<Transaction> submitted = new ArrayList<>();
+        private final ArrayList<Transaction> accepted = new ArrayList<>();
+        private final HashMap<UTXO, List<Integer>> parkedTransactions = new HashMap<>();
+        private PriorityQueue<Integer> currentRound = new PriorityQueue<>();
+        private PriorityQueue<Integer> nextRound = new PriorityQueue<>();
+        private final ArrayList<Integer> acceptedIndices = new ArrayList<>();
+        private final ArrayList<Integer> acceptedRounds = new ArrayList<>();
+        private int round;
+
+        private TxStream(TxListener listener, VerifiedSignatures verified, boolean verifiesSubmissions) {
+            this.listener = listener;
+            this.verified = verified;
+            this.verifiesSubmissions = verifiesSubmissions;
+        }
+
+        public void submit(Transaction tx) {
+            submit(new Transaction[]{tx});
+        }
+
+        /* Submits txs in order. With a signature verification stage, their
+         * signatures are verified concurrently first.
+         */
+        public void submit(Transaction[] txs) {
+            if (verifiesSubmissions && signatureVerificationStage != null) {
+                verified.addAll(signatureVerificationStage.verify(txs, utxoPool));
             }
+            WithVerifiedSignatures(() -> {
+                for (Transaction tx : txs) {
+                    submitted.add(tx);
+                    currentRound.add(submitted.size() - 1);
+                    RunCurrentRound();
+                }
+            });
         }
 
-        if(!acceptedTransactions.isEmpty()){
-            acceptedTransactions.addAll(handleTxs(notAcceptedTransactions));
+        /* Runs the remaining rounds, rejects the transactions still parked and
+         * returns the transactions accepted in the epoch, in order of
+         * acceptance. The stream then starts a new epoch.
+         */
+        public Transaction[] endEpoch() {
+            RunRemainingRounds();
+            Transaction[] acceptedInEpoch = ToArray(accepted);
+            submitted.clear();
+            accepted.clear();
+            acceptedIndices.clear();
+            acceptedRounds.clear();
+            round = 0;
+            parkedTransactions.clear();
+            if (verifiesSubmissions) verified.clear();
+            return acceptedInEpoch;
         }
 
-        return ToArray(acceptedTransactions);
-	}
+        private void RunRemainingRounds() {
+            WithVerifiedSignatures(() -> {
+                while (!nextRound.isEmpty()) {
+                    PriorityQueue<Integer> finishedRound = currentRound;
+                    currentRound = nextRound;
+                    nextRound = finishedRound;
+                    round++;
+                    RunCurrentRound();
+                }
+            });
+            parkedTransactions.values().forEach(
+                    indices -> indices.forEach(index -> listener.rejected(submitted.get(index), RejectionReason.MISSING_INPUT)));
+        }
+
+        private void RunCurrentRound() {
+            while (!currentRound.isEmpty()) {
+                int index = currentRound.poll();
+                Transaction tx = submitted.get(index);
+                RejectionReason reason = validate(tx).getReason();
+                if (reason == null) {
+                    UpdateUTXOPool(tx);
+                    accepted.add(tx);
+                    acceptedIndices.add(index);
+                    acceptedRounds.add(round);
+                    listener.accepted(tx);
+                    ReleaseParkedChildren(tx, index);
+                } else if (reason == RejectionReason.MISSING_INPUT) {
+                    ParkOnFirstMissingUTXO(tx, index);
+                } else {
+                    listener.rejected(tx, reason);
+                }
+            }
+        }
+
+        private void ParkOnFirstMissingUTXO(Transaction tx, int index) {
+            UTXOsFromInputs(tx)
+                    .filter(utxo -> !utxoPool.contains(utxo))
+                    .findFirst()
+                    .ifPresent(utxo -> {
+                        parkedTransactions.computeIfAbsent(utxo, missing -> new ArrayList<>()).add(index);
+                        listener.parked(tx, utxo);
+                    });
+        }
+
+        private void ReleaseParkedChildren(Transaction parent, int parentIndex) {
+            for (int outputIndex = 0; outputIndex < parent.numOutputs(); outputIndex++) {
+                List<Integer> children = parkedTransactions.remove(new UTXO(parent.getHash(), outputIndex));
+                if (children == null) continue;
+                children.forEach(childIndex -> (childIndex > parentIndex ? currentRound : nextRound).add(childIndex));
+            }
+        }
+
+        private void WithVerifiedSignatures(Runnable decisions) {
+            VerifiedSignatures previous = verifiedSignatures;
+            verifiedSignatures = verified;
+            try {
+                decisions.run();
+            } finally {
+                verifiedSignatures = previous;
+            }
+        }
+    }
 
     private void UpdateUTXOPool(Transaction tx) {
         UTXOsFromInputs(tx).forEach(utxo -> utxoPool.removeUTXO(utxo));
@@ -96,16 +469,12 @@ public class TxHandler {
                 .forEach(index -> utxoPool.addUTXO(new UTXO(tx.getHash(), index), tx.getOutputs().get(index)));
     }
 
-    private List<Transaction> handleTxs(ArrayList<Transaction> notAcceptedTransactions) {
-        return Arrays.asList(handleTxs(ToArray(notAcceptedTransactions)));
-    }
-
     protected Transaction[] ToArray(List<Transaction> transactions) {
         return transactions.toArray(new Transaction[transactions.size()]);
     }
 
     protected Stream<UTXO> UTXOsFromInputs(Transaction tx) {
-        return tx.getInputs().stream().map(input -> new UTXO(input.prevTxHash, input.outputIndex));
+        return tx.getInputs().stream().map(input -> new UTXO(input));
     }
 
     public UTXOPool getUTXOPool() {
@@ -0,0 +1,29 @@
+/* Receives the decisions of a TxHandler.TxStream as soon as they are made,
+ * on the thread submitting the transactions.
+ */
+public interface TxListener {
+
+    /* A listener ignoring every decision */
+    TxListener IGNORE = new TxListener() {
+        @Override
+        public void accepted(Transaction tx) {
+        }
+
+        @Override
+        public void rejected(Transaction tx, RejectionReason reason) {
+        }
+    };
+
+    /* tx was accepted and its outputs added to the UTXO pool */
+    void accepted(Transaction tx);
+
+    /* tx was rejected for good in the current epoch */
+    void rejected(Transaction tx, RejectionReason reason);
+
+    /* tx claims missing, which no transaction of the epoch created yet, and
+     * waits for it; it is checked again if a later transaction creates it,
+     * and rejected with MISSING_INPUT when the epoch ends otherwise.
+     */
+    default void parked(Transaction tx, UTXO missing) {
+    }
+}
@@ -1,37 +1,71 @@
-/* 
+/*
  * UTXO.java
- * 
+ *
  * This class represents an unspent transaction output (UTXO)
  */
 
 import java.util.Arrays;
 
 public class UTXO implements Comparable<UTXO> {
-   
-   // Hash of the transaction from which this UTXO originates
-   private byte[] txHash;
-   
+
+   // Length of a SHA-256 transaction hash, the only one stored as longs
+   private static final int HASH_LENGTH = 32;
+
+   // Hash of the transaction from which this UTXO originates, as four
+   // big-endian longs when it is HASH_LENGTH bytes long
+   private final long hash0, hash1, hash2, hash3;
+
+   // Hash of the transaction from which this UTXO originates when it is not
+   // HASH_LENGTH bytes long, null otherwise
+   private final byte[] otherTxHash;
+
    // Index of the corresponding output in said transaction
-   private int index;  
-   
-   // Creates a new UTXO corresponding to the output with index <index> in the 
+   private final int index;
+
+   // Computed once, since UTXOs are mostly used as hash keys
+   private final int hashCode;
+
+   // Creates a new UTXO corresponding to the output with index <index> in the
    // transaction whose hash is <txHash>
    public UTXO(byte[] txHash, int index) {
-      this.txHash = Arrays.copyOf(txHash, txHash.length);
+      if (txHash.length == HASH_LENGTH) {
+         this.hash0 = LongAt(txHash, 0);
+         this.hash1 = LongAt(txHash, 8);
+         this.hash2 = LongAt(txHash, 16);
+         this.hash3 = LongAt(txHash, 24);
+         this.otherTxHash = null;
+      } else {
+         this.hash0 = this.hash1 = this.hash2 = this.hash3 = 0;
+         this.otherTxHash = Arrays.copyOf(txHash, txHash.length);
+      }
       this.index = index;
+      this.hashCode = computeHashCode();
+   }
+
+   // Creates a new UTXO corresponding to the output claimed by <input>. The
+   // hash of <input> is read as it is now, later changes to it are not seen
+   public UTXO(Transaction.Input input) {
+      this(input.prevTxHash, input.outputIndex);
    }
-   
+
    // Returns the transaction hash of this UTXO
    public byte[] getTxHash() {
+      if (otherTxHash != null)
+         return otherTxHash;
+      byte[] txHash = new byte[HASH_LENGTH];
+      PutLong(txHash, 0, hash0);
+      PutLong(txHash, 8, hash1);
+      PutLong(txHash, 16, hash2);
+      PutLong(txHash, 24, hash3);
       return txHash;
    }
-   
+
    // Returns the index of this UTXO
    public int getIndex() {
       return index;
    }
-   
-   // Compares this UTXO to the one specified by <other>, considering them equal if 
+
+   // Compares this UTXO to the one specified by <other>, considering them equal if
    // they have <txHash> arrays with equal contents and equal <index> values
    public boolean equals(Object other) {
       if (other == null) {
@@ -40,52 +74,88 @@ public class UTXO implements Comparable<UTXO> {
       if (getClass() != other.getClass()) {
          return false;
       }
-      
+
       UTXO utxo = (UTXO) other;
-      byte[] hash = utxo.txHash;
-      int in = utxo.index;
-      if (hash.length != txHash.length || index != in)
+      if (hashCode != utxo.hashCode || index != utxo.index)
          return false;
-      for (int i = 0; i < hash.length; i++) {
-         if (hash[i] != txHash[i])
-            return false;
-      }
-      return true;
+      if (otherTxHash != null || utxo.otherTxHash != null)
+         return otherTxHash != null && utxo.otherTxHash != null && Arrays.equals(otherTxHash, utxo.otherTxHash);
+      return hash0 == utxo.hash0 && hash1 == utxo.hash1 && hash2 == utxo.hash2 && hash3 == utxo.hash3;
    }
-   
+
    // Simple implementation of a UTXO hashCode that respects equality of UTXOs
    // (i.e. utxo1.equals(utxo2) => utxo1.hashCode() == utxo2.hashCode())
    public int hashCode() {
+      return hashCode;
+   }
+
+   private int computeHashCode() {
       int hash = 1;
       hash = hash * 17 + index;
-      hash = hash * 31 + Arrays.hashCode(txHash);
-      return hash;
+      if (otherTxHash != null)
+         return hash * 31 + Arrays.hashCode(otherTxHash);
+      long txHash = ((hash0 * 31 + hash1) * 31 + hash2) * 31 + hash3;
+      return hash * 31 + (int) (txHash ^ (txHash >>> 32));
    }
-   
+
    // Compares this UTXO to the one specified by <utxo>
    public int compareTo(UTXO utxo) {
-      byte[] hash = utxo.txHash;
       int in = utxo.index;
-      if (in > index) 
+      if (in > index)
          return -1;
       else if (in < index)
          return 1;
       else {
-         int len1 = txHash.length;
-         int len2 = hash.length;
-         if (len2 > len1)
-            return -1;
-         else if (len2 < len1)
-            return 1;
-         else {
-            for (int i = 0; i < len1; i++) {
-               if (hash[i] > txHash[i])
-                  return -1;
-               else if (hash[i] < txHash[i])
-                  return 1;
-            }
-            return 0;
+         if (otherTxHash != null || utxo.otherTxHash != null)
+            return CompareBytes(getTxHash(), utxo.getTxHash());
+         if (hash0 != utxo.hash0)
+            return CompareLongs(hash0, utxo.hash0);
+         if (hash1 != utxo.hash1)
+            return CompareLongs(hash1, utxo.hash1);
+         if (hash2 != utxo.hash2)
+            return CompareLongs(hash2, utxo.hash2);
+         return CompareLongs(hash3, utxo.hash3);
+      }
+   }
+
+   // Compares two hashes by length, then byte by byte
+   private static int CompareBytes(byte[] txHash, byte[] hash) {
+      int len1 = txHash.length;
+      int len2 = hash.length;
+      if (len2 > len1)
+         return -1;
+      else if (len2 < len1)
+         return 1;
+      else {
+         for (int i = 0; i < len1; i++) {
+            if (hash[i] > txHash[i])
+               return -1;
+            else if (hash[i] < txHash[i])
+               return 1;
          }
+         return 0;
+      }
+   }
+
+   // Compares the first differing (signed) byte of two packed parts of a hash
+   private static int CompareLongs(long mine, long theirs) {
+      if (mine == theirs)
+         return 0;
+      int shift = 56 - (Long.numberOfLeadingZeros(mine ^ theirs) & ~7);
+      return Integer.signum(Byte.compare((byte) (mine >>> shift), (byte) (theirs >>> shift)));
+   }
+
+   private static long LongAt(byte[] bytes, int offset) {
+      long value = 0;
+      for (int i = offset; i < offset + 8; i++)
+         value = (value << 8) | (bytes[i] & 0xFF);
+      return value;
+   }
+
+   private static void PutLong(byte[] bytes, int offset, long value) {
+      for (int i = offset + 7; i >= offset; i--) {
+         bytes[i] = (byte) value;
+         value >>>= 8;
       }
    }
 }
@@ -6,6 +6,7 @@
  */
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Set;
 
@@ -46,6 +47,17 @@ public class UTXOPool {
       return H.containsKey(utxo);
    }
    
+   // Returns true if every UTXO in <utxos> is in the pool and false otherwise.
+   // Each UTXO is answered by a single hash lookup, so the cost depends on
+   // the number of UTXOs asked for and not on the size of the pool
+   public boolean containsAll(Collection<UTXO> utxos) {
+      for (UTXO ut : utxos) {
+         if (!H.containsKey(ut))
+            return false;
+      }
+      return true;
+   }
+   
    // Returns an ArrayList of all UTXOs in the pool
    public ArrayList<UTXO> getAllUTXO() {
       Set<UTXO> setUTXO = H.keySet();
@@ -0,0 +1,118 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+/* Counts and times the rules of TxHandler.validate, each rule being named by
+ * the reason it rejects a transaction with: how often each rule ran, how
+ * often it rejected, and a LatencyHistogram of its running time, plus how
+ * many transactions were found valid or rejected for each reason and how many
+ * signatures were verified. Attach it with TxHandler.setValidationMetrics; a
+ * handler without metrics does not read the clock. Not thread-safe.
+ */
+public class ValidationMetrics {
+
+    private final Map<RejectionReason, RuleMetrics> rules = new EnumMap<>(RejectionReason.class);
+    private final Map<RejectionReason, Long> rejections = new EnumMap<>(RejectionReason.class);
+    private long valid;
+    private long signatureVerifications;
+
+    public ValidationMetrics() {
+        for (RejectionReason rule : RejectionReason.values()) {
+            rules.put(rule, new RuleMetrics());
+            rejections.put(rule, 0L);
+        }
+    }
+
+    /* Records that rule ran for nanos and whether the transaction followed it */
+    public void recordRule(RejectionReason rule, boolean followed, long nanos) {
+        RuleMetrics metrics = rules.get(rule);
+        metrics.invocations++;
+        if (!followed) metrics.rejections++;
+        metrics.latency.record(nanos);
+    }
+
+    /* Records the outcome of a whole validation */
+    public void recordResult(ValidationResult result) {
+        if (result.isValid()) valid++;
+        else rejections.merge(result.getReason(), 1L, Long::sum);
+    }
+
+    /* Records that a signature was verified, rather than found among the
+     * signatures verified ahead
+     */
+    public void recordSignatureVerification() {
+        signatureVerifications++;
+    }
+
+    /* Adds everything recorded by other to these metrics */
+    public void add(ValidationMetrics other) {
+        for (RejectionReason rule : RejectionReason.values()) {
+            RuleMetrics metrics = rules.get(rule);
+            RuleMetrics otherMetrics = other.rules.get(rule);
+            metrics.invocations += otherMetrics.invocations;
+            metrics.rejections += otherMetrics.rejections;
+            metrics.latency.add(otherMetrics.latency);
+            rejections.merge(rule, other.rejections.get(rule), Long::sum);
+        }
+        valid += other.valid;
+        signatureVerifications += other.signatureVerifications;
+    }
+
+    public long getSignatureVerifications() {
+        return signatureVerifications;
+    }
+
+    public long getInvocations(RejectionReason rule) {
+        return rules.get(rule).invocations;
+    }
+
+    /* Returns how many times rule itself rejected a transaction */
+    public long getRejections(RejectionReason rule) {
+        return rules.get(rule).rejections;
+    }
+
+    public LatencyHistogram getLatency(RejectionReason rule) {
+        return rules.get(rule).latency;
+    }
+
+    public long getValidCount() {
+        return valid;
+    }
+
+    public void reset() {
+        for (RuleMetrics metrics : rules.values()) {
+            metrics.invocations = 0;
+            metrics.rejections = 0;
+            metrics.latency.reset();
+        }
+        rejections.replaceAll((reason, count) -> 0L);
+        valid = 0;
+        signatureVerifications = 0;
+    }
+
+    /* Returns every counter and latency summary as a JSON object, latencies
+     * in nanoseconds.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"rules\":{");
+        String separator = "";
+        for (Map.Entry<RejectionReason, RuleMetrics> rule : rules.entrySet()) {
+            RuleMetrics metrics = rule.getValue();
+            json.append(separator).append('"').append(rule.getKey()).append("\":{")
+                    .append("\"invocations\":").append(metrics.invocations)
+                    .append(",\"rejections\":").append(metrics.rejections)
+                    .append(",\"latencyNanos\":").append(metrics.latency.toJson()).append('}');
+            separator = ",";
+        }
+        json.append("},\"results\":{\"VALID\":").append(valid);
+        for (Map.Entry<RejectionReason, Long> rejection : rejections.entrySet()) {
+            json.append(",\"").append(rejection.getKey()).append("\":").append(rejection.getValue());
+        }
+        return json.append("},\"signatureVerifications\":").append(signatureVerifications).append('}').toString();
+    }
+
+    private static final class RuleMetrics {
+        private long invocations;
+        private long rejections;
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,37 @@
+/* The outcome of TxHandler.validate: valid, or rejected with the reason of
+ * the first rule the transaction breaks. Instances are shared.
+ */
+public final class ValidationResult {
+
+    public static final ValidationResult VALID = new ValidationResult(null);
+
+    private static final ValidationResult[] REJECTED = new ValidationResult[RejectionReason.values().length];
+
+    static {
+        for (RejectionReason reason : RejectionReason.values()) REJECTED[reason.ordinal()] = new ValidationResult(reason);
+    }
+
+    private final RejectionReason reason;
+
+    private ValidationResult(RejectionReason reason) {
+        this.reason = reason;
+    }
+
+    public static ValidationResult rejected(RejectionReason reason) {
+        return REJECTED[reason.ordinal()];
+    }
+
+    public boolean isValid() {
+        return reason == null;
+    }
+
+    /* Returns the reason of the rejection, or null if the transaction is valid */
+    public RejectionReason getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "VALID" : reason.name();
+    }
+}
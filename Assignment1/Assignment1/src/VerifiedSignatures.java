@@ -0,0 +1,56 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/* The input signatures found to be valid, each with what was verified: the
+ * message signed, that is the raw data to sign of its transaction for that
+ * input, the signature and the output whose address verified it.
+ *
+ * Inputs are looked up by identity, but a verification only covers an input
+ * of a transaction whose raw data to sign, signature and claimed output are
+ * still the verified ones. new Transaction(tx) shares the inputs of tx, so a
+ * copy paying other outputs must not pass as signed because the original was.
+ */
+public class VerifiedSignatures {
+
+    private final Map<Transaction.Input, Verification> verifications = new IdentityHashMap<>();
+
+    /* Records that input, whose signature is valid for message, was verified
+     * against output
+     */
+    public void record(Transaction.Input input, byte[] message, Transaction.Output output) {
+        verifications.put(input, new Verification(message, input.signature.clone(), output));
+    }
+
+    /* Whether the input at index of tx was verified against output, for the
+     * message and signature it has now
+     */
+    public boolean covers(Transaction tx, int index, Transaction.Output output) {
+        Transaction.Input input = tx.getInput(index);
+        Verification verification = verifications.get(input);
+        return verification != null
+                && verification.output == output
+                && Arrays.equals(verification.signature, input.signature)
+                && Arrays.equals(verification.message, tx.getRawDataToSign(index));
+    }
+
+    public void addAll(VerifiedSignatures other) {
+        verifications.putAll(other.verifications);
+    }
+
+    public void clear() {
+        verifications.clear();
+    }
+
+    private static final class Verification {
+        private final byte[] message;
+        private final byte[] signature;
+        private final Transaction.Output output;
+
+        private Verification(byte[] message, byte[] signature, Transaction.Output output) {
+            this.message = message;
+            this.signature = signature;
+            this.output = output;
+        }
+    }
+}
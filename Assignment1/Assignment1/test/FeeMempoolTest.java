@@ -0,0 +1,172 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class FeeMempoolTest {
+
+    @Test
+    public void ShouldOrderTransactionsByDecreasingFeeWithUnknownFeesLast() throws Exception {
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(new byte[]{1}, 0), new Transaction().new Output(10, null));
+        utxoPool.addUTXO(new UTXO(new byte[]{2}, 0), new Transaction().new Output(10, null));
+        Transaction lowFee = ATransaction(new byte[]{1}, 0, 9, new byte[]{11});
+        Transaction highFee = ATransaction(new byte[]{2}, 0, 5, new byte[]{12});
+        Transaction unknownFee = ATransaction(new byte[]{3}, 0, 1, new byte[]{13});
+        FeeMempool mempool = new FeeMempool(utxoPool);
+
+        mempool.add(unknownFee);
+        mempool.add(lowFee);
+        mempool.add(highFee);
+
+        assertThat(mempool.inPriorityOrder(), equalTo(new Transaction[]{highFee, lowFee, unknownFee}));
+        assertThat(mempool.getFee(highFee), equalTo(5.0));
+        assertThat(Double.isNaN(mempool.getFee(unknownFee)), equalTo(true));
+    }
+
+    @Test
+    public void ShouldTrackPackagesOfAChildThatArrivedBeforeItsParent() throws Exception {
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(new byte[]{1}, 0), new Transaction().new Output(10, null));
+        Transaction parent = ATransaction(new byte[]{1}, 0, 8, new byte[]{21});
+        Transaction child = ATransaction(new byte[]{21}, 0, 5, new byte[]{22});
+        Transaction grandChild = ATransaction(new byte[]{22}, 0, 4, new byte[]{23});
+        FeeMempool mempool = new FeeMempool(utxoPool);
+
+        mempool.add(child);
+        mempool.add(grandChild);
+        assertThat(Double.isNaN(mempool.getFee(child)), equalTo(true));
+        mempool.add(parent);
+
+        assertThat(mempool.getFee(child), equalTo(3.0));
+        assertThat(mempool.getAncestorCount(grandChild), equalTo(3));
+        assertThat(mempool.getAncestorFees(grandChild), equalTo(6.0));
+        assertThat(mempool.getDescendantCount(parent), equalTo(3));
+        assertThat(mempool.getDescendantFees(parent), equalTo(6.0));
+        assertThat(mempool.inPriorityOrder(), equalTo(new Transaction[]{child, parent, grandChild}));
+
+        assertThat(mempool.poll(), equalTo(child));
+        assertThat(mempool.getDescendantCount(parent), equalTo(1));
+        assertThat(mempool.getAncestorCount(grandChild), equalTo(1));
+        assertThat(mempool.getAncestorFees(grandChild), equalTo(1.0));
+        assertThat(mempool.size(), equalTo(2));
+    }
+
+    @Test
+    public void ShouldPollTheAncestorPackageWithTheHighestFeeRateFirst() throws Exception {
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(new byte[]{1}, 0), new Transaction().new Output(10, null));
+        utxoPool.addUTXO(new UTXO(new byte[]{2}, 0), new Transaction().new Output(10, null));
+        Transaction lowFeeParent = ATransaction(new byte[]{1}, 0, 9, new byte[]{31});
+        Transaction highFeeChild = ATransaction(new byte[]{31}, 0, 3, new byte[]{32});
+        Transaction mediumFee = ATransaction(new byte[]{2}, 0, 7, new byte[]{33});
+        FeeMempool mempool = new FeeMempool(utxoPool);
+
+        mempool.add(highFeeChild);
+        mempool.add(mediumFee);
+        mempool.add(lowFeeParent);
+
+        assertThat(mempool.getAncestorSize(highFeeChild), equalTo(2L * lowFeeParent.getRawTx().length));
+        assertThat(mempool.pollPackage(), equalTo(new Transaction[]{lowFeeParent, highFeeChild}));
+        assertThat(mempool.pollPackage(), equalTo(new Transaction[]{mediumFee}));
+        assertThat(mempool.pollPackage(), equalTo(null));
+        assertThat(mempool.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void ShouldComputeTheFeeOfAChildWhoseFirstParentWasPolledBeforeTheSecondArrived() throws Exception {
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(new byte[]{1}, 0), new Transaction().new Output(10, null));
+        utxoPool.addUTXO(new UTXO(new byte[]{2}, 0), new Transaction().new Output(10, null));
+        Transaction firstParent = ATransaction(new byte[]{1}, 0, 9, new byte[]{31});
+        Transaction secondParent = ATransaction(new byte[]{2}, 0, 8, new byte[]{32});
+        Transaction child = ATransaction(new byte[]{31}, 0, 12, new byte[]{33});
+        child.addInput(new byte[]{32}, 0);
+        FeeMempool mempool = new FeeMempool(utxoPool);
+
+        mempool.add(child);
+        mempool.add(firstParent);
+        assertThat(mempool.poll(), equalTo(firstParent));
+        mempool.add(secondParent);
+
+        assertThat(mempool.getFee(child), equalTo(5.0));
+        assertThat(mempool.getAncestorCount(child), equalTo(2));
+        assertThat(mempool.getAncestorFees(child), equalTo(7.0));
+    }
+
+    @Test
+    public void ShouldComputeTheFeeOfAChildWhoseFirstParentWasRemovedBeforeTheSecondArrived() throws Exception {
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(new byte[]{1}, 0), new Transaction().new Output(10, null));
+        utxoPool.addUTXO(new UTXO(new byte[]{2}, 0), new Transaction().new Output(10, null));
+        Transaction firstParent = ATransaction(new byte[]{1}, 0, 9, new byte[]{41});
+        Transaction secondParent = ATransaction(new byte[]{2}, 0, 8, new byte[]{42});
+        Transaction child = ATransaction(new byte[]{41}, 0, 12, new byte[]{43});
+        child.addInput(new byte[]{42}, 0);
+        FeeMempool mempool = new FeeMempool(utxoPool);
+
+        mempool.add(firstParent);
+        mempool.add(child);
+        mempool.remove(firstParent);
+        mempool.add(secondParent);
+
+        assertThat(mempool.getFee(child), equalTo(5.0));
+        assertThat(mempool.pollPackage(), equalTo(new Transaction[]{secondParent, child}));
+        assertThat(mempool.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void ConfirmShouldDropConfirmedAndConflictingTransactionsAndKeepTheOthers() throws Exception {
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(new byte[]{1}, 0), new Transaction().new Output(10, null));
+        utxoPool.addUTXO(new UTXO(new byte[]{2}, 0), new Transaction().new Output(10, null));
+        Transaction confirmed = ATransaction(new byte[]{1}, 0, 8, new byte[]{71});
+        Transaction childOfConfirmed = ATransaction(new byte[]{71}, 0, 5, new byte[]{72});
+        Transaction conflicting = ATransaction(new byte[]{2}, 0, 9, new byte[]{73});
+        Transaction childOfConflicting = ATransaction(new byte[]{73}, 0, 1, new byte[]{74});
+        Transaction confirmedElsewhere = ATransaction(new byte[]{2}, 0, 6, new byte[]{75});
+        FeeMempool mempool = new FeeMempool(utxoPool);
+        mempool.add(confirmed);
+        mempool.add(childOfConfirmed);
+        mempool.add(conflicting);
+        mempool.add(childOfConflicting);
+
+        UTXOPool afterBlock = new UTXOPool();
+        afterBlock.addUTXO(new UTXO(new byte[]{71}, 0), confirmed.getOutput(0));
+        afterBlock.addUTXO(new UTXO(new byte[]{75}, 0), confirmedElsewhere.getOutput(0));
+        mempool.confirm(Arrays.asList(confirmed, confirmedElsewhere), afterBlock);
+
+        assertThat(mempool.inPriorityOrder(), equalTo(new Transaction[]{childOfConfirmed}));
+        assertThat(mempool.getFee(childOfConfirmed), equalTo(3.0));
+        assertThat(mempool.getAncestorCount(childOfConfirmed), equalTo(1));
+    }
+
+    @Test
+    public void ConfirmShouldComputeTheFeeOfATransactionWaitingForAnOutputOfTheBlock() throws Exception {
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction confirmed = ATransaction(new byte[]{1}, 0, 8, new byte[]{81});
+        Transaction waiting = ATransaction(new byte[]{81}, 0, 5, new byte[]{82});
+        Transaction grandChild = ATransaction(new byte[]{82}, 0, 4, new byte[]{83});
+        FeeMempool mempool = new FeeMempool(utxoPool);
+        mempool.add(waiting);
+        mempool.add(grandChild);
+
+        UTXOPool afterBlock = new UTXOPool();
+        afterBlock.addUTXO(new UTXO(new byte[]{81}, 0), confirmed.getOutput(0));
+        mempool.confirm(Arrays.asList(confirmed), afterBlock);
+
+        assertThat(mempool.getFee(waiting), equalTo(3.0));
+        assertThat(mempool.getAncestorFees(grandChild), equalTo(4.0));
+        assertThat(mempool.pollPackage(), equalTo(new Transaction[]{waiting}));
+    }
+
+    private Transaction ATransaction(byte[] previousTransaction, int index, double value, byte[] txHash) {
+        Transaction transaction = new Transaction();
+        transaction.addInput(previousTransaction, index);
+        transaction.addOutput(value, null);
+        transaction.setHash(txHash);
+        return transaction;
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void ShouldKeepPercentilesWithinOneSubBucketOfTheRecordedValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 1; value <= 100_000; value++) histogram.record(value * 1000);
+
+        assertThat(histogram.getCount(), equalTo(100_000L));
+        assertThat(histogram.getMean(), equalTo(50_000_500.0));
+        assertThat(histogram.getMax(), equalTo(100_000_000L));
+        assertThat(Math.abs(histogram.getValueAtPercentile(50) - 50_000_000) < 50_000_000 / 64, equalTo(true));
+        assertThat(Math.abs(histogram.getValueAtPercentile(99) - 99_000_000) < 99_000_000 / 64, equalTo(true));
+        assertThat(histogram.getValueAtPercentile(100), equalTo(100_000_000L));
+    }
+
+    @Test
+    public void ShouldCountSmallValuesExactly() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 0; value < 100; value++) histogram.record(value);
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.getValueAtPercentile(50), equalTo(50L));
+        assertThat(histogram.getMin(), equalTo(0L));
+        assertThat(histogram.getValueAtPercentile(100), equalTo(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void ToJsonShouldWriteTheMeanWithADecimalPointWhateverTheDefaultLocale() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1);
+        histogram.record(2);
+
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            assertThat(histogram.toJson().contains("\"mean\":1.5,"), equalTo(true));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
@@ -31,4 +31,55 @@ public class MaxFeeTxHandlerTest extends TxHandlerTest {
         assertThat(actualTransactions.length, equalTo(1));
         assertThat(actualTransactions[0], equalTo(transactionWithHighFees));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void ShouldPreferALowFeeParentWhenItsChildPaysMoreThanTheConflictingTransaction() throws Exception {
+        RSAKeyPair keyPair = ARSAKeyPair();
+        RSAKeyPair parentReceiver = ARSAKeyPair();
+
+        byte[] previousTransaction = {1, 2, 3};
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(previousTransaction, 0), ATransactionOutput(10, keyPair.getPublicKey()));
+        MaxFeeTxHandler txHandler = new MaxFeeTxHandler(utxoPool);
+
+        byte[] parentHash = {4, 5, 6};
+        Transaction parentWithLowFees = TransactionWithOneInputAndOneOutput(previousTransaction, 0, keyPair.getPrivateKey(), parentReceiver.getPublicKey(), 9, parentHash);
+        Transaction conflictingWithHigherFees = TransactionWithOneInputAndOneOutput(previousTransaction, 0, keyPair.getPrivateKey(), ARSAKey(), 7, new byte[]{7, 8, 9});
+        Transaction childWithHighFees = TransactionWithOneInputAndOneOutput(parentHash, 0, parentReceiver.getPrivateKey(), ARSAKey(), 4, new byte[]{10, 11, 12});
+
+        Transaction[] actualTransactions = txHandler.handleTxs(new Transaction[]{conflictingWithHigherFees, childWithHighFees, parentWithLowFees});
+
+        assertThat(actualTransactions.length, equalTo(2));
+        assertThat(actualTransactions[0], equalTo(parentWithLowFees));
+        assertThat(actualTransactions[1], equalTo(childWithHighFees));
+    }
+
+    @Test
+    public void ShouldRejectCopyOfSignedTransactionPayingHigherFeesToOtherOutputsWhenSignaturesAreVerifiedConcurrently() throws Exception {
+        RSAKeyPair keyPair = ARSAKeyPair();
+        RSAKeyPair keyPairOfThief = ARSAKeyPair();
+
+        byte[] previousTransaction = {1, 2, 3};
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(previousTransaction, 0), ATransactionOutput(10, keyPair.getPublicKey()));
+        MaxFeeTxHandler txHandler = new MaxFeeTxHandler(utxoPool);
+        SignatureVerificationStage stage = SignatureVerificationStage.withParallelism(4);
+        txHandler.setSignatureVerificationStage(stage);
+
+        Transaction transactionWithLowFees = TransactionWithOneInputAndOneOutput(previousTransaction, 0, keyPair.getPrivateKey(), ARSAKey(), 10, new byte[]{4, 5, 6});
+        Transaction copyPayingThiefWithHighFees = new Transaction(transactionWithLowFees);
+        copyPayingThiefWithHighFees.getOutputs().clear();
+        copyPayingThiefWithHighFees.addOutput(5, keyPairOfThief.getPublicKey());
+        copyPayingThiefWithHighFees.finalize();
+
+        Transaction[] actualTransactions;
+        try {
+            actualTransactions = txHandler.handleTxs(new Transaction[]{transactionWithLowFees, copyPayingThiefWithHighFees});
+        } finally {
+            stage.close();
+        }
+
+        assertThat(actualTransactions.length, equalTo(1));
+        assertThat(actualTransactions[0], equalTo(transactionWithLowFees));
+    }
+}
@@ -0,0 +1,100 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TransactionTest {
+
+    @Test
+    public void RawDataToSignIsInputFollowedByAllOutputs() throws Exception {
+        RSAKey firstReceiver = new RSAKey(BigInteger.valueOf(3), BigInteger.valueOf(1000003));
+        RSAKey secondReceiver = new RSAKey(BigInteger.valueOf(65537), new BigInteger("123456789012345678901234567890"));
+        Transaction transaction = new Transaction();
+        transaction.addInput(new byte[]{1, 2, 3}, 4);
+        transaction.addInput(new byte[]{5, 6}, 7);
+        transaction.addOutput(1.5, firstReceiver);
+        transaction.addOutput(-2.25, secondReceiver);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(expected);
+        out.write(new byte[]{5, 6});
+        out.writeInt(7);
+        WriteOutput(out, 1.5, firstReceiver);
+        WriteOutput(out, -2.25, secondReceiver);
+
+        assertThat(transaction.getRawDataToSign(1), equalTo(expected.toByteArray()));
+    }
+
+    @Test
+    public void RawTxIsAllSignedInputsFollowedByAllOutputs() throws Exception {
+        RSAKey receiver = new RSAKey(BigInteger.valueOf(3), BigInteger.valueOf(1000003));
+        Transaction transaction = new Transaction();
+        transaction.addInput(new byte[]{1, 2, 3}, 4);
+        transaction.addInput(null, 9);
+        transaction.addOutput(10, receiver);
+        transaction.addSignature(new byte[]{8, 8}, 0);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(expected);
+        out.write(new byte[]{1, 2, 3});
+        out.writeInt(4);
+        out.write(new byte[]{8, 8});
+        out.writeInt(9);
+        WriteOutput(out, 10, receiver);
+
+        assertThat(transaction.getRawTx(), equalTo(expected.toByteArray()));
+    }
+
+    @Test
+    public void RawDataFollowsChangesToAnOutputAddress() throws Exception {
+        RSAKey firstReceiver = new RSAKey(BigInteger.valueOf(3), BigInteger.valueOf(1000003));
+        RSAKey secondReceiver = new RSAKey(BigInteger.valueOf(5), BigInteger.valueOf(7));
+        Transaction transaction = new Transaction();
+        transaction.addInput(new byte[]{1}, 0);
+        transaction.addOutput(1, firstReceiver);
+        transaction.getRawDataToSign(0);
+
+        transaction.getOutput(0).address = secondReceiver;
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(expected);
+        out.write(new byte[]{1});
+        out.writeInt(0);
+        WriteOutput(out, 1, secondReceiver);
+
+        assertThat(transaction.getRawDataToSign(0), equalTo(expected.toByteArray()));
+    }
+
+    @Test
+    public void RawDataFollowsChangesToOutputsMadeAfterItWasComputed() throws Exception {
+        RSAKey receiver = new RSAKey(BigInteger.valueOf(3), BigInteger.valueOf(1000003));
+        Transaction transaction = new Transaction();
+        transaction.addInput(new byte[]{1}, 0);
+        transaction.addInput(new byte[]{2}, 0);
+        transaction.addOutput(1, receiver);
+        transaction.getRawDataToSign(0);
+
+        transaction.getOutput(0).value = 2;
+        transaction.addOutput(3, receiver);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(expected);
+        out.write(new byte[]{2});
+        out.writeInt(0);
+        WriteOutput(out, 2, receiver);
+        WriteOutput(out, 3, receiver);
+
+        assertThat(transaction.getRawDataToSign(1), equalTo(expected.toByteArray()));
+    }
+
+    private void WriteOutput(DataOutputStream out, double value, RSAKey address) throws IOException {
+        out.writeDouble(value);
+        out.write(address.getExponent().toByteArray());
+        out.write(address.getModulus().toByteArray());
+    }
+}
@@ -1,7 +1,14 @@
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
@@ -201,6 +208,219 @@ public class TxHandlerTest {
         assertThat(actualTransactions[2], equalTo(transactionCPaysA));
     }
 
+    @Test
+    public void ShouldAcceptLongChainOfDependentTransactionsGivenInReverseOrder() throws Exception {
+        int chainLength = 1000;
+        RSAKeyPair keyPair = ARSAKeyPair();
+
+        byte[] previousTransaction = {1, 2, 3};
+        int indexOfUnspentOutputInPreviousTx = 4;
+        TxHandler txHandler = TxHandlerWithOneUTXOInPool(previousTransaction, indexOfUnspentOutputInPreviousTx, keyPair, 10);
+
+        Transaction[] chain = new Transaction[chainLength];
+        byte[] spentTransaction = previousTransaction;
+        int spentIndex = indexOfUnspentOutputInPreviousTx;
+        for (int i = 0; i < chainLength; i++) {
+            byte[] txHash = {(byte) (i >> 8), (byte) i, 0, 0};
+            chain[i] = TransactionWithOneInputAndOneOutput(spentTransaction, spentIndex, keyPair.getPrivateKey(), keyPair.getPublicKey(), 10, txHash);
+            spentTransaction = txHash;
+            spentIndex = 0;
+        }
+        Transaction[] reversedChain = new Transaction[chainLength];
+        for (int i = 0; i < chainLength; i++) {
+            reversedChain[i] = chain[chainLength - 1 - i];
+        }
+
+        Transaction[] actualTransactions = txHandler.handleTxs(reversedChain);
+
+        assertThat(actualTransactions, equalTo(chain));
+        assertThat(txHandler.getUTXOPool().getAllUTXO().size(), equalTo(1));
+        assertThat(txHandler.getUTXOPool().contains(new UTXO(chain[chainLength - 1].getHash(), 0)), equalTo(true));
+    }
+
+    @Test
+    public void ShouldAcceptSameTransactionsWhenSignaturesAreVerifiedConcurrently() throws Exception {
+        RSAKeyPair keyPairOfA = ARSAKeyPair();
+        RSAKeyPair keyPairOfB = ARSAKeyPair();
+
+        byte[] previousTransaction = {1, 2, 3};
+        int indexOfUnspentOutputInPreviousTx = 4;
+        TxHandler txHandler = TxHandlerWithOneUTXOInPool(previousTransaction, indexOfUnspentOutputInPreviousTx, keyPairOfA, 10);
+        SignatureVerificationStage stage = SignatureVerificationStage.withParallelism(4);
+        txHandler.setSignatureVerificationStage(stage);
+
+        byte[] txHashAPaysB = {4, 5, 6};
+        Transaction transactionAPaysB = TransactionWithOneInputAndOneOutput(previousTransaction, indexOfUnspentOutputInPreviousTx, keyPairOfA.getPrivateKey(), keyPairOfB.getPublicKey(), 10, txHashAPaysB);
+        byte[] txHashBPaysA = {7, 8, 9};
+        Transaction transactionBPaysA = TransactionWithOneInputAndOneOutput(txHashAPaysB, 0, keyPairOfB.getPrivateKey(), keyPairOfA.getPublicKey(), 10, txHashBPaysA);
+        byte[] txHashForgedByA = {10, 11, 12};
+        Transaction transactionForgedByA = TransactionWithOneInputAndOneOutput(txHashBPaysA, 0, keyPairOfB.getPrivateKey(), keyPairOfB.getPublicKey(), 10, txHashForgedByA);
+
+        Transaction[] actualTransactions;
+        try {
+            actualTransactions = txHandler.handleTxs(new Transaction[]{transactionForgedByA, transactionBPaysA, transactionAPaysB});
+        } finally {
+            stage.close();
+        }
+
+        assertThat(actualTransactions.length, equalTo(2));
+        assertThat(actualTransactions[0], equalTo(transactionAPaysB));
+        assertThat(actualTransactions[1], equalTo(transactionBPaysA));
+    }
+
+    @Test
+    public void ShouldRejectCopyOfSignedTransactionPayingOtherOutputsWhenSignaturesAreVerifiedConcurrently() throws Exception {
+        RSAKeyPair keyPairOfA = ARSAKeyPair();
+        RSAKeyPair keyPairOfB = ARSAKeyPair();
+        RSAKeyPair keyPairOfThief = ARSAKeyPair();
+
+        byte[] previousTransaction = {1, 2, 3};
+        int indexOfUnspentOutputInPreviousTx = 4;
+        TxHandler txHandler = TxHandlerWithOneUTXOInPool(previousTransaction, indexOfUnspentOutputInPreviousTx, keyPairOfA, 10);
+        SignatureVerificationStage stage = SignatureVerificationStage.withParallelism(4);
+        txHandler.setSignatureVerificationStage(stage);
+
+        Transaction transactionAPaysB = TransactionWithOneInputAndOneOutput(previousTransaction, indexOfUnspentOutputInPreviousTx, keyPairOfA.getPrivateKey(), keyPairOfB.getPublicKey(), 10, new byte[]{4, 5, 6});
+        Transaction copyPayingThief = new Transaction(transactionAPaysB);
+        copyPayingThief.getOutputs().clear();
+        copyPayingThief.addOutput(10, keyPairOfThief.getPublicKey());
+        copyPayingThief.finalize();
+
+        Transaction[] actualTransactions;
+        try {
+            actualTransactions = txHandler.handleTxs(new Transaction[]{copyPayingThief, transactionAPaysB});
+        } finally {
+            stage.close();
+        }
+
+        assertThat(actualTransactions.length, equalTo(1));
+        assertThat(actualTransactions[0], equalTo(transactionAPaysB));
+    }
+
+    @Test
+    public void ShouldAcceptSameTransactionsInSameOrderWhenEpochIsPartitioned() throws Exception {
+        int utxoCount = 20;
+        RSAKeyPair keyPair = ARSAKeyPair();
+
+        byte[] previousTransaction = {1, 2, 3};
+        UTXOPool utxoPool = new UTXOPool();
+        List<Transaction> epoch = new ArrayList<>();
+        for (int i = 0; i < utxoCount; i++) {
+            utxoPool.addUTXO(new UTXO(previousTransaction, i), ATransactionOutput(10, keyPair.getPublicKey()));
+            byte[] txHashPays = {4, (byte) i};
+            byte[] txHashPaysAgain = {5, (byte) i};
+            epoch.add(TransactionWithOneInputAndOneOutput(previousTransaction, i, keyPair.getPrivateKey(), keyPair.getPublicKey(), 10, txHashPays));
+            epoch.add(TransactionWithOneInputAndOneOutput(previousTransaction, i, keyPair.getPrivateKey(), keyPair.getPublicKey(), 9, new byte[]{6, (byte) i}));
+            epoch.add(TransactionWithOneInputAndOneOutput(txHashPays, 0, keyPair.getPrivateKey(), keyPair.getPublicKey(), 10, txHashPaysAgain));
+            epoch.add(TransactionWithOneInputAndOneOutput(txHashPaysAgain, 0, keyPair.getPrivateKey(), keyPair.getPublicKey(), 10, new byte[]{7, (byte) i}));
+        }
+        Collections.shuffle(epoch, new Random(42));
+        Transaction[] possibleTxs = epoch.toArray(new Transaction[epoch.size()]);
+        TxHandler sequentialTxHandler = new TxHandler(utxoPool);
+        TxHandler partitionedTxHandler = new TxHandler(utxoPool);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        partitionedTxHandler.setPartitionExecutor(executor, 4);
+
+        Transaction[] expectedTransactions = sequentialTxHandler.handleTxs(possibleTxs);
+        Transaction[] actualTransactions;
+        try {
+            actualTransactions = partitionedTxHandler.handleTxs(possibleTxs);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(actualTransactions, equalTo(expectedTransactions));
+        assertThat(new HashSet<>(partitionedTxHandler.getUTXOPool().getAllUTXO()), equalTo(new HashSet<>(sequentialTxHandler.getUTXOPool().getAllUTXO())));
+    }
+
+    @Test
+    public void StreamShouldReportDecisionsAsTheyAreMadeAndEndLikeHandleTxs() throws Exception {
+        RSAKeyPair keyPair = ARSAKeyPair();
+        RSAKeyPair receiverKeyPair = ARSAKeyPair();
+        byte[] previousTransaction = {1, 2, 3};
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(previousTransaction, 0), ATransactionOutput(10, keyPair.getPublicKey()));
+        utxoPool.addUTXO(new UTXO(previousTransaction, 1), ATransactionOutput(10, keyPair.getPublicKey()));
+
+        byte[] parentHash = {4, 5, 6};
+        Transaction child = TransactionWithOneInputAndOneOutput(parentHash, 0, receiverKeyPair.getPrivateKey(), ARSAKey(), 9, new byte[]{7, 8, 9});
+        Transaction parent = TransactionWithOneInputAndOneOutput(previousTransaction, 0, keyPair.getPrivateKey(), receiverKeyPair.getPublicKey(), 10, parentHash);
+        Transaction doubleSpend = TransactionWithOneInputAndOneOutput(previousTransaction, 0, keyPair.getPrivateKey(), ARSAKey(), 5, new byte[]{10, 11, 12});
+        Transaction wronglySigned = TransactionWithOneInputAndOneOutput(previousTransaction, 1, receiverKeyPair.getPrivateKey(), ARSAKey(), 5, new byte[]{13, 14, 15});
+        Transaction[] possibleTxs = {child, parent, doubleSpend, wronglySigned};
+
+        List<String> events = new ArrayList<>();
+        TxHandler.TxStream stream = new TxHandler(utxoPool).openStream(new TxListener() {
+            @Override
+            public void accepted(Transaction tx) {
+                events.add("accepted " + Arrays.asList(possibleTxs).indexOf(tx));
+            }
+
+            @Override
+            public void rejected(Transaction tx, RejectionReason reason) {
+                events.add("rejected " + Arrays.asList(possibleTxs).indexOf(tx) + " " + reason);
+            }
+
+            @Override
+            public void parked(Transaction tx, UTXO missing) {
+                events.add("parked " + Arrays.asList(possibleTxs).indexOf(tx));
+            }
+        });
+        stream.submit(child);
+        stream.submit(new Transaction[]{parent, doubleSpend, wronglySigned});
+        assertThat(events, equalTo(Arrays.asList("parked 0", "accepted 1", "parked 2", "rejected 3 INVALID_SIGNATURE")));
+        Transaction[] accepted = stream.endEpoch();
+
+        assertThat(events.subList(4, events.size()), equalTo(Arrays.asList("accepted 0", "rejected 2 MISSING_INPUT")));
+        assertThat(accepted, equalTo(new TxHandler(utxoPool).handleTxs(possibleTxs)));
+        assertThat(accepted, equalTo(new Transaction[]{parent, child}));
+    }
+
+    @Test
+    public void CheapestRulesFirstShouldRejectWithoutCheckingSignatures() throws Exception {
+        RSAKeyPair keyPair = ARSAKeyPair();
+        byte[] previousTransaction = {1, 2, 3};
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(previousTransaction, 0), ATransactionOutput(10, keyPair.getPublicKey()));
+        Transaction negativeOutputBadlySigned = TransactionWithOneInputAndOneOutput(previousTransaction, 0, ARSAKeyPair().getPrivateKey(), ARSAKey(), -1, new byte[]{4, 5, 6});
+        TxHandler txHandler = new TxHandler(utxoPool);
+        ValidationMetrics metrics = new ValidationMetrics();
+        txHandler.setValidationMetrics(metrics);
+
+        txHandler.setCheapestRulesFirst(false);
+        assertThat(txHandler.validate(negativeOutputBadlySigned).getReason(), equalTo(RejectionReason.INVALID_SIGNATURE));
+        txHandler.setCheapestRulesFirst(true);
+        assertThat(txHandler.validate(negativeOutputBadlySigned).getReason(), equalTo(RejectionReason.NEGATIVE_OUTPUT));
+
+        assertThat(metrics.getInvocations(RejectionReason.INVALID_SIGNATURE), equalTo(1L));
+        assertThat(metrics.getRejections(RejectionReason.NEGATIVE_OUTPUT), equalTo(1L));
+        assertThat(metrics.getLatency(RejectionReason.MISSING_INPUT).getCount(), equalTo(1L));
+        assertThat(metrics.getSignatureVerifications(), equalTo(1L));
+        assertThat(metrics.toJson().contains("\"results\":{\"VALID\":0,\"MISSING_INPUT\":0,\"INVALID_SIGNATURE\":1,"), equalTo(true));
+    }
+
+    @Test
+    public void ShouldCompareAmountsExactlyToTheSatoshi() throws Exception {
+        RSAKeyPair keyPair = ARSAKeyPair();
+        byte[] previousTransaction = {1, 2, 3};
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(previousTransaction, 0), ATransactionOutput(0.3, keyPair.getPublicKey()));
+        utxoPool.addUTXO(new UTXO(previousTransaction, 1), ATransactionOutput(1e12, keyPair.getPublicKey()));
+        TxHandler txHandler = new TxHandler(utxoPool);
+
+        Transaction splitInTwo = new Transaction();
+        splitInTwo.addInput(previousTransaction, 0);
+        splitInTwo.addOutput(0.1, ARSAKey());
+        splitInTwo.addOutput(0.2, ARSAKey());
+        splitInTwo.addSignature(keyPair.getPrivateKey().sign(splitInTwo.getRawDataToSign(0)), 0);
+        splitInTwo.finalize();
+        Transaction beyondALongOfSatoshis = TransactionWithOneInputAndOneOutput(previousTransaction, 1, keyPair.getPrivateKey(), ARSAKey(), 1e12, new byte[]{4, 5, 6});
+
+        assertThat(0.1 + 0.2 > 0.3, equalTo(true));
+        assertThat(txHandler.validate(splitInTwo), equalTo(ValidationResult.VALID));
+        assertThat(txHandler.validate(beyondALongOfSatoshis).getReason(), equalTo(RejectionReason.OUTPUTS_EXCEED_INPUTS));
+    }
+
     protected RSAKeyPair ARSAKeyPair() {
         byte[] key = new byte[32];
         new Random().nextBytes(key);
@@ -0,0 +1,60 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class UTXOTest {
+
+    @Test
+    public void ShouldKeepTheHashItWasBuiltFrom() throws Exception {
+        byte[] txHash = RandomHash(new Random(1), 32);
+        UTXO utxo = new UTXO(txHash, 3);
+
+        assertThat(utxo.getTxHash(), equalTo(txHash));
+        assertThat(utxo.getIndex(), equalTo(3));
+        assertThat(new UTXO(new byte[]{1, 2, 3}, 0).getTxHash(), equalTo(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void ShouldEqualTheUTXOBuiltFromTheInputClaimingIt() throws Exception {
+        byte[] txHash = RandomHash(new Random(2), 32);
+        Transaction transaction = new Transaction();
+        transaction.addInput(txHash, 5);
+        UTXO fromInput = new UTXO(transaction.getInput(0));
+
+        assertThat(fromInput, equalTo(new UTXO(txHash, 5)));
+        assertThat(fromInput.hashCode(), equalTo(new UTXO(txHash, 5).hashCode()));
+        assertThat(fromInput.equals(new UTXO(txHash, 4)), equalTo(false));
+    }
+
+    @Test
+    public void ShouldCompareHashesByteByByteAsSignedBytes() throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            byte[] first = RandomHash(random, 32);
+            byte[] second = first.clone();
+            second[random.nextInt(32)] = (byte) random.nextInt(256);
+            int expected = Integer.signum(CompareAsBytes(first, second));
+
+            assertThat(new UTXO(first, 0).compareTo(new UTXO(second, 0)), equalTo(expected));
+            assertThat(new UTXO(first, 0).equals(new UTXO(second, 0)), equalTo(expected == 0));
+        }
+        assertThat(new UTXO(new byte[32], 0).compareTo(new UTXO(new byte[31], 0)), equalTo(1));
+    }
+
+    private int CompareAsBytes(byte[] first, byte[] second) {
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] != second[i])
+                return Byte.compare(first[i], second[i]);
+        }
+        return 0;
+    }
+
+    private byte[] RandomHash(Random random, int length) {
+        byte[] hash = new byte[length];
+        random.nextBytes(hash);
+        return hash;
+    }
+}
@@ -0,0 +1,138 @@
+import benchmarks.Workload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The workloads of {@code benchmarks.BlockStoreBenchmarks}, restarts of a {@code BlockChain} of
+ * {@code blocks} blocks: {@code reopen} reopens it from a {@code BlockStore} written once at setup,
+ * with a checkpoint every {@code checkpointInterval} blocks, while {@code feedAgain} feeds all its
+ * blocks again to a new chain, as was done at every restart before, with the SignatureCache emptied
+ * by {@code prepare} as after a restart. Every block spends the coinbase UTXO, which each coinbase
+ * pays again to the same miner, into {@code outputs} outputs, so that the UTXO set grows with the
+ * chain. Blocks are generated from a fixed seed at setup; {@code reopen} checks at setup that the
+ * reopened chain has the UTXO set of a chain fed the blocks, and deletes its store when closed.
+ */
+public class BlockStoreWorkloads {
+
+    public static Workload feedAgain(int blocks, int outputs) throws GeneralSecurityException {
+        KeyPair miner = Miner();
+        Block genesisBlock = new Block(null, miner.getPublic());
+        genesisBlock.finalize();
+        List<Block> chain = Blocks(genesisBlock, blocks, outputs, miner);
+        return new Workload() {
+            @Override
+            public void prepare() {
+                SignatureCache.getShared().clear();
+            }
+
+            @Override
+            public int run() {
+                return FedAgain(genesisBlock, chain).getMaxHeightUTXOPool().size();
+            }
+        };
+    }
+
+    public static Workload reopen(int blocks, int outputs, int checkpointInterval) throws GeneralSecurityException, IOException {
+        BlockChain.CHECKPOINT_INTERVAL = checkpointInterval;
+        KeyPair miner = Miner();
+        Block genesisBlock = new Block(null, miner.getPublic());
+        genesisBlock.finalize();
+        List<Block> chain = Blocks(genesisBlock, blocks, outputs, miner);
+        Path directory = Files.createTempDirectory("blocks");
+        try (BlockStore blockStore = BlockStore.open(directory)) {
+            BlockChain blockChain = new BlockChain(genesisBlock, blockStore);
+            for (Block block : chain)
+                Add(blockChain, block);
+        }
+        Workload workload = new Workload() {
+            @Override
+            public int run() {
+                try (BlockStore blockStore = BlockStore.open(directory)) {
+                    return new BlockChain(genesisBlock, blockStore).getMaxHeightUTXOPool().size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    Delete(directory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try (BlockStore blockStore = BlockStore.open(directory)) {
+            HashSet<UTXO> reopened = new HashSet<UTXO>(new BlockChain(genesisBlock, blockStore).getMaxHeightUTXOPool().getAllUTXO());
+            if (!reopened.equals(new HashSet<UTXO>(FedAgain(genesisBlock, chain).getMaxHeightUTXOPool().getAllUTXO()))) {
+                workload.close();
+                throw new IllegalStateException("reopened chain has another UTXO set");
+            }
+        }
+        return workload;
+    }
+
+    private static KeyPair Miner() throws GeneralSecurityException {
+        SecureRandom seed = SecureRandom.getInstance("SHA1PRNG");
+        seed.setSeed(1);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024, seed);
+        return generator.generateKeyPair();
+    }
+
+    private static BlockChain FedAgain(Block genesisBlock, List<Block> chain) {
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        for (Block block : chain)
+            Add(blockChain, block);
+        return blockChain;
+    }
+
+    private static void Add(BlockChain blockChain, Block block) {
+        if (!blockChain.addBlock(block))
+            throw new IllegalStateException("block rejected");
+    }
+
+    private static List<Block> Blocks(Block parent, int count, int outputs, KeyPair miner) throws GeneralSecurityException {
+        Transaction coinbase = parent.getCoinbase();
+        List<Block> blocks = new ArrayList<Block>(count);
+        for (int i = 0; i < count; i++) {
+            Block block = new Block(parent.getHash(), miner.getPublic());
+            Transaction tx = new Transaction();
+            tx.addInput(coinbase.getHash(), 0);
+            tx.addOutput((i + 1) / 1e8, miner.getPublic());
+            for (int index = 1; index < outputs; index++)
+                tx.addOutput(1e-3, miner.getPublic());
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(miner.getPrivate());
+            signature.update(tx.getRawDataToSign(0));
+            tx.addSignature(signature.sign(), 0);
+            tx.finalize();
+            block.addTransaction(tx);
+            block.finalize();
+            blocks.add(block);
+            parent = block;
+        }
+        return blocks;
+    }
+
+    private static void Delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+}
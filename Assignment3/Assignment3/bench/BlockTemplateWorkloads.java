@@ -0,0 +1,137 @@
+import benchmarks.Workload;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The workloads of {@code benchmarks.BlockTemplateBenchmarks}, block templates built from a
+ * transaction pool of {@code groups} groups. Every group spends one UTXO twice: a parent with a low
+ * fee whose child pays a high fee, and a conflicting transaction whose fee is in between.
+ *
+ * {@code poolOrder} hands the pool to {@code TxHandler} in its own order, as
+ * {@code BlockHandler.createBlock} did before packages. {@code byPackage} builds a
+ * {@code FeeMempool} from the pool and drains it by ancestor package, as a template built from
+ * scratch. {@code createBlock} calls {@code BlockHandler.createBlock} with the pool processed into
+ * its handler beforehand, outside of the time measured, so it times the template from the mempool
+ * the handler keeps and the block added on top of the chain. The pool is generated from fixed
+ * seeds; the workloads check at setup that a template by package earns more fees than the pool
+ * order.
+ */
+public class BlockTemplateWorkloads {
+
+    public static Workload poolOrder(int groups) throws GeneralSecurityException {
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction[] txs = Groups(groups, Owner(), utxoPool, new Random(groups)).getTransactions().toArray(new Transaction[0]);
+        return () -> new TxHandler(utxoPool).handleTxs(txs).length;
+    }
+
+    public static Workload byPackage(int groups) throws GeneralSecurityException {
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction[] txs = Groups(groups, Owner(), utxoPool, new Random(groups)).getTransactions().toArray(new Transaction[0]);
+        Workload workload = () -> {
+            FeeMempool mempool = new FeeMempool(utxoPool);
+            for (Transaction tx : txs)
+                mempool.add(tx);
+            return new TxHandler(utxoPool).handleTxs(mempool.drainInPackageOrder()).length;
+        };
+        FeeMempool mempool = new FeeMempool(utxoPool);
+        for (Transaction tx : txs)
+            mempool.add(tx);
+        CheckMoreFeesThanPoolOrder(utxoPool, txs, new TxHandler(utxoPool).handleTxs(mempool.drainInPackageOrder()));
+        return workload;
+    }
+
+    public static Workload createBlock(int groups) throws GeneralSecurityException {
+        KeyPair owner = Owner();
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction[] txs = Groups(groups, owner, utxoPool, new Random(groups)).getTransactions().toArray(new Transaction[0]);
+        Block genesisBlock = new Block(null, owner.getPublic());
+        genesisBlock.finalize();
+        Workload workload = new Workload() {
+            private BlockHandler blockHandler;
+
+            @Override
+            public void prepare() {
+                blockHandler = new BlockHandler(new BlockChain(genesisBlock, utxoPool));
+                for (Transaction tx : txs)
+                    blockHandler.processTx(tx);
+            }
+
+            @Override
+            public int run() {
+                return blockHandler.createBlock(owner.getPublic()).getTransactions().size();
+            }
+        };
+        BlockHandler blockHandler = new BlockHandler(new BlockChain(genesisBlock, utxoPool));
+        for (Transaction tx : txs)
+            blockHandler.processTx(tx);
+        List<Transaction> template = blockHandler.createBlock(owner.getPublic()).getTransactions();
+        CheckMoreFeesThanPoolOrder(utxoPool, txs, template.toArray(new Transaction[0]));
+        return workload;
+    }
+
+    private static KeyPair Owner() throws GeneralSecurityException {
+        SecureRandom seed = SecureRandom.getInstance("SHA1PRNG");
+        seed.setSeed(1);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024, seed);
+        return generator.generateKeyPair();
+    }
+
+    private static void CheckMoreFeesThanPoolOrder(UTXOPool utxoPool, Transaction[] txs, Transaction[] template) {
+        if (Fees(utxoPool, template) <= Fees(utxoPool, new TxHandler(utxoPool).handleTxs(txs)))
+            throw new IllegalStateException("the template by package earns no more fees than the pool order");
+    }
+
+    private static TransactionPool Groups(int groups, KeyPair owner, UTXOPool utxoPool, Random random) throws GeneralSecurityException {
+        TransactionPool txPool = new TransactionPool();
+        for (int g = 0; g < groups; g++) {
+            byte[] funding = new byte[32];
+            random.nextBytes(funding);
+            utxoPool.addUTXO(new UTXO(funding, 0), new Transaction().new Output(Block.COINBASE, owner.getPublic()));
+
+            Transaction parent = Signed(funding, Block.COINBASE - 0.1, owner);
+            Transaction child = Signed(parent.getHash(), Block.COINBASE - 0.1 - 2 - 2 * random.nextDouble(), owner);
+            Transaction conflict = Signed(funding, Block.COINBASE - 1 - random.nextDouble(), owner);
+            txPool.addTransaction(child);
+            txPool.addTransaction(conflict);
+            txPool.addTransaction(parent);
+        }
+        return txPool;
+    }
+
+    private static Transaction Signed(byte[] prevTxHash, double value, KeyPair owner) throws GeneralSecurityException {
+        Transaction tx = new Transaction();
+        tx.addInput(prevTxHash, 0);
+        tx.addOutput(value, owner.getPublic());
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(owner.getPrivate());
+        signature.update(tx.getRawDataToSign(0));
+        tx.addSignature(signature.sign(), 0);
+        tx.finalize();
+        return tx;
+    }
+
+    private static double Fees(UTXOPool utxoPool, Transaction[] accepted) {
+        Map<UTXO, Transaction.Output> created = new HashMap<UTXO, Transaction.Output>();
+        double fees = 0;
+        for (Transaction tx : accepted) {
+            for (Transaction.Input input : tx.getInputs()) {
+                UTXO utxo = new UTXO(input);
+                fees += utxoPool.contains(utxo) ? utxoPool.getTxOutput(utxo).value : created.get(utxo).value;
+            }
+            for (int index = 0; index < tx.numOutputs(); index++) {
+                fees -= tx.getOutput(index).value;
+                created.put(new UTXO(tx.getHash(), index), tx.getOutput(index));
+            }
+        }
+        return fees;
+    }
+}
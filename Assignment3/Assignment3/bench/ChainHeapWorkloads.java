@@ -0,0 +1,83 @@
+import benchmarks.Workload;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The workloads of {@code benchmarks.ChainHeapBenchmarks}, building the UTXO pools of a chain of
+ * {@code blocks} blocks in which, like {@code BlockChain} did, every block keeps its own pool copied
+ * from its parent's. Each block creates {@code created} UTXOs and spends {@code spent} of the
+ * unspent ones, picked from a fixed seed at setup. {@code sharedPools} keeps {@code UTXOPool}
+ * copies, which share structure; {@code fullCopies} keeps full {@code HashMap} copies, as
+ * {@code UTXOPool} did before. Every pool built is kept until the run ends, so the bytes a run
+ * allocates are about the heap the chain retains.
+ */
+public class ChainHeapWorkloads {
+
+    public static Workload sharedPools(int blocks, int created, int spent) {
+        Changes[] chain = Blocks(blocks, created, spent);
+        Transaction.Output output = new Transaction().new Output(Block.COINBASE, null);
+        return () -> {
+            List<UTXOPool> pools = new ArrayList<UTXOPool>(blocks);
+            UTXOPool pool = new UTXOPool();
+            for (Changes block : chain) {
+                pool = new UTXOPool(pool);
+                for (UTXO utxo : block.spent)
+                    pool.removeUTXO(utxo);
+                for (UTXO utxo : block.created)
+                    pool.addUTXO(utxo, output);
+                pools.add(pool);
+            }
+            return pools.size() + pool.size();
+        };
+    }
+
+    public static Workload fullCopies(int blocks, int created, int spent) {
+        Changes[] chain = Blocks(blocks, created, spent);
+        Transaction.Output output = new Transaction().new Output(Block.COINBASE, null);
+        return () -> {
+            List<HashMap<UTXO, Transaction.Output>> copies = new ArrayList<HashMap<UTXO, Transaction.Output>>(blocks);
+            HashMap<UTXO, Transaction.Output> copy = new HashMap<UTXO, Transaction.Output>();
+            for (Changes block : chain) {
+                copy = new HashMap<UTXO, Transaction.Output>(copy);
+                for (UTXO utxo : block.spent)
+                    copy.remove(utxo);
+                for (UTXO utxo : block.created)
+                    copy.put(utxo, output);
+                copies.add(copy);
+            }
+            return copies.size() + copy.size();
+        };
+    }
+
+    /** The UTXOs each block spends and creates */
+    private static final class Changes {
+        private final List<UTXO> spent = new ArrayList<UTXO>();
+        private final List<UTXO> created = new ArrayList<UTXO>();
+    }
+
+    private static Changes[] Blocks(int blocks, int created, int spent) {
+        Random random = new Random(0);
+        List<UTXO> unspent = new ArrayList<UTXO>();
+        Changes[] chain = new Changes[blocks];
+        for (int height = 0; height < blocks; height++) {
+            chain[height] = new Changes();
+            for (int i = 0; i < spent && !unspent.isEmpty(); i++)
+                chain[height].spent.add(unspent.remove(random.nextInt(unspent.size())));
+            for (int i = 0; i < created; i++) {
+                UTXO utxo = AUTXO(random);
+                chain[height].created.add(utxo);
+                unspent.add(utxo);
+            }
+        }
+        return chain;
+    }
+
+    private static UTXO AUTXO(Random random) {
+        byte[] txHash = new byte[32];
+        random.nextBytes(txHash);
+        return new UTXO(txHash, random.nextInt(4));
+    }
+}
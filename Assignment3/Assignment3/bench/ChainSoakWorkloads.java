@@ -0,0 +1,128 @@
+import benchmarks.Workload;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayDeque;
+
+/**
+ * The workload of {@code benchmarks.ChainSoakBenchmarks}, feeding {@code BlockChain} a long run of
+ * blocks, one height per run, across every iteration of the trial. Every block extends the highest
+ * one, and every {@code forkEvery}th also gets a sibling that nothing extends, so forks have to be
+ * dropped as well; the forks carry a transaction paying nothing to get a hash of their own. Blocks
+ * pay their coinbase to one of a few miners, and every {@code payEvery}th carries a payment moving
+ * coins between a few owners: it spends the main output of the previous payment and the small
+ * output of a payment {@code SPEND_AFTER} payments back, so outputs, and the addresses they are
+ * paid to, keep being created and spent while the UTXO set stays the same size. The payments are
+ * signed as the run goes, with short keys so that signing does not dominate it.
+ *
+ * The blocks kept and the UTXO changes recorded in their undo journals must level off: each run
+ * checks that they stay within what the {@code cutOffAge + 1} highest heights can hold, and fails
+ * the trial otherwise. So must the heap, which {@code -prof gc} does not show directly, but it
+ * shows the bytes allocated per block staying flat; the heap only levels off once the shared
+ * {@code SignatureCache} holds its {@code DEFAULT_CAPACITY} verified signatures, about two per
+ * payment.
+ */
+public class ChainSoakWorkloads {
+
+    private static final int MINERS = 4;
+    private static final int OWNERS = 8;
+    private static final int SPEND_AFTER = 5;
+    /** the most UTXO changes a block records: its coinbase, and a payment of two inputs and two outputs */
+    private static final int MAX_JOURNAL_PER_BLOCK = 5;
+
+    public static Workload soak(int forkEvery, int payEvery, int cutOffAge) throws GeneralSecurityException {
+        BlockChain.CUT_OFF_AGE = cutOffAge;
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024, new SecureRandom());
+        PublicKey[] miners = new PublicKey[MINERS];
+        for (int i = 0; i < miners.length; i++)
+            miners[i] = generator.generateKeyPair().getPublic();
+        KeyPair[] owners = new KeyPair[OWNERS];
+        for (int i = 0; i < owners.length; i++)
+            owners[i] = generator.generateKeyPair();
+
+        Block genesisBlock = new Block(null, owners[0].getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        Transaction zeroTx = new Transaction();
+        zeroTx.addOutput(0, miners[0]);
+        zeroTx.finalize();
+        int maxRetainedBlocks = 2 * (cutOffAge + 1);
+        return new Workload() {
+            private final ArrayDeque<Transaction> payments = new ArrayDeque<Transaction>();
+            private int height;
+            private int paid;
+
+            @Override
+            public int run() {
+                height++;
+                byte[] parentHash = blockChain.getMaxHeightBlock().getHash();
+                Block block = new Block(parentHash, miners[height % MINERS]);
+                if (height % payEvery == 0) {
+                    Transaction payment = NextPayment(genesisBlock, payments, paid++, owners);
+                    payments.addLast(payment);
+                    if (payments.size() > SPEND_AFTER)
+                        payments.removeFirst();
+                    block.addTransaction(payment);
+                }
+                Add(blockChain, block);
+                if (height % forkEvery == 0) {
+                    Block fork = new Block(parentHash, miners[(height + 1) % MINERS]);
+                    fork.addTransaction(zeroTx);
+                    Add(blockChain, fork);
+                }
+                int retainedBlocks = blockChain.getRetainedBlockCount();
+                if (retainedBlocks > maxRetainedBlocks || blockChain.getRetainedJournalSize() > MAX_JOURNAL_PER_BLOCK * maxRetainedBlocks)
+                    throw new IllegalStateException("the chain keeps " + retainedBlocks + " blocks at height " + height);
+                return retainedBlocks;
+            }
+        };
+    }
+
+    /**
+     * The payment number {@code n}, spending the main output of the last of {@code recent}, or the
+     * genesis coinbase, and the small output of the first of them once there are
+     * {@code SPEND_AFTER}; it pays all but 1 to the next owner and 1 to the one after
+     */
+    private static Transaction NextPayment(Block genesisBlock, ArrayDeque<Transaction> recent, int n, KeyPair[] owners) {
+        Transaction tx = new Transaction();
+        KeyPair[] signers = new KeyPair[2];
+        double value = 25;
+        if (recent.isEmpty()) {
+            tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        } else {
+            tx.addInput(recent.getLast().getHash(), 0);
+            value = recent.getLast().getOutput(0).value;
+        }
+        signers[0] = owners[n % OWNERS];
+        if (recent.size() == SPEND_AFTER) {
+            tx.addInput(recent.getFirst().getHash(), 1);
+            signers[1] = owners[(n - SPEND_AFTER + 2) % OWNERS];
+            value += 1;
+        }
+        tx.addOutput(value - 1, owners[(n + 1) % OWNERS].getPublic());
+        tx.addOutput(1, owners[(n + 2) % OWNERS].getPublic());
+        try {
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Signature signature = Signature.getInstance("SHA256withRSA");
+                signature.initSign(signers[i].getPrivate());
+                signature.update(tx.getRawDataToSign(i));
+                tx.addSignature(signature.sign(), i);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        tx.finalize();
+        return tx;
+    }
+
+    private static void Add(BlockChain blockChain, Block block) {
+        block.finalize();
+        if (!blockChain.addBlock(block))
+            throw new IllegalStateException("block rejected");
+    }
+}
@@ -0,0 +1,193 @@
+import benchmarks.Workload;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The workloads of {@code benchmarks.ReorgBenchmarks}, reorganizations of depth 1 to
+ * {@code cutOffAge}: on a chain of {@code cutOffAge + 1} blocks, a fork branching off {@code depth}
+ * blocks below the highest one is fed until it is one block higher, so that its last block
+ * disconnects {@code depth} blocks and connects {@code depth + 1}. The chain is either
+ * {@code BlockChain}, which moves its one UTXO set along undo journals, or a chain that keeps a pool
+ * per block, as {@code BlockChain} did before. Every block spends the coinbase UTXO, which each
+ * coinbase pays again to the same miner, into {@code outputs} outputs whose values are salted per
+ * block, so that every block has a hash of its own.
+ *
+ * {@code fork} adds the whole fork, {@code reorganization} only its last block. The blocks are
+ * generated from a fixed seed at setup; each run gets a new chain holding the main chain, and the
+ * fork but its last block for {@code reorganization}, built by {@code prepare} with the
+ * SignatureCache emptied afterwards. The workload checks at setup that the fork becomes the
+ * longest chain.
+ */
+public class ReorgWorkloads {
+
+    public static Workload fork(String chain, int outputs, int depth, int cutOffAge) throws GeneralSecurityException {
+        return Reorg(chain, outputs, depth, cutOffAge, false);
+    }
+
+    public static Workload reorganization(String chain, int outputs, int depth, int cutOffAge) throws GeneralSecurityException {
+        return Reorg(chain, outputs, depth, cutOffAge, true);
+    }
+
+    private static Workload Reorg(String chain, int outputs, int depth, int cutOffAge, boolean lastBlockOnly) throws GeneralSecurityException {
+        if (depth < 1 || depth > cutOffAge)
+            throw new IllegalArgumentException("depth must be between 1 and cutOffAge");
+        BlockChain.CUT_OFF_AGE = cutOffAge;
+        SecureRandom seed = SecureRandom.getInstance("SHA1PRNG");
+        seed.setSeed(1);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024, seed);
+        KeyPair miner = generator.generateKeyPair();
+
+        Block genesisBlock = new Block(null, miner.getPublic());
+        genesisBlock.finalize();
+        List<Block> mainChain = Blocks(genesisBlock, cutOffAge + 1, outputs, miner, 0);
+        List<Block> fork = Blocks(mainChain.get(mainChain.size() - 1 - depth), depth + 1, outputs, miner, mainChain.size());
+        int prepared = lastBlockOnly ? fork.size() - 1 : 0;
+        Workload workload = new Workload() {
+            private Chain target;
+
+            @Override
+            public void prepare() {
+                target = NewChain(chain, genesisBlock);
+                for (Block block : mainChain)
+                    Add(target, block);
+                for (Block block : fork.subList(0, prepared))
+                    Add(target, block);
+                SignatureCache.getShared().clear();
+            }
+
+            @Override
+            public int run() {
+                for (Block block : fork.subList(prepared, fork.size()))
+                    Add(target, block);
+                return target.maxHeightUTXOPoolSize();
+            }
+        };
+        workload.prepare();
+        if (workload.run() != outputs * (mainChain.size() + 1) + 1)
+            throw new IllegalStateException("the fork did not become the longest chain");
+        return workload;
+    }
+
+    private interface Chain {
+        boolean addBlock(Block block);
+
+        int maxHeightUTXOPoolSize();
+    }
+
+    private static Chain NewChain(String chain, Block genesisBlock) {
+        switch (chain) {
+            case "journals":
+                BlockChain blockChain = new BlockChain(genesisBlock);
+                return new Chain() {
+                    @Override
+                    public boolean addBlock(Block block) {
+                        return blockChain.addBlock(block);
+                    }
+
+                    @Override
+                    public int maxHeightUTXOPoolSize() {
+                        return blockChain.getMaxHeightUTXOPool().size();
+                    }
+                };
+            case "snapshots":
+                SnapshotChain snapshotChain = new SnapshotChain(genesisBlock);
+                return new Chain() {
+                    @Override
+                    public boolean addBlock(Block block) {
+                        return snapshotChain.addBlock(block);
+                    }
+
+                    @Override
+                    public int maxHeightUTXOPoolSize() {
+                        return snapshotChain.highestNode.utxoPool.size();
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("unknown chain " + chain);
+        }
+    }
+
+    private static void Add(Chain chain, Block block) {
+        if (!chain.addBlock(block))
+            throw new IllegalStateException("block rejected");
+    }
+
+    private static List<Block> Blocks(Block parent, int count, int outputs, KeyPair miner, int salt) throws GeneralSecurityException {
+        Transaction coinbase = parent.getCoinbase();
+        List<Block> blocks = new ArrayList<Block>();
+        for (int i = 0; i < count; i++) {
+            Block block = new Block(parent.getHash(), miner.getPublic());
+            Transaction tx = new Transaction();
+            tx.addInput(coinbase.getHash(), 0);
+            tx.addOutput((salt + i + 1) / 1e8, miner.getPublic());
+            for (int index = 1; index < outputs; index++)
+                tx.addOutput(1e-3, miner.getPublic());
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(miner.getPrivate());
+            signature.update(tx.getRawDataToSign(0));
+            tx.addSignature(signature.sign(), 0);
+            tx.finalize();
+            block.addTransaction(tx);
+            block.finalize();
+            blocks.add(block);
+            parent = block;
+        }
+        return blocks;
+    }
+
+    /** A chain whose every block keeps the UTXO pool right after it, copied from its parent's */
+    private static class SnapshotChain {
+
+        private final Map<BlockHash, SnapshotNode> nodes = new HashMap<BlockHash, SnapshotNode>();
+        private SnapshotNode highestNode;
+
+        SnapshotChain(Block genesisBlock) {
+            UTXOPool utxoPool = new UTXOPool();
+            Transaction coinbase = genesisBlock.getCoinbase();
+            utxoPool.addUTXO(new UTXO(coinbase.getHash(), 0), coinbase.getOutput(0));
+            highestNode = new SnapshotNode(genesisBlock, utxoPool, 0);
+            nodes.put(BlockHash.of(genesisBlock.getHash()), highestNode);
+        }
+
+        boolean addBlock(Block block) {
+            SnapshotNode parent = nodes.get(BlockHash.of(block.getPrevBlockHash()));
+            if (parent == null || parent.height + 1 <= highestNode.height - BlockChain.CUT_OFF_AGE)
+                return false;
+            TxHandler txHandler = new TxHandler(new UTXOPool(parent.utxoPool));
+            if (txHandler.handleTxs(block.getTransactions()).size() != block.getTransactions().size())
+                return false;
+            UTXOPool utxoPool = txHandler.getUTXOPool();
+            Transaction coinbase = block.getCoinbase();
+            utxoPool.addUTXO(new UTXO(coinbase.getHash(), 0), coinbase.getOutput(0));
+            SnapshotNode node = new SnapshotNode(block, utxoPool, parent.height + 1);
+            nodes.put(BlockHash.of(block.getHash()), node);
+            if (node.height > highestNode.height) {
+                highestNode = node;
+                nodes.values().removeIf(kept -> kept.height < highestNode.height - BlockChain.CUT_OFF_AGE);
+            }
+            return true;
+        }
+    }
+
+    private static class SnapshotNode {
+
+        final Block block;
+        final UTXOPool utxoPool;
+        final int height;
+
+        SnapshotNode(Block block, UTXOPool utxoPool, int height) {
+            this.block = block;
+            this.utxoPool = utxoPool;
+            this.height = height;
+        }
+    }
+}
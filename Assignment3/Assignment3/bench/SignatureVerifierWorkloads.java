@@ -0,0 +1,153 @@
+import benchmarks.Workload;
+
+import java.security.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The workloads of {@code benchmarks.SignatureVerifierBenchmarks}, verifying {@code signatures}
+ * signatures over 16 addresses on {@code threads} threads: {@code legacy} with the previous
+ * {@code Crypto.verifySignature}, which looked up a new {@code Signature} on every call,
+ * {@code threadLocal} with the per-thread {@code Signature} of {@link SignatureVerifier},
+ * {@code registry} with the prepared per-address verifiers of {@link AddressRegistry} and
+ * {@code verifyAll} with {@link SignatureVerifier#verifyAll}. The signatures are made from a fixed
+ * seed at setup, once for all the workloads of a trial; every one is valid and a run fails if one
+ * is found not to be.
+ */
+public class SignatureVerifierWorkloads {
+
+    private static final int ADDRESSES = 16;
+
+    public static Workload legacy(int signatures, int threads) throws GeneralSecurityException {
+        Signed signed = Signed.of(signatures);
+        return Spread(threads, signatures, i -> LegacyVerifySignature(signed.addresses[i], signed.messages[i], signed.signatures[i]));
+    }
+
+    public static Workload threadLocal(int signatures, int threads) throws GeneralSecurityException {
+        Signed signed = Signed.of(signatures);
+        return Spread(threads, signatures, i -> SignatureVerifier.verifySignature(signed.addresses[i], signed.messages[i], signed.signatures[i]));
+    }
+
+    public static Workload registry(int signatures, int threads) throws GeneralSecurityException {
+        Signed signed = Signed.of(signatures);
+        AddressRegistry.Address[] interned = new AddressRegistry.Address[signatures];
+        for (int i = 0; i < signatures; i++) interned[i] = AddressRegistry.getShared().intern(signed.addresses[i]);
+        return Spread(threads, signatures, i -> interned[i].verifySignature(signed.messages[i], signed.signatures[i]));
+    }
+
+    public static Workload verifyAll(int signatures, int threads) throws GeneralSecurityException {
+        Signed signed = Signed.of(signatures);
+        List<SignatureVerifier.VerifyRequest> requests = new ArrayList<>();
+        for (int i = 0; i < signatures; i++)
+            requests.add(new SignatureVerifier.VerifyRequest(signed.addresses[i], signed.messages[i], signed.signatures[i]));
+        SignatureVerifier verifier = SignatureVerifier.withParallelism(threads);
+        return new Workload() {
+            @Override
+            public int run() {
+                int valid = 0;
+                for (boolean verified : verifier.verifyAll(requests)) {
+                    if (!verified) throw new IllegalStateException("benchmark signatures must be valid");
+                    valid++;
+                }
+                return valid;
+            }
+
+            @Override
+            public void close() {
+                verifier.close();
+            }
+        };
+    }
+
+    private interface Verification {
+        boolean verify(int index);
+    }
+
+    /** Runs verification over the signatures, each of threads threads taking every threads-th one */
+    private static Workload Spread(int threads, int signatures, Verification verification) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        return new Workload() {
+            @Override
+            public int run() {
+                List<Future<Integer>> shares = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int first = t;
+                    shares.add(executor.submit(() -> {
+                        int valid = 0;
+                        for (int i = first; i < signatures; i += threads) {
+                            if (!verification.verify(i)) throw new IllegalStateException("benchmark signatures must be valid");
+                            valid++;
+                        }
+                        return valid;
+                    }));
+                }
+                int valid = 0;
+                try {
+                    for (Future<Integer> share : shares) valid += share.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                return valid;
+            }
+
+            @Override
+            public void close() {
+                executor.shutdown();
+            }
+        };
+    }
+
+    /** The signed messages of a workload, the i-th signed by the (i % 16)-th address */
+    private static final class Signed {
+        /** The last signed messages made, which the other workloads of a benchmark run reuse */
+        private static Signed last;
+
+        private final PublicKey[] addresses;
+        private final byte[][] messages;
+        private final byte[][] signatures;
+
+        private static synchronized Signed of(int count) throws GeneralSecurityException {
+            if (last == null || last.addresses.length != count) last = new Signed(count);
+            return last;
+        }
+
+        private Signed(int count) throws GeneralSecurityException {
+            addresses = new PublicKey[count];
+            messages = new byte[count][];
+            signatures = new byte[count][];
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048, new SecureRandom(new byte[]{1}));
+            KeyPair[] keyPairs = new KeyPair[ADDRESSES];
+            for (int i = 0; i < ADDRESSES; i++) keyPairs[i] = generator.generateKeyPair();
+            Signature signer = Signature.getInstance("SHA256withRSA");
+            for (int i = 0; i < count; i++) {
+                KeyPair keyPair = keyPairs[i % ADDRESSES];
+                messages[i] = new byte[]{(byte) i, (byte) (i >> 8), 42};
+                signer.initSign(keyPair.getPrivate());
+                signer.update(messages[i]);
+                signatures[i] = signer.sign();
+                addresses[i] = keyPair.getPublic();
+            }
+        }
+    }
+
+    // Crypto.verifySignature as it was before it reused Signature objects
+
+    private static boolean LegacyVerifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initVerify(pubKey);
+            sig.update(message);
+            return sig.verify(signature);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restarting a {@code BlockChain} by reopening it from a {@code BlockStore}, against feeding all
+ * its blocks again to a new chain, over the workloads of {@code BlockStoreWorkloads}. A restart
+ * runs once per iteration, so each iteration times one restart.
+ *
+ * Usage (with the classes of src, bench and the Assignment1 libs on the classpath):
+ * java org.openjdk.jmh.Main BlockStoreBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BlockStoreBenchmarks {
+
+    private static final String WORKLOADS = "BlockStoreWorkloads";
+
+    @State(Scope.Thread)
+    public static class StoredChain {
+        @Param({"10000"})
+        public int blocks;
+        @Param({"10"})
+        public int outputs;
+        @Param({"100", "1000"})
+        public int checkpointInterval;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "reopen", blocks, outputs, checkpointInterval);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Blocks {
+        @Param({"10000"})
+        public int blocks;
+        @Param({"10"})
+        public int outputs;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "feedAgain", blocks, outputs);
+        }
+
+        @Setup(Level.Iteration)
+        public void prepare() {
+            workload.prepare();
+        }
+    }
+
+    @Benchmark
+    public int reopen(StoredChain state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int feedAgain(Blocks state) {
+        return state.workload.run();
+    }
+}
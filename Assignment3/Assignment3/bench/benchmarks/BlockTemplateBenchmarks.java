@@ -0,0 +1,82 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block templates handed to {@code TxHandler} in the order of the transaction pool, against
+ * templates by ancestor package, built from scratch or by {@code BlockHandler.createBlock} from the
+ * mempool it keeps, over the workloads of {@code BlockTemplateWorkloads}.
+ *
+ * Usage (with the classes of src, bench and the Assignment1 libs on the classpath):
+ * java org.openjdk.jmh.Main BlockTemplateBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BlockTemplateBenchmarks {
+
+    private static final String WORKLOADS = "BlockTemplateWorkloads";
+
+    @State(Scope.Thread)
+    public static class TransactionPool {
+        @Param({"100", "1000"})
+        public int groups;
+
+        Workload poolOrder;
+        Workload byPackage;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            poolOrder = Workloads.of(WORKLOADS, "poolOrder", groups);
+            byPackage = Workloads.of(WORKLOADS, "byPackage", groups);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ProcessedTransactions {
+        @Param({"100", "1000"})
+        public int groups;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "createBlock", groups);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            workload.prepare();
+        }
+    }
+
+    @Benchmark
+    public int poolOrder(TransactionPool state) {
+        return state.poolOrder.run();
+    }
+
+    @Benchmark
+    public int byPackage(TransactionPool state) {
+        return state.byPackage.run();
+    }
+
+    @Benchmark
+    public int createBlock(ProcessedTransactions state) {
+        return state.workload.run();
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the UTXO pools of a chain in which every block keeps its own copy of its parent's pool,
+ * with the workloads of {@code ChainHeapWorkloads}: {@code UTXOPool} copies against full
+ * {@code HashMap} copies. Every pool of a chain stays reachable until the chain is built, so run
+ * with {@code -prof gc}: {@code gc.alloc.rate.norm} is about the bytes the chain retains.
+ *
+ * Usage (with the classes of src, bench and the Assignment1 libs on the classpath):
+ * java org.openjdk.jmh.Main ChainHeapBenchmarks [-p name=value,value...] [-prof gc]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ChainHeapBenchmarks {
+
+    private static final String WORKLOADS = "ChainHeapWorkloads";
+
+    @State(Scope.Thread)
+    public static class Chain {
+        @Param({"2000"})
+        public int blocks;
+        @Param({"3"})
+        public int created;
+        @Param({"2"})
+        public int spent;
+
+        Workload sharedPools;
+        Workload fullCopies;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            sharedPools = Workloads.of(WORKLOADS, "sharedPools", blocks, created, spent);
+            fullCopies = Workloads.of(WORKLOADS, "fullCopies", blocks, created, spent);
+        }
+    }
+
+    @Benchmark
+    public int sharedPools(Chain state) {
+        return state.sharedPools.run();
+    }
+
+    @Benchmark
+    public int fullCopies(Chain state) {
+        return state.fullCopies.run();
+    }
+}
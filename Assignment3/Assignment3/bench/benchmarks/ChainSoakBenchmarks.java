@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding one height of blocks to a {@code BlockChain} that keeps growing over the whole trial, with
+ * the workload of {@code ChainSoakWorkloads}, which fails the trial if the blocks or undo journals
+ * kept stop leveling off. Run with {@code -prof gc} to see the bytes allocated per height stay
+ * flat as well.
+ *
+ * Usage (with the classes of src, bench and the Assignment1 libs on the classpath):
+ * java org.openjdk.jmh.Main ChainSoakBenchmarks [-p name=value,value...] [-prof gc]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 10, time = 5)
+@Fork(1)
+public class ChainSoakBenchmarks {
+
+    private static final String WORKLOADS = "ChainSoakWorkloads";
+
+    @State(Scope.Thread)
+    public static class GrowingChain {
+        @Param({"10"})
+        public int forkEvery;
+        @Param({"10"})
+        public int payEvery;
+        @Param({"10"})
+        public int cutOffAge;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "soak", forkEvery, payEvery, cutOffAge);
+        }
+    }
+
+    @Benchmark
+    public int soak(GrowingChain state) {
+        return state.workload.run();
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reorganizations of {@code BlockChain}, moving its one UTXO set along undo journals, against a
+ * chain keeping a pool per block, over the workloads of {@code ReorgWorkloads}: adding a whole fork
+ * that becomes the longest chain, or only its last block, which reorganizes the chain. Each
+ * operation gets a chain prepared outside of the time measured.
+ *
+ * Usage (with the classes of src, bench and the Assignment1 libs on the classpath):
+ * java org.openjdk.jmh.Main ReorgBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ReorgBenchmarks {
+
+    private static final String WORKLOADS = "ReorgWorkloads";
+
+    @State(Scope.Thread)
+    public static class WholeFork {
+        @Param({"journals", "snapshots"})
+        public String chain;
+        @Param({"100", "1000"})
+        public int outputs;
+        @Param({"1", "5", "10"})
+        public int depth;
+        @Param({"10"})
+        public int cutOffAge;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "fork", chain, outputs, depth, cutOffAge);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            workload.prepare();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LastBlock {
+        @Param({"journals", "snapshots"})
+        public String chain;
+        @Param({"100", "1000"})
+        public int outputs;
+        @Param({"1", "5", "10"})
+        public int depth;
+        @Param({"10"})
+        public int cutOffAge;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workloads.of(WORKLOADS, "reorganization", chain, outputs, depth, cutOffAge);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            workload.prepare();
+        }
+    }
+
+    @Benchmark
+    public int fork(WholeFork state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    public int reorganization(LastBlock state) {
+        return state.workload.run();
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifying a batch of signatures, with the workloads of {@code SignatureVerifierWorkloads}: the
+ * previous {@code Crypto.verifySignature}, the per-thread {@code Signature} of
+ * {@code SignatureVerifier}, the prepared verifiers of {@code AddressRegistry} and
+ * {@code SignatureVerifier.verifyAll}, each spreading the batch over {@code threads} threads.
+ *
+ * Usage (with the classes of src, bench and the Assignment1 libs on the classpath):
+ * java org.openjdk.jmh.Main SignatureVerifierBenchmarks [-p name=value,value...]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SignatureVerifierBenchmarks {
+
+    private static final String WORKLOADS = "SignatureVerifierWorkloads";
+
+    @State(Scope.Thread)
+    public static class Signatures {
+        @Param({"4096"})
+        public int signatures;
+        @Param({"1", "4", "16"})
+        public int threads;
+
+        Workload legacy;
+        Workload threadLocal;
+        Workload registry;
+        Workload verifyAll;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            legacy = Workloads.of(WORKLOADS, "legacy", signatures, threads);
+            threadLocal = Workloads.of(WORKLOADS, "threadLocal", signatures, threads);
+            registry = Workloads.of(WORKLOADS, "registry", signatures, threads);
+            verifyAll = Workloads.of(WORKLOADS, "verifyAll", signatures, threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            legacy.close();
+            threadLocal.close();
+            registry.close();
+            verifyAll.close();
+        }
+    }
+
+    @Benchmark
+    public int legacy(Signatures state) {
+        return state.legacy.run();
+    }
+
+    @Benchmark
+    public int threadLocal(Signatures state) {
+        return state.threadLocal.run();
+    }
+
+    @Benchmark
+    public int registry(Signatures state) {
+        return state.registry.run();
+    }
+
+    @Benchmark
+    public int verifyAll(Signatures state) {
+        return state.verifyAll.run();
+    }
+}
@@ -0,0 +1,30 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Builds workloads with the public static factories of classes of the unnamed package. Only the
+ * setup of a trial goes through reflection; the benchmarks then call {@link Workload#run()}
+ * directly.
+ */
+public final class Workloads {
+
+    private Workloads() {
+    }
+
+    /** @return the workload made by {@code owner.factory(arguments)}, {@code owner} being in the unnamed package */
+    public static Workload of(String owner, String factory, Object... arguments) {
+        try {
+            for (Method method : Class.forName(owner).getMethods()) {
+                if (method.getName().equals(factory) && method.getParameterCount() == arguments.length)
+                    return (Workload) method.invoke(null, arguments);
+            }
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        throw new IllegalArgumentException("no factory " + owner + "." + factory + " of " + arguments.length + " arguments");
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The addresses of a {@link MappedUTXOStore}, kept off the heap. Each distinct address is appended
+ * once to a keys file, as the length and bytes of its X.509 encoding padded to 8 bytes, and is
+ * referred to by where its record starts, so a reference needs no table to be resolved. A companion
+ * index file, an open-addressing hash table with linear probing in a memory-mapped file, maps the
+ * hash of each encoding to its reference, so that an address already written is found again
+ * without keeping every key on the heap. Only the {@code CACHE_CAPACITY} addresses used most
+ * recently stay decoded.
+ *
+ * <p>
+ * The index records how much of the keys file it covers; on opening, an index that is missing or
+ * does not cover the whole keys file, as after a crash, is rebuilt from the keys file, whose torn
+ * last record, if any, is cut off. Not thread-safe.
+ */
+class AddressFile implements Closeable {
+
+    /** addresses kept decoded */
+    static final int CACHE_CAPACITY = 1 << 12;
+    /** reference of an output without address */
+    static final int NO_ADDRESS = -1;
+
+    private static final long MAGIC = 0x4b45594944584c53L;
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int SIZE_OFFSET = 16;
+    /** length of the keys file covered by the index */
+    private static final int KEYS_LENGTH_OFFSET = 24;
+    /** hash of the encoding and reference of the address */
+    private static final int SLOT_BYTES = 8;
+    private static final int ALIGNMENT = 8;
+    /** reference of an empty slot */
+    private static final int EMPTY = 0;
+    private static final int MIN_CAPACITY = 1 << 10;
+    /** the index is mapped at once, so it stays below the 2 GB limit of a mapping */
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path keysFile;
+    private final FileChannel keysChannel;
+    private long keysLength;
+
+    private final Path indexFile;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+
+    private final KeyFactory keyFactory;
+    private final Map<Integer, AddressRegistry.Address> decoded = new LinkedHashMap<Integer, AddressRegistry.Address>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, AddressRegistry.Address> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    AddressFile(Path keysFile) throws IOException {
+        this.keysFile = keysFile;
+        this.indexFile = keysFile.resolveSibling(keysFile.getFileName() + ".index");
+        try {
+            this.keyFactory = KeyFactory.getInstance("RSA");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        this.keysChannel = new RandomAccessFile(keysFile.toFile(), "rw").getChannel();
+        if (!OpenIndex())
+            Rebuild(MIN_CAPACITY);
+    }
+
+    /** @return the address written under {@code ref}, or null for {@code NO_ADDRESS} */
+    PublicKey address(int ref) {
+        return ref == NO_ADDRESS ? null : Decoded(ref).publicKey();
+    }
+
+    /** @return the reference of {@code address}, appending it to the keys file the first time */
+    int refOf(PublicKey address) {
+        if (address == null)
+            return NO_ADDRESS;
+        byte[] encoded = address.getEncoded();
+        int hash = Arrays.hashCode(encoded);
+        int mask = capacity - 1;
+        int slot = Spread(hash) & mask;
+        for (; RefAt(slot) != EMPTY; slot = (slot + 1) & mask) {
+            int ref = RefAt(slot);
+            if (HashAt(slot) == hash && Arrays.equals(Decoded(ref).encoded(), encoded))
+                return ref;
+        }
+        int ref = Append(encoded);
+        decoded.put(ref, AddressRegistry.getShared().intern(address));
+        if (size + 1 > capacity * MAX_LOAD) {
+            Rebuild(capacity * 2);
+        } else {
+            Insert(hash, ref);
+            index.putInt(SIZE_OFFSET, size);
+            index.putLong(KEYS_LENGTH_OFFSET, keysLength);
+        }
+        return ref;
+    }
+
+    /** @return the number of addresses written */
+    int size() {
+        return size;
+    }
+
+    /** Forces every address written so far to the storage device */
+    void force() throws IOException {
+        keysChannel.force(false);
+        index.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        keysChannel.close();
+        indexChannel.close();
+    }
+
+    private AddressRegistry.Address Decoded(int ref) {
+        AddressRegistry.Address address = decoded.get(ref);
+        if (address != null)
+            return address;
+        try {
+            long offset = (long) (ref - 1) * ALIGNMENT;
+            byte[] encoded = new byte[ReadFully(offset, 4).getInt()];
+            ReadFully(offset + 4, encoded.length).get(encoded);
+            address = AddressRegistry.getShared().intern(keyFactory.generatePublic(new X509EncodedKeySpec(encoded)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (GeneralSecurityException e) {
+            throw new UncheckedIOException(new IOException("corrupt key in " + keysFile, e));
+        }
+        decoded.put(ref, address);
+        return address;
+    }
+
+    /** @return the reference of the record of {@code encoded}, written at the end of the keys file */
+    private int Append(byte[] encoded) {
+        if (keysLength / ALIGNMENT >= Integer.MAX_VALUE)
+            throw new IllegalStateException(keysFile + " is full");
+        int ref = (int) (keysLength / ALIGNMENT) + 1;
+        ByteBuffer record = ByteBuffer.allocate((int) Aligned(4 + encoded.length));
+        record.putInt(encoded.length).put(encoded).clear();
+        try {
+            while (record.hasRemaining())
+                keysChannel.write(record, keysLength + record.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        keysLength += record.capacity();
+        return ref;
+    }
+
+    private void Insert(int hash, int ref) {
+        int mask = capacity - 1;
+        int slot = Spread(hash) & mask;
+        while (RefAt(slot) != EMPTY)
+            slot = (slot + 1) & mask;
+        index.putInt(HEADER_BYTES + slot * SLOT_BYTES, hash);
+        index.putInt(HEADER_BYTES + slot * SLOT_BYTES + 4, ref);
+        size++;
+    }
+
+    private int HashAt(int slot) {
+        return index.getInt(HEADER_BYTES + slot * SLOT_BYTES);
+    }
+
+    private int RefAt(int slot) {
+        return index.getInt(HEADER_BYTES + slot * SLOT_BYTES + 4);
+    }
+
+    /** @return true if the index file exists and covers the whole keys file */
+    private boolean OpenIndex() throws IOException {
+        if (!Files.exists(indexFile) || Files.size(indexFile) < HEADER_BYTES)
+            return false;
+        Map(indexFile);
+        keysLength = index.getLong(KEYS_LENGTH_OFFSET);
+        if (index.getLong(0) == MAGIC && index.getInt(8) == FORMAT && keysLength == keysChannel.size())
+            return true;
+        indexChannel.close();
+        return false;
+    }
+
+    /**
+     * Writes aside an index of at least {@code capacity} slots for every record of the keys file,
+     * cutting off a torn last record, and then moves it over the current one
+     */
+    private void Rebuild(int capacity) {
+        try {
+            if (indexChannel != null)
+                indexChannel.close();
+            Path rebuilt = indexFile.resolveSibling(indexFile.getFileName() + ".grow");
+            while (!Indexed(rebuilt, capacity))
+                capacity *= 2;
+            index.force();
+            indexChannel.close();
+            Files.move(rebuilt, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Map(indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** @return false, leaving {@code file} closed, if the keys file does not fit in {@code capacity} slots */
+    private boolean Indexed(Path file, int capacity) throws IOException {
+        if (capacity > MAX_CAPACITY)
+            throw new IllegalStateException(indexFile + " cannot grow any further");
+        Files.deleteIfExists(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(HEADER_BYTES + (long) capacity * SLOT_BYTES);
+            raf.writeLong(MAGIC);
+            raf.writeInt(FORMAT);
+            raf.writeInt(Integer.numberOfTrailingZeros(capacity));
+        }
+        Map(file);
+        long offset = 0;
+        long length = keysChannel.size();
+        while (offset + 4 <= length) {
+            int recordLength = ReadFully(offset, 4).getInt();
+            if (recordLength < 0 || offset + 4 + recordLength > length)
+                break;
+            if (size + 1 > capacity * MAX_LOAD) {
+                indexChannel.close();
+                return false;
+            }
+            byte[] encoded = new byte[recordLength];
+            ReadFully(offset + 4, recordLength).get(encoded);
+            Insert(Arrays.hashCode(encoded), (int) (offset / ALIGNMENT) + 1);
+            offset += Aligned(4 + recordLength);
+        }
+        keysLength = Math.min(offset, length);
+        keysChannel.truncate(keysLength);
+        index.putInt(SIZE_OFFSET, size);
+        index.putLong(KEYS_LENGTH_OFFSET, keysLength);
+        return true;
+    }
+
+    private void Map(Path file) throws IOException {
+        indexChannel = new RandomAccessFile(file.toFile(), "rw").getChannel();
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+        capacity = 1 << index.getInt(12);
+        size = index.getInt(SIZE_OFFSET);
+    }
+
+    private ByteBuffer ReadFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (keysChannel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("truncated key in " + keysFile);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long Aligned(long length) {
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static int Spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,157 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns addresses: every distinct public key is handed out as a single {@link Address}, which
+ * keeps it with its X.509 encoding and, once it has been used to verify, a {@link Signature}
+ * already initialized with it. UTXO stores keep the {@code Address} instead of a
+ * {@link PublicKey} per output, so outputs paid to the same address share a single key object and
+ * verifying under it skips the provider lookup and key parsing of {@link Crypto#verifySignature}.
+ * A thread that finds the prepared verifier in use prepares another one rather than waiting.
+ *
+ * <p>
+ * The registry only holds its addresses weakly: an address stays registered as long as some
+ * store, cache or caller still holds its {@code Address}, and is dropped once none does, so the
+ * registry is no larger than the live UTXO sets that refer to it. Interning the key object of an
+ * address interned recently, as a UTXO set does when outputs it handed out are put back, takes no
+ * lock and skips encoding the key; otherwise interning is synchronized. Reading an {@code Address}
+ * takes no lock. Thread-safe.
+ */
+public class AddressRegistry {
+
+    private static final AddressRegistry SHARED = new AddressRegistry();
+    /** number of slots of the cache of addresses interned recently, a power of two */
+    private static final int RECENT_CAPACITY = 256;
+
+    private final Map<ByteArrayWrapper, Registered> addresses = new HashMap<ByteArrayWrapper, Registered>();
+    /** where the garbage collector enqueues the addresses nothing holds anymore */
+    private final ReferenceQueue<Address> dropped = new ReferenceQueue<Address>();
+    /** addresses interned recently, by the identity hash code of the key object they were interned from */
+    private final AtomicReferenceArray<Recent> recent = new AtomicReferenceArray<Recent>(RECENT_CAPACITY);
+
+    /** @return the registry shared by every UTXO store of the process */
+    public static AddressRegistry getShared() {
+        return SHARED;
+    }
+
+    /** @return the registered instance of {@code address}, registering it if needed, or null for a null address */
+    public Address intern(PublicKey address) {
+        if (address == null)
+            return null;
+        int slot = System.identityHashCode(address) & (RECENT_CAPACITY - 1);
+        Recent cached = recent.get(slot);
+        Address interned = cached == null || cached.key != address ? null : cached.registered.get();
+        if (interned != null)
+            return interned;
+        byte[] encoded = address.getEncoded();
+        ByteArrayWrapper key = new ByteArrayWrapper(encoded);
+        synchronized (this) {
+            ExpungeDropped();
+            Registered registered = addresses.get(key);
+            interned = registered == null ? null : registered.get();
+            if (interned == null) {
+                interned = new Address(address, encoded);
+                registered = new Registered(interned, key, dropped);
+                addresses.put(key, registered);
+            }
+            recent.set(slot, new Recent(address, registered));
+            return interned;
+        }
+    }
+
+    /** Same contract as {@link Crypto#verifySignature}, registering {@code pubKey} if needed */
+    public boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
+        return intern(pubKey).verifySignature(message, signature);
+    }
+
+    /** @return the number of addresses still held somewhere */
+    public synchronized int size() {
+        ExpungeDropped();
+        return addresses.size();
+    }
+
+    private void ExpungeDropped() {
+        for (Registered registered; (registered = (Registered) dropped.poll()) != null; ) {
+            if (addresses.get(registered.key) == registered)
+                addresses.remove(registered.key);
+        }
+    }
+
+    /** A registered address, immutable apart from its prepared verifier */
+    public static final class Address {
+        private final PublicKey publicKey;
+        private final byte[] encoded;
+        /** the prepared verifier while no thread is using it, null otherwise or before the first use */
+        private final AtomicReference<Signature> idleVerifier = new AtomicReference<Signature>();
+
+        private Address(PublicKey publicKey, byte[] encoded) {
+            this.publicKey = publicKey;
+            this.encoded = encoded;
+        }
+
+        public PublicKey publicKey() {
+            return publicKey;
+        }
+
+        /** @return the X.509 encoding of the address */
+        public byte[] encoded() {
+            return encoded.clone();
+        }
+
+        /** Same contract as {@link Crypto#verifySignature}, under this address */
+        public boolean verifySignature(byte[] message, byte[] signature) {
+            Signature verifier = idleVerifier.getAndSet(null);
+            if (verifier == null)
+                verifier = Prepared(publicKey);
+            if (verifier == null)
+                return false;
+            try {
+                verifier.update(message);
+                boolean valid = verifier.verify(signature);
+                idleVerifier.compareAndSet(null, verifier);
+                return valid;
+            } catch (GeneralSecurityException e) {
+                return false;
+            }
+        }
+
+        /** @return a verifier initialized with {@code address}, or null if the key is unusable */
+        private static Signature Prepared(PublicKey address) {
+            try {
+                Signature verifier = SignatureVerifier.NewSignature();
+                verifier.initVerify(address);
+                return verifier;
+            } catch (GeneralSecurityException e) {
+                return null;
+            }
+        }
+    }
+
+    /** A key object interned recently, with the address it was interned as */
+    private static final class Recent {
+        private final PublicKey key;
+        private final Registered registered;
+
+        private Recent(PublicKey key, Registered registered) {
+            this.key = key;
+            this.registered = registered;
+        }
+    }
+
+    /** The weak reference the registry keeps to an address, with the key it is registered under */
+    private static final class Registered extends WeakReference<Address> {
+        private final ByteArrayWrapper key;
+
+        private Registered(Address address, ByteArrayWrapper key, ReferenceQueue<Address> queue) {
+            super(address, queue);
+            this.key = key;
+        }
+    }
+}
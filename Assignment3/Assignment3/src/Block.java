@@ -1,4 +1,5 @@
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
@@ -45,20 +46,18 @@ public class Block {
     }
 
     public byte[] getRawBlock() {
-        ArrayList<Byte> rawBlock = new ArrayList<Byte>();
-        if (prevBlockHash != null)
-            for (int i = 0; i < prevBlockHash.length; i++)
-                rawBlock.add(prevBlockHash[i]);
-        for (int i = 0; i < txs.size(); i++) {
-            byte[] rawTx = txs.get(i).getRawTx();
-            for (int j = 0; j < rawTx.length; j++) {
-                rawBlock.add(rawTx[j]);
-            }
+        byte[][] rawTxs = new byte[txs.size()][];
+        int size = prevBlockHash == null ? 0 : prevBlockHash.length;
+        for (int i = 0; i < rawTxs.length; i++) {
+            rawTxs[i] = txs.get(i).getRawTx();
+            size += rawTxs[i].length;
         }
-        byte[] raw = new byte[rawBlock.size()];
-        for (int i = 0; i < raw.length; i++)
-            raw[i] = rawBlock.get(i);
-        return raw;
+        ByteBuffer rawBlock = ByteBuffer.wrap(new byte[size]);
+        if (prevBlockHash != null)
+            rawBlock.put(prevBlockHash);
+        for (byte[] rawTx : rawTxs)
+            rawBlock.put(rawTx);
+        return rawBlock.array();
     }
 
     public void finalize() {
@@ -2,28 +2,84 @@
 // You should not have all the blocks added to the block chain in memory 
 // as it would cause a memory overflow.
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class BlockChain {
     public static int CUT_OFF_AGE = 10;
+    /** number of blocks added between two checkpoints of a chain kept in a {@link BlockStore} */
+    public static int CHECKPOINT_INTERVAL = 1000;
     private BlockChainNode highestNode;
-    private Map<byte[], BlockChainNode> chain;
+    private BlockIndex chain;
+    /**
+     * The one UTXO set of the chain, in the state right after the block of {@code liveNode}: the
+     * last block connected, so that feeding a fork does not move it back and forth, until the
+     * pool of the highest block is asked for
+     */
+    private UTXOPool liveUtxoPool;
+    private BlockChainNode liveNode;
+    /**
+     * The lowest blocks retained, which no retained block links to each other, each with the UTXO
+     * set right after it, but for the one {@code liveNode} descends from, which is mapped to null:
+     * its set is reached from the live set by undo journals. The live set moves to a block of
+     * another lowest block by swapping places with the set of that block
+     */
+    private Map<BlockChainNode, UTXOPool> rootUtxoPools = new IdentityHashMap<BlockChainNode, UTXOPool>();
     private TransactionPool transactionPool;
+    /** where blocks are kept once added, or null for a chain that only lives in memory */
+    private BlockStore blockStore;
+    private int blocksSinceCheckpoint;
+    /** the number of times the UTXO set was committed, after which copies handed out are stale */
+    private long commits;
 
     /**
      * create an empty block chain with just a genesis block. Assume {@code genesisBlock} is a valid
      * block
      */
     public BlockChain(Block genesisBlock) {
-        UTXOPool genesisUTXOPool = UTXOPoolPlusCoinBaseUTXO(new UTXOPool(), genesisBlock);
-        BlockChainNode genesisNode = new BlockChainNode(genesisBlock, genesisUTXOPool, 0);
-        this.chain = new HashMap<byte[], BlockChainNode>(){{ put(genesisBlock.getHash(), genesisNode); }};
+        this(genesisBlock, new UTXOPool());
+    }
+
+    /**
+     * create a block chain with just a genesis block on top of the UTXOs already in
+     * {@code utxoPool}, e.g. a pool over a {@link MappedUTXOStore} reopened after a restart, with
+     * the block it was committed at as genesis block. See {@link #commit()}
+     */
+    public BlockChain(Block genesisBlock, UTXOPool utxoPool) {
+        UndoJournal genesisJournal = UndoJournal.of(utxoPool, Collections.<Transaction>emptyList(), genesisBlock.getCoinbase());
+        BlockChainNode genesisNode = new BlockChainNode(genesisBlock, genesisJournal, 0);
+        this.chain = new BlockIndex();
+        this.chain.add(genesisNode);
         this.highestNode = genesisNode;
+        this.liveUtxoPool = UTXOPoolPlusCoinBaseUTXO(new UTXOPool(utxoPool), genesisBlock);
+        this.liveNode = genesisNode;
+        this.rootUtxoPools.put(genesisNode, null);
         this.transactionPool = new TransactionPool();
     }
 
+    /**
+     * create a block chain kept in {@code blockStore}. If the store is empty, the chain starts
+     * with just {@code genesisBlock}; otherwise it is reopened from the last checkpoint of the
+     * store and the blocks added after it, which are connected again from their undo journals
+     * without being validated again, and {@code genesisBlock} must be the first block stored.
+     * The transaction pool is not kept
+     */
+    public BlockChain(Block genesisBlock, BlockStore blockStore) {
+        this(genesisBlock);
+        this.blockStore = blockStore;
+        if(blockStore.size() == 0){
+            blockStore.append(genesisBlock, 0);
+            checkpoint();
+        } else if(blockStore.heightOf(genesisBlock.getHash()) != 0){
+            throw new IllegalArgumentException("the block store holds another chain");
+        } else {
+            Reopen();
+        }
+    }
+
     private UTXOPool UTXOPoolPlusCoinBaseUTXO(UTXOPool utxoPool, Block block) {
         Transaction coinBaseTx = block.getCoinbase();
         utxoPool.addUTXO(new UTXO(coinBaseTx.getHash(), 0), coinBaseTx.getOutput(0));
@@ -35,8 +91,36 @@ public class BlockChain {
         return highestNode.getBlock();
     }
 
-    /** Get the UTXOPool for mining a new block on top of max height block */
-    public UTXOPool getMaxHeightUTXOPool() { return highestNode.getUtxoPool(); }
+    /**
+     * Get the UTXOPool for mining a new block on top of max height block. It is a copy of the UTXO
+     * set of the chain, which shares its entries and that later blocks do not change. Use
+     * {@link #commit()}, not the copy, to write the UTXO set to the file backing it
+     */
+    public UTXOPool getMaxHeightUTXOPool() {
+        MoveLiveUTXOPoolTo(highestNode);
+        return new UTXOPool(liveUtxoPool);
+    }
+
+    /**
+     * @return the number of blocks kept in memory: those at {@code height >= maxHeight - CUT_OFF_AGE},
+     *         on which new blocks may still be added
+     */
+    public int getRetainedBlockCount() {
+        return chain.size();
+    }
+
+    /**
+     * @return the number of UTXO changes recorded in the undo journals of the blocks kept in memory,
+     *         which are dropped with their blocks
+     */
+    public int getRetainedJournalSize() {
+        int size = 0;
+        for (BlockChainNode node : chain.nodes()) {
+            if (node.getUndoJournal() != null)
+                size += node.getUndoJournal().size();
+        }
+        return size;
+    }
 
     /** Get the transaction pool to mine a new block */
     public TransactionPool getTransactionPool() {
@@ -53,30 +137,147 @@ public class BlockChain {
      * CUT_OFF_AGE + 1}. As soon as {@code height > CUT_OFF_AGE + 1}, you cannot create a new block
      * at height 2.
      * 
+     * <p>
+     * The coinbase is not part of the hash of a block, so the same transactions on the same parent
+     * paid to another miner have the hash of a block already in the chain: such a block is valid
+     * if that one was, but only the first of them is kept.
+     *
      * @return true if block is successfully added
      */
     public boolean addBlock(Block block) {
+        BlockChainNode parentNode = NotFakeGenesis(block) ? chain.get(block.getPrevBlockHash()) : null;
+        if(parentNode == null || !HeightConditionIsVerified(parentNode)){
+            return false;
+        }
+
+        MoveLiveUTXOPoolTo(parentNode);
+        BlockChainNode node = ConnectBlock(block, parentNode);
+        if(node != null && chain.contains(block.getHash())){
+            MoveLiveUTXOPoolTo(parentNode);
+        } else if(node != null){
+            ProcessBlock(node);
+            StoreBlock(node);
+        }
+        return node != null;
+    }
 
-        if(NotFakeGenesis(block) &&
-                HasValidParent(block) &&
-                AllTransactionsAreValid(block) &&
-                HeightConditionIsVerified(block)){
-           ProcessBlock(block);
-           return true;
+    /**
+     * Writes the UTXO set of the max height block to the file backing the pool the chain was
+     * created on, if any, after which the chain keeps adding blocks on top of the file. Copies of
+     * the UTXO set returned before can no longer be used afterwards
+     */
+    public void commit() {
+        MoveLiveUTXOPoolTo(highestNode);
+        List<UTXOPool> kept = new ArrayList<UTXOPool>();
+        for(UTXOPool rootUtxoPool : rootUtxoPools.values()){
+            if(rootUtxoPool != null){
+                kept.add(rootUtxoPool);
+            }
+        }
+        liveUtxoPool.commit(kept);
+        commits++;
+    }
+
+    /**
+     * @return the number of times {@link #commit()} was called, so that holders of a copy of the
+     *         UTXO set can tell when to take a new one
+     */
+    public long getCommitCount() {
+        return commits;
+    }
+
+    /**
+     * Writes a checkpoint of the UTXO set at the lowest retained ancestor of the max height block,
+     * with the blocks retained on top of it, to the block store, if any. The chain reopens from
+     * the last checkpoint and connects again the blocks added after it, so checkpointing often
+     * makes reopening faster but means writing the whole UTXO set each time. Forks that branched
+     * off below that ancestor are not reopened
+     */
+    public void checkpoint() {
+        if(blockStore == null){
+            return;
+        }
+        BlockChainNode root = RootOf(highestNode);
+        List<BlockHash> hashes = new ArrayList<BlockHash>();
+        for(BlockChainNode node : chain.nodes()){
+            if(RootOf(node) == root){
+                hashes.add(node.getHash());
+            }
+        }
+        UTXOPool rootUtxoPool = rootUtxoPools.get(root);
+        if(rootUtxoPool == null){
+            MoveLiveUTXOPoolTo(root);
+            rootUtxoPool = liveUtxoPool;
+        }
+        blockStore.writeCheckpoint(hashes, rootUtxoPool);
+        blocksSinceCheckpoint = 0;
+    }
+
+    private void StoreBlock(BlockChainNode node) {
+        if(blockStore == null){
+            return;
+        }
+        blockStore.append(node.getBlock(), node.getHeight());
+        if(++blocksSinceCheckpoint >= CHECKPOINT_INTERVAL){
+            checkpoint();
         }
+    }
 
-        return false;
+    /**
+     * Rebuilds the retained blocks from the last checkpoint of the block store, on top of the UTXO
+     * set at the lowest of them, below which the live set never has to move, then reconnects the
+     * blocks added since. Without a checkpoint, every block after the genesis block is reconnected
+     */
+    private void Reopen() {
+        BlockStore.Checkpoint checkpoint = blockStore.readCheckpoint();
+        if(checkpoint == null){
+            List<Block> blocks = blockStore.blocksAfter(null);
+            blocks.subList(1, blocks.size()).forEach(this::ReconnectBlock);
+            blocksSinceCheckpoint = blocks.size() - 1;
+            return;
+        }
+        List<BlockHash> retained = checkpoint.getRetainedBlocks();
+        byte[] rootHash = retained.get(0).toBytes();
+        BlockChainNode rootNode = new BlockChainNode(blockStore.get(rootHash), null, blockStore.heightOf(rootHash));
+        this.chain = new BlockIndex();
+        this.chain.add(rootNode);
+        this.highestNode = rootNode;
+        this.liveUtxoPool = checkpoint.getUTXOPool();
+        this.liveNode = rootNode;
+        this.rootUtxoPools = new IdentityHashMap<BlockChainNode, UTXOPool>();
+        this.rootUtxoPools.put(rootNode, null);
+        for(BlockHash hash : retained.subList(1, retained.size())){
+            ReconnectBlock(blockStore.get(hash.toBytes()));
+        }
+        List<Block> blocksAfter = blockStore.blocksAfter(checkpoint);
+        blocksAfter.forEach(this::ReconnectBlock);
+        blocksSinceCheckpoint = blocksAfter.size();
     }
 
-    private boolean HasValidParent(Block block) {
-        return chain.containsKey(block.getPrevBlockHash());
+    /**
+     * Connects a block that was valid when it was stored, only recording its undo journal. A block
+     * whose parent is stored but not retained is on a fork the checkpoint left out, and is skipped
+     */
+    private void ReconnectBlock(Block block) {
+        BlockChainNode parentNode = chain.get(block.getPrevBlockHash());
+        if(parentNode == null && blockStore.contains(block.getPrevBlockHash())){
+            return;
+        }
+        if(parentNode == null){
+            throw new IllegalStateException("stored block " + BlockHash.of(block.getHash()) + " has no parent");
+        }
+        MoveLiveUTXOPoolTo(parentNode);
+        UndoJournal undoJournal = UndoJournal.of(liveUtxoPool, block.getTransactions(), block.getCoinbase());
+        undoJournal.redo(liveUtxoPool);
+        BlockChainNode node = new BlockChainNode(block, undoJournal, parentNode.getHeight() + 1);
+        liveNode = node;
+        ProcessBlock(node);
     }
 
-    private void ProcessBlock(Block block) {
-        BlockChainNode node = BuildBlockChainNode(block);
-        chain.put(block.getHash(), node);
+    private void ProcessBlock(BlockChainNode node) {
+        chain.add(node);
         UpdateHighestNode(node);
-        RemoveTransactionsFromPool(block.getTransactions());
+        RemoveTransactionsFromPool(node.getBlock().getTransactions());
     }
 
     private void RemoveTransactionsFromPool(List<Transaction> txs) {
@@ -86,19 +287,132 @@ public class BlockChain {
     private void UpdateHighestNode(BlockChainNode node) {
         if(highestNode.getHeight() < node.getHeight()){
             highestNode = node;
+            PruneBlocksBelowCutOff();
         }
     }
 
-    private BlockChainNode BuildBlockChainNode(Block block) {
-        BlockChainNode parentNode = chain.get(block.getPrevBlockHash());
-        TxHandler txHandler = new TxHandler(parentNode.getUtxoPool());
-        txHandler.handleTxs(block.getTransactions());
+    /**
+     * A block can only be added on top of a parent at {@code height >= maxHeight - CUT_OFF_AGE}, so
+     * the nodes below it, whether on the main chain or on forks, can never get new children. They
+     * are all dropped with their undo journals. The nodes left at that height are the lowest; those
+     * the live set does not descend from, on forks straddling the cut-off, which are rare, each get
+     * the UTXO set right after them. The live set is at {@code highestNode}, which was just
+     * connected
+     */
+    private void PruneBlocksBelowCutOff() {
+        int cutOff = highestNode.getHeight() - CUT_OFF_AGE;
+        if(cutOff <= chain.lowestHeight()){
+            return;
+        }
+        BlockChainNode liveRoot = liveNode;
+        while(liveRoot.getHeight() > cutOff){
+            liveRoot = ParentOf(liveRoot);
+        }
+        Map<BlockChainNode, UTXOPool> roots = new IdentityHashMap<BlockChainNode, UTXOPool>();
+        for(BlockChainNode root : chain.atHeight(cutOff)){
+            roots.put(root, root == liveRoot ? null : UTXOPoolAfter(root));
+        }
+        chain.pruneBelow(cutOff);
+        rootUtxoPools = roots;
+    }
+
+    /**
+     * @return a copy of the UTXO set right after {@code node}, brought there from the set of its
+     *         lowest retained ancestor, or from the live set if {@code liveNode} descends from it too
+     */
+    private UTXOPool UTXOPoolAfter(BlockChainNode node) {
+        BlockChainNode root = RootOf(node);
+        UTXOPool rootUtxoPool = rootUtxoPools.get(root);
+        if(rootUtxoPool == null){
+            return MoveUTXOPool(new UTXOPool(liveUtxoPool), liveNode, node);
+        }
+        return MoveUTXOPool(new UTXOPool(rootUtxoPool), root, node);
+    }
 
-        return new BlockChainNode(block, UTXOPoolPlusCoinBaseUTXO(txHandler.getUTXOPool(), block), parentNode.getHeight() + 1);
+    /** @return the lowest retained ancestor of {@code node}, {@code node} itself if it is one of the lowest */
+    private BlockChainNode RootOf(BlockChainNode node) {
+        while(!rootUtxoPools.containsKey(node)){
+            node = ParentOf(node);
+        }
+        return node;
     }
 
-    private boolean HeightConditionIsVerified(Block block) {
-        BlockChainNode parentNode = chain.get(block.getPrevBlockHash());
+    /**
+     * Validates the transactions of {@code block} and applies them in a single pass, over a copy of
+     * the live UTXO set, which must be at {@code parentNode}, that shares its entries. If every
+     * transaction is accepted, the copy, plus the coinbase, becomes the live set and what changed
+     * is kept as the undo journal of the new node; otherwise the copy is dropped and nothing else
+     * was changed
+     *
+     * @return the node of {@code block}, or null if one of its transactions is invalid
+     */
+    private BlockChainNode ConnectBlock(Block block, BlockChainNode parentNode) {
+        TxHandler txHandler = new TxHandler(liveUtxoPool);
+        List<Transaction> validTransactions = txHandler.handleTxs(block.getTransactions());
+        if(validTransactions.size() != block.getTransactions().size()){
+            return null;
+        }
+        UndoJournal undoJournal = UndoJournal.of(liveUtxoPool, validTransactions, block.getCoinbase());
+        BlockChainNode node = new BlockChainNode(block, undoJournal, parentNode.getHeight() + 1);
+        liveUtxoPool = UTXOPoolPlusCoinBaseUTXO(txHandler.getUTXOPool(), block);
+        liveNode = node;
+        return node;
+    }
+
+    /**
+     * Brings the live UTXO set from {@code liveNode} to {@code target}. If {@code target} descends
+     * from another lowest block than {@code liveNode}, the live set is first brought down to its
+     * lowest block and swaps places with the set of the lowest block of {@code target}
+     */
+    private void MoveLiveUTXOPoolTo(BlockChainNode target) {
+        BlockChainNode from = liveNode;
+        if(from != target && rootUtxoPools.size() > 1){
+            BlockChainNode targetRoot = RootOf(target);
+            if(rootUtxoPools.get(targetRoot) != null){
+                BlockChainNode liveRoot = RootOf(from);
+                rootUtxoPools.put(liveRoot, MoveUTXOPool(liveUtxoPool, from, liveRoot));
+                liveUtxoPool = rootUtxoPools.put(targetRoot, null);
+                from = targetRoot;
+            }
+        }
+        MoveUTXOPool(liveUtxoPool, from, target);
+        liveNode = target;
+    }
+
+    /**
+     * Brings {@code utxoPool}, the UTXO set right after {@code from}, to the set right after
+     * {@code to}: disconnects the blocks from {@code from} down to the last block it has in common
+     * with {@code to}, then reconnects those from there up to {@code to}, replaying their undo
+     * journals without validating them again
+     *
+     * @return {@code utxoPool}
+     */
+    private UTXOPool MoveUTXOPool(UTXOPool utxoPool, BlockChainNode from, BlockChainNode to) {
+        List<BlockChainNode> reconnected = new ArrayList<BlockChainNode>();
+        while(from != to){
+            if(from.getHeight() >= to.getHeight()){
+                from.getUndoJournal().undo(utxoPool);
+                from = ParentOf(from);
+            } else {
+                reconnected.add(to);
+                to = ParentOf(to);
+            }
+        }
+        for(int i = reconnected.size() - 1; i >= 0; i--){
+            reconnected.get(i).getUndoJournal().redo(utxoPool);
+        }
+        return utxoPool;
+    }
+
+    private BlockChainNode ParentOf(BlockChainNode node) {
+        BlockChainNode parent = chain.parentOf(node);
+        if(parent == null){
+            throw new IllegalStateException("no common block between the live UTXO set and block " + node.getHash());
+        }
+        return parent;
+    }
+
+    private boolean HeightConditionIsVerified(BlockChainNode parentNode) {
         return parentNode.getHeight() + 1 > highestNode.getHeight() - CUT_OFF_AGE;
     }
 
@@ -106,12 +420,6 @@ public class BlockChain {
         return block.getHash() != null;
     }
 
-    private boolean AllTransactionsAreValid(Block block) {
-        BlockChainNode parentNode = chain.get(block.getPrevBlockHash());
-        List<Transaction> validTransactions = new TxHandler(parentNode.getUtxoPool()).handleTxs(block.getTransactions());
-        return validTransactions.size() == block.getTransactions().size();
-    }
-
     /** Add a transaction to the transaction pool */
     public void addTransaction(Transaction tx) {
         transactionPool.addTransaction(tx);
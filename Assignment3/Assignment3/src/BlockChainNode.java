@@ -4,12 +4,16 @@
 public class BlockChainNode {
 
     private final Block block;
+    private final BlockHash hash;
+    private final BlockHash parentHash;
     private final int height;
-    private final UTXOPool utxoPool;
+    private final UndoJournal undoJournal;
 
-    public BlockChainNode(Block block, UTXOPool utxoPool, int height) {
+    public BlockChainNode(Block block, UndoJournal undoJournal, int height) {
         this.block = block;
-        this.utxoPool = utxoPool;
+        this.hash = BlockHash.of(block.getHash());
+        this.parentHash = BlockHash.of(block.getPrevBlockHash());
+        this.undoJournal = undoJournal;
         this.height = height;
     }
 
@@ -17,7 +21,17 @@ public class BlockChainNode {
         return block;
     }
 
+    /** @return the hash of the block, as it was when the node was created */
+    public BlockHash getHash() { return hash; }
+
+    /** @return the hash of the parent of the block, null for a genesis block */
+    public BlockHash getParentHash() { return parentHash; }
+
     public int getHeight() { return height; }
 
-    public UTXOPool getUtxoPool() { return utxoPool; }
+    /**
+     * @return the changes connecting the block made to the UTXO set of its parent, or null for the
+     *         block a chain was reopened at
+     */
+    public UndoJournal getUndoJournal() { return undoJournal; }
 }
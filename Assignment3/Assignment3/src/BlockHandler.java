@@ -1,12 +1,22 @@
 
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class BlockHandler {
     private BlockChain blockChain;
+    /** the pending transactions, ordered by fee against the UTXO set of {@code mempoolTip} */
+    private FeeMempool mempool;
+    private Block mempoolTip;
+    /** the commit count of the chain when the mempool took its copy of the UTXO set */
+    private long mempoolCommits;
 
     /** assume blockChain has the genesis block */
     public BlockHandler(BlockChain blockChain) {
         this.blockChain = blockChain;
+        RebuildMempool();
     }
 
     /**
@@ -15,33 +25,79 @@ public class BlockHandler {
      * @return true if the block is valid and has been added, false otherwise
      */
     public boolean processBlock(Block block) {
-        if (block == null)
+        if (block == null || !blockChain.addBlock(block))
             return false;
-        return blockChain.addBlock(block);
+        SyncMempool();
+        return true;
     }
 
-    /** create a new {@code block} over the max height {@code block} */
+    /**
+     * create a new {@code block} over the max height {@code block}. The transactions of the pool are
+     * offered to the {@code TxHandler} by ancestor package, the package with the highest fee rate
+     * first, so a child paying for its parents is taken with them and beats a conflicting
+     * transaction with a lower rate. The packages come from a mempool the handler keeps from block
+     * to block, which is only read here: transactions enter it as they are processed and leave it
+     * once a block it is moved onto includes or conflicts with them, so a new block only touches
+     * the transactions it changes. It is only rebuilt from the transaction pool when the max height
+     * block is not a child of the block it was last moved onto, as after a reorganization.
+     */
     public Block createBlock(PublicKey myAddress) {
+        SyncMempool();
         Block parent = blockChain.getMaxHeightBlock();
         byte[] parentHash = parent.getHash();
         Block current = new Block(parentHash, myAddress);
         UTXOPool uPool = blockChain.getMaxHeightUTXOPool();
-        TransactionPool txPool = blockChain.getTransactionPool();
         TxHandler handler = new TxHandler(uPool);
-        Transaction[] txs = txPool.getTransactions().toArray(new Transaction[0]);
+        Transaction[] txs = mempool.inPackageOrder();
         Transaction[] rTxs = handler.handleTxs(txs);
         for (int i = 0; i < rTxs.length; i++)
             current.addTransaction(rTxs[i]);
 
         current.finalize();
-        if (blockChain.addBlock(current))
+        if (blockChain.addBlock(current)) {
+            SyncMempool();
             return current;
-        else
-            return null;
+        }
+        return null;
     }
 
     /** process a {@code Transaction} */
     public void processTx(Transaction tx) {
+        SyncMempool();
         blockChain.addTransaction(tx);
+        mempool.add(tx);
+    }
+
+    /**
+     * Moves the mempool onto the max height block, block by block if it only grew by one. A commit
+     * of the chain leaves the copy of the UTXO set of the mempool stale, so it then moves onto a
+     * new copy even if the max height block did not change
+     */
+    private void SyncMempool() {
+        Block tip = blockChain.getMaxHeightBlock();
+        long commits = blockChain.getCommitCount();
+        if (tip == mempoolTip && commits == mempoolCommits)
+            return;
+        mempoolCommits = commits;
+        if (tip == mempoolTip) {
+            mempool.confirm(Collections.<Transaction>emptyList(), blockChain.getMaxHeightUTXOPool());
+            return;
+        }
+        if (!Arrays.equals(tip.getPrevBlockHash(), mempoolTip.getHash())) {
+            RebuildMempool();
+            return;
+        }
+        List<Transaction> confirmed = new ArrayList<Transaction>(tip.getTransactions());
+        confirmed.add(tip.getCoinbase());
+        mempool.confirm(confirmed, blockChain.getMaxHeightUTXOPool());
+        mempoolTip = tip;
+    }
+
+    private void RebuildMempool() {
+        mempoolTip = blockChain.getMaxHeightBlock();
+        mempoolCommits = blockChain.getCommitCount();
+        mempool = new FeeMempool(blockChain.getMaxHeightUTXOPool());
+        for (Transaction tx : blockChain.getTransactionPool().getTransactions())
+            mempool.add(tx);
     }
 }
@@ -0,0 +1,97 @@
+import java.util.Arrays;
+
+/**
+ * The hash of a block as a value: two {@code BlockHash}es are equal when their bytes are, whatever
+ * array they were read from, so blocks deserialized from disk or received from the network find
+ * their parent by content. A SHA-256 hash is held as four longs and its hash code is computed once.
+ */
+public final class BlockHash {
+
+    /** Length of a SHA-256 block hash, the only one stored as longs */
+    private static final int HASH_LENGTH = 32;
+
+    /** The hash as four big-endian longs when it is {@code HASH_LENGTH} bytes long */
+    private final long hash0, hash1, hash2, hash3;
+
+    /** The hash when it is not {@code HASH_LENGTH} bytes long, null otherwise */
+    private final byte[] otherHash;
+
+    /** Computed once, since block hashes are mostly used as hash keys */
+    private final int hashCode;
+
+    private BlockHash(byte[] hash) {
+        if (hash.length == HASH_LENGTH) {
+            this.hash0 = LongAt(hash, 0);
+            this.hash1 = LongAt(hash, 8);
+            this.hash2 = LongAt(hash, 16);
+            this.hash3 = LongAt(hash, 24);
+            this.otherHash = null;
+            long folded = ((hash0 * 31 + hash1) * 31 + hash2) * 31 + hash3;
+            this.hashCode = (int) (folded ^ (folded >>> 32));
+        } else {
+            this.hash0 = this.hash1 = this.hash2 = this.hash3 = 0;
+            this.otherHash = Arrays.copyOf(hash, hash.length);
+            this.hashCode = Arrays.hashCode(otherHash);
+        }
+    }
+
+    /**
+     * @return the block hash made of the bytes of {@code hash}, read as they are now, or null if
+     *         {@code hash} is null, as the hash of a block that was never finalized
+     */
+    public static BlockHash of(byte[] hash) {
+        return hash == null ? null : new BlockHash(hash);
+    }
+
+    /** @return a new array with the bytes of this hash */
+    public byte[] toBytes() {
+        if (otherHash != null)
+            return otherHash.clone();
+        byte[] hash = new byte[HASH_LENGTH];
+        PutLong(hash, 0, hash0);
+        PutLong(hash, 8, hash1);
+        PutLong(hash, 16, hash2);
+        PutLong(hash, 24, hash3);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof BlockHash))
+            return false;
+        BlockHash hash = (BlockHash) other;
+        if (hashCode != hash.hashCode)
+            return false;
+        if (otherHash != null || hash.otherHash != null)
+            return otherHash != null && hash.otherHash != null && Arrays.equals(otherHash, hash.otherHash);
+        return hash0 == hash.hash0 && hash1 == hash.hash1 && hash2 == hash.hash2 && hash3 == hash.hash3;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /** @return the hash in hexadecimal */
+    @Override
+    public String toString() {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : toBytes())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static long LongAt(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++)
+            value = (value << 8) | (bytes[i] & 0xFF);
+        return value;
+    }
+
+    private static void PutLong(byte[] bytes, int offset, long value) {
+        for (int i = offset + 7; i >= offset; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
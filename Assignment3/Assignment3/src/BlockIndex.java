@@ -0,0 +1,108 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The blocks of a {@link BlockChain}, indexed three ways: by {@link BlockHash}, so that a block
+ * finds its parent in O(1) whatever array its hashes were read from; by height, in ascending
+ * order; and from each block to its children, to walk the forks growing out of it.
+ */
+public class BlockIndex {
+
+    private final Map<BlockHash, BlockChainNode> byHash = new HashMap<BlockHash, BlockChainNode>();
+    private final TreeMap<Integer, List<BlockChainNode>> byHeight = new TreeMap<Integer, List<BlockChainNode>>();
+    private final Map<BlockHash, List<BlockChainNode>> children = new HashMap<BlockHash, List<BlockChainNode>>();
+
+    /** Adds {@code node}, replacing any node with the same hash */
+    public void add(BlockChainNode node) {
+        BlockChainNode replaced = byHash.put(node.getHash(), node);
+        if (replaced != null)
+            Unlink(replaced);
+        byHeight.computeIfAbsent(node.getHeight(), height -> new ArrayList<BlockChainNode>()).add(node);
+        if (node.getParentHash() != null)
+            children.computeIfAbsent(node.getParentHash(), parent -> new ArrayList<BlockChainNode>()).add(node);
+    }
+
+    /** @return the node of the block whose hash has the bytes of {@code hash}, or null */
+    public BlockChainNode get(byte[] hash) {
+        return byHash.get(BlockHash.of(hash));
+    }
+
+    public BlockChainNode get(BlockHash hash) {
+        return byHash.get(hash);
+    }
+
+    public boolean contains(byte[] hash) {
+        return byHash.containsKey(BlockHash.of(hash));
+    }
+
+    /** @return the nodes at {@code height}, in the order they were added */
+    public List<BlockChainNode> atHeight(int height) {
+        List<BlockChainNode> nodes = byHeight.get(height);
+        return nodes == null ? Collections.<BlockChainNode>emptyList() : Collections.unmodifiableList(nodes);
+    }
+
+    /** @return every node, in ascending height and, at the same height, in the order they were added */
+    public List<BlockChainNode> nodes() {
+        List<BlockChainNode> nodes = new ArrayList<BlockChainNode>(byHash.size());
+        for (List<BlockChainNode> level : byHeight.values())
+            nodes.addAll(level);
+        return nodes;
+    }
+
+    /** @return the nodes whose parent is the block with hash {@code hash}, in the order they were added */
+    public List<BlockChainNode> childrenOf(BlockHash hash) {
+        List<BlockChainNode> nodes = children.get(hash);
+        return nodes == null ? Collections.<BlockChainNode>emptyList() : Collections.unmodifiableList(nodes);
+    }
+
+    /** @return the node of the parent of the block of {@code node}, or null if it is not indexed */
+    public BlockChainNode parentOf(BlockChainNode node) {
+        return node.getParentHash() == null ? null : byHash.get(node.getParentHash());
+    }
+
+    /**
+     * Removes every node below {@code height}, with its list of children. The nodes at
+     * {@code height} are then the lowest ones, and those that had different ancestors are no longer
+     * linked to each other
+     *
+     * @return the number of nodes removed
+     */
+    public int pruneBelow(int height) {
+        int pruned = 0;
+        Map<Integer, List<BlockChainNode>> stale = byHeight.headMap(height);
+        for (List<BlockChainNode> nodes : stale.values()) {
+            for (BlockChainNode node : nodes) {
+                byHash.remove(node.getHash());
+                children.remove(node.getHash());
+                pruned++;
+            }
+        }
+        stale.clear();
+        return pruned;
+    }
+
+    /** @return the lowest height of an indexed node, or -1 if there is none */
+    public int lowestHeight() {
+        return byHeight.isEmpty() ? -1 : byHeight.firstKey();
+    }
+
+    public int size() {
+        return byHash.size();
+    }
+
+    private void Unlink(BlockChainNode node) {
+        byHeight.get(node.getHeight()).remove(node);
+        if (byHeight.get(node.getHeight()).isEmpty())
+            byHeight.remove(node.getHeight());
+        if (node.getParentHash() != null) {
+            List<BlockChainNode> siblings = children.get(node.getParentHash());
+            siblings.remove(node);
+            if (siblings.isEmpty())
+                children.remove(node.getParentHash());
+        }
+    }
+}
@@ -0,0 +1,649 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Keeps the blocks of a {@link BlockChain} in a directory, so that the chain can be reopened after a
+ * restart without validating them again.
+ *
+ * <p>
+ * Blocks are appended, in the order they are added, to segment files of about
+ * {@code SEGMENT_BYTES}. A record holds the fields of {@link Block#getRawBlock()} in the same
+ * order, each array prefixed with its length so that the block can be read back, followed by the
+ * address of the coinbase, which the raw block leaves out; its hash, height and a CRC32 come first.
+ * Hashes are found through an open-addressing hash table in a memory-mapped {@code blocks.index}
+ * file, laid out like {@link MappedUTXOStore} but never removed from, that maps them to the segment
+ * and offset of their record and to their height. A checkpoint file holds the UTXO set right after
+ * one block, the hashes of the blocks retained on top of it and how far the segments went; it is
+ * written aside and then moved over the previous one.
+ *
+ * <p>
+ * On opening, records appended after the last one indexed, as after a crash, are indexed again
+ * and a torn last record is cut off. Only hashes of 32 bytes can be stored. Not thread-safe.
+ */
+public class BlockStore implements Closeable {
+
+    /** size past which appending starts a new segment */
+    public static final long SEGMENT_BYTES = 1L << 27;
+
+    private static final long INDEX_MAGIC = 0x424c4f434b494458L;
+    private static final long CHECKPOINT_MAGIC = 0x55545830434b5054L;
+    private static final int FORMAT = 1;
+    private static final int HASH_LENGTH = 32;
+    /** length and CRC32 of the hash and body that follow them */
+    private static final int RECORD_HEADER_BYTES = 8;
+    /** length of a null array */
+    private static final int NO_BYTES = -1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int SIZE_OFFSET = 16;
+    /** location right after the last record indexed */
+    private static final int END_OFFSET = 24;
+    private static final int SLOT_BYTES = 48;
+    private static final int LOCATION_OFFSET = 32;
+    private static final int HEIGHT_OFFSET = 40;
+    private static final int USED_OFFSET = 44;
+    /** slots per mapped chunk, so that a chunk stays well below the 2 GB limit of a mapping */
+    private static final int CHUNK_SLOTS = 1 << 24;
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final double MAX_LOAD = 0.7;
+    /** addresses kept parsed, so that reading back blocks paying the same miners does not parse them again */
+    private static final int ADDRESS_CACHE_CAPACITY = 1 << 10;
+
+    /** used to build the outputs read back from the checkpoint */
+    private static final Transaction OUTPUTS = new Transaction();
+
+    private final Path directory;
+    private final List<FileChannel> segments = new ArrayList<FileChannel>();
+    /** location right after the last record, where the next one is appended */
+    private long end;
+
+    private final Path indexFile;
+    private FileChannel indexChannel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] chunks;
+    private long capacity;
+    private long size;
+
+    private final KeyFactory keyFactory;
+    /** the addresses read back most recently, by their raw bytes */
+    private final Map<ByteArrayWrapper, PublicKey> addresses = new LinkedHashMap<ByteArrayWrapper, PublicKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, PublicKey> eldest) {
+            return size() > ADDRESS_CACHE_CAPACITY;
+        }
+    };
+
+    private BlockStore(Path directory) throws IOException {
+        this.directory = directory;
+        this.indexFile = directory.resolve("blocks.index");
+        try {
+            this.keyFactory = KeyFactory.getInstance("RSA");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        Files.createDirectories(directory);
+        for (int segment = 0; segment == 0 || Files.exists(SegmentFile(segment)); segment++)
+            segments.add(new RandomAccessFile(SegmentFile(segment).toFile(), "rw").getChannel());
+        if (!Files.exists(indexFile) || Files.size(indexFile) == 0)
+            CreateIndex(indexFile, MIN_CAPACITY);
+        MapIndex(indexFile);
+        Recover();
+    }
+
+    /** Opens the store kept in {@code directory}, creating an empty one if there is none */
+    public static BlockStore open(Path directory) {
+        try {
+            return new BlockStore(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Appends {@code block}, at {@code height}, unless a block with its hash is already stored */
+    public void append(Block block, int height) {
+        byte[] hash = block.getHash();
+        if (hash == null || hash.length != HASH_LENGTH)
+            throw new IllegalArgumentException("only blocks with a 32-byte hash can be stored");
+        if (Find(hash) >= 0)
+            return;
+        try {
+            byte[] record = Record(block, height);
+            FileChannel segment = segments.get(SegmentOf(end));
+            if (PositionOf(end) > 0 && PositionOf(end) + record.length > SEGMENT_BYTES) {
+                segment.force(false);
+                segment = new RandomAccessFile(SegmentFile(segments.size()).toFile(), "rw").getChannel();
+                segments.add(segment);
+                end = Location(segments.size() - 1, 0);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining())
+                segment.write(buffer, PositionOf(end) + buffer.position());
+            Index(hash, end, height);
+            end = Location(SegmentOf(end), PositionOf(end) + record.length);
+            header.putLong(END_OFFSET, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** @return the block whose hash has the bytes of {@code hash}, or null if it is not stored */
+    public Block get(byte[] hash) {
+        long slot = Find(hash);
+        if (slot < 0)
+            return null;
+        long location = Chunk(slot).getLong(Offset(slot) + LOCATION_OFFSET);
+        ByteBuffer record = ReadRecord(location);
+        if (record == null)
+            throw new UncheckedIOException(new IOException("torn block record in " + SegmentFile(SegmentOf(location))));
+        return ReadBlock(record);
+    }
+
+    public boolean contains(byte[] hash) {
+        return Find(hash) >= 0;
+    }
+
+    /** @return the height the block with hash {@code hash} was stored at, or -1 if it is not stored */
+    public int heightOf(byte[] hash) {
+        long slot = Find(hash);
+        return slot < 0 ? -1 : Chunk(slot).getInt(Offset(slot) + HEIGHT_OFFSET);
+    }
+
+    /** @return the number of blocks stored */
+    public int size() {
+        return (int) size;
+    }
+
+    /**
+     * Replaces the checkpoint with {@code utxoPool}, the UTXO set right after the first block of
+     * {@code retained}, and the hashes of {@code retained}, the blocks kept on top of it, each after
+     * its parent. The blocks appended so far are forced to the storage device first
+     */
+    public void writeCheckpoint(List<BlockHash> retained, UTXOPool utxoPool) {
+        flush();
+        Path file = CheckpointFile();
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(written.toFile())) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(stream, crc)));
+            out.writeLong(CHECKPOINT_MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(end);
+            out.writeInt(retained.size());
+            for (BlockHash hash : retained)
+                out.write(hash.toBytes());
+
+            List<UTXO> utxos = utxoPool.getAllUTXO();
+            Map<PublicKey, Integer> keyIds = new IdentityHashMap<PublicKey, Integer>();
+            List<PublicKey> keys = new ArrayList<PublicKey>();
+            for (UTXO utxo : utxos) {
+                PublicKey address = utxoPool.getTxOutput(utxo).address;
+                if (address != null && !keyIds.containsKey(address)) {
+                    keyIds.put(address, keys.size());
+                    keys.add(address);
+                }
+            }
+            out.writeInt(keys.size());
+            for (PublicKey key : keys)
+                WriteAddress(out, key);
+            out.writeInt(utxos.size());
+            for (UTXO utxo : utxos) {
+                Transaction.Output output = utxoPool.getTxOutput(utxo);
+                WriteBytes(out, utxo.getTxHash());
+                out.writeInt(utxo.getIndex());
+                out.writeLong(Double.doubleToRawLongBits(output.value));
+                out.writeInt(output.address == null ? NO_BYTES : keyIds.get(output.address));
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** @return the last checkpoint written, or null if there is none */
+    public Checkpoint readCheckpoint() {
+        Path file = CheckpointFile();
+        if (!Files.exists(file))
+            return null;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, Math.max(0, bytes.length - 8));
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (bytes.length < 24 || in.getLong() != CHECKPOINT_MAGIC || in.getInt() != FORMAT
+                    || in.getLong(bytes.length - 8) != crc.getValue())
+                throw new IOException(file + " is not a valid checkpoint");
+            long checkpointEnd = in.getLong();
+            List<BlockHash> retained = new ArrayList<BlockHash>();
+            for (int count = in.getInt(); count > 0; count--) {
+                byte[] hash = new byte[HASH_LENGTH];
+                in.get(hash);
+                retained.add(BlockHash.of(hash));
+            }
+            List<PublicKey> keys = new ArrayList<PublicKey>();
+            for (int count = in.getInt(); count > 0; count--)
+                keys.add(ReadAddress(in));
+            UTXOPool utxoPool = new UTXOPool();
+            for (int count = in.getInt(); count > 0; count--) {
+                UTXO utxo = new UTXO(ReadBytes(in), in.getInt());
+                double value = Double.longBitsToDouble(in.getLong());
+                int keyId = in.getInt();
+                utxoPool.addUTXO(utxo, OUTPUTS.new Output(value, keyId == NO_BYTES ? null : keys.get(keyId)));
+            }
+            return new Checkpoint(retained, utxoPool, checkpointEnd);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the blocks appended after {@code checkpoint} was written, or every block if it is
+     *         null, in the order they were
+     */
+    public List<Block> blocksAfter(Checkpoint checkpoint) {
+        List<Block> blocks = new ArrayList<Block>();
+        for (long location = Next(checkpoint == null ? 0 : checkpoint.end); location < end; location = Next(location)) {
+            ByteBuffer record = ReadRecord(location);
+            if (record == null)
+                throw new UncheckedIOException(new IOException("torn block record in " + SegmentFile(SegmentOf(location))));
+            blocks.add(ReadBlock(record));
+            location = Location(SegmentOf(location), PositionOf(location) + RECORD_HEADER_BYTES + record.capacity());
+        }
+        return blocks;
+    }
+
+    /** Forces every block appended so far, and the index, to the storage device */
+    public void flush() {
+        try {
+            segments.get(segments.size() - 1).force(false);
+            header.force();
+            for (MappedByteBuffer chunk : chunks)
+                chunk.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        for (FileChannel segment : segments)
+            segment.close();
+        indexChannel.close();
+    }
+
+    /**
+     * The UTXO set right after a block, the blocks retained on top of it, starting with that one,
+     * and where the segments ended when it was written
+     */
+    public static final class Checkpoint {
+
+        private final List<BlockHash> retained;
+        private final UTXOPool utxoPool;
+        private final long end;
+
+        private Checkpoint(List<BlockHash> retained, UTXOPool utxoPool, long end) {
+            this.retained = Collections.unmodifiableList(retained);
+            this.utxoPool = utxoPool;
+            this.end = end;
+        }
+
+        /** @return the hashes of the blocks retained, each after its parent */
+        public List<BlockHash> getRetainedBlocks() {
+            return retained;
+        }
+
+        /** @return the UTXO set right after the first block retained */
+        public UTXOPool getUTXOPool() {
+            return utxoPool;
+        }
+    }
+
+    /** Indexes the records past the last one indexed, cutting off a torn last record */
+    private void Recover() throws IOException {
+        long location = header.getLong(END_OFFSET);
+        if (SegmentOf(location) >= segments.size() || PositionOf(location) > segments.get(SegmentOf(location)).size()) {
+            indexChannel.close();
+            CreateIndex(indexFile, MIN_CAPACITY);
+            MapIndex(indexFile);
+            location = 0;
+        }
+        for (location = Next(location); PositionOf(location) < segments.get(SegmentOf(location)).size(); location = Next(location)) {
+            ByteBuffer record = ReadRecord(location);
+            if (record == null) {
+                segments.get(SegmentOf(location)).truncate(PositionOf(location));
+                break;
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            record.get(hash);
+            if (Find(hash) < 0)
+                Index(hash, location, record.getInt());
+            location = Location(SegmentOf(location), PositionOf(location) + RECORD_HEADER_BYTES + record.capacity());
+        }
+        end = location;
+        header.putLong(END_OFFSET, end);
+    }
+
+    /** @return {@code location}, or the start of the next segment if it is at the end of its own */
+    private long Next(long location) {
+        try {
+            while (SegmentOf(location) + 1 < segments.size() && PositionOf(location) >= segments.get(SegmentOf(location)).size())
+                location = Location(SegmentOf(location) + 1, 0);
+            return location;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** @return the hash and body of the record at {@code location}, or null if it is torn */
+    private ByteBuffer ReadRecord(long location) {
+        try {
+            FileChannel segment = segments.get(SegmentOf(location));
+            long offset = PositionOf(location);
+            ByteBuffer recordHeader = ReadFully(segment, offset, RECORD_HEADER_BYTES);
+            if (recordHeader == null)
+                return null;
+            int length = recordHeader.getInt();
+            if (length < HASH_LENGTH + 4 || offset + RECORD_HEADER_BYTES + length > segment.size())
+                return null;
+            ByteBuffer record = ReadFully(segment, offset + RECORD_HEADER_BYTES, length);
+            CRC32 crc = new CRC32();
+            crc.update(record.array());
+            return (int) crc.getValue() == recordHeader.getInt() ? record : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteBuffer ReadFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                return null;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private byte[] Record(Block block, int height) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.write(block.getHash());
+        out.writeInt(height);
+        WriteBytes(out, block.getPrevBlockHash());
+        out.writeInt(block.getTransactions().size());
+        for (Transaction tx : block.getTransactions()) {
+            out.writeInt(tx.numInputs());
+            for (Transaction.Input input : tx.getInputs()) {
+                WriteBytes(out, input.prevTxHash);
+                out.writeInt(input.outputIndex);
+                WriteBytes(out, input.signature);
+            }
+            out.writeInt(tx.numOutputs());
+            for (Transaction.Output output : tx.getOutputs()) {
+                out.writeLong(Double.doubleToRawLongBits(output.value));
+                WriteAddress(out, output.address);
+            }
+        }
+        WriteAddress(out, block.getCoinbase().getOutput(0).address);
+        out.flush();
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - RECORD_HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    /** Reads back the block of {@code record}, checking that it still has the hash it was stored under */
+    private Block ReadBlock(ByteBuffer record) {
+        record.rewind();
+        byte[] hash = new byte[HASH_LENGTH];
+        record.get(hash);
+        record.getInt();
+        byte[] prevHash = ReadBytes(record);
+        List<Transaction> txs = new ArrayList<Transaction>();
+        for (int txCount = record.getInt(); txCount > 0; txCount--) {
+            Transaction tx = new Transaction();
+            int inputCount = record.getInt();
+            for (int index = 0; index < inputCount; index++) {
+                tx.addInput(ReadBytes(record), record.getInt());
+                byte[] signature = ReadBytes(record);
+                if (signature != null)
+                    tx.addSignature(signature, index);
+            }
+            for (int outputCount = record.getInt(); outputCount > 0; outputCount--)
+                tx.addOutput(Double.longBitsToDouble(record.getLong()), ReadAddress(record));
+            tx.finalize();
+            txs.add(tx);
+        }
+        Block block = new Block(prevHash, ReadAddress(record));
+        for (Transaction tx : txs)
+            block.addTransaction(tx);
+        block.finalize();
+        if (!BlockHash.of(hash).equals(BlockHash.of(block.getHash())))
+            throw new UncheckedIOException(new IOException("block " + BlockHash.of(hash) + " does not hash to itself"));
+        return block;
+    }
+
+    private static void WriteBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(NO_BYTES);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] ReadBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == NO_BYTES)
+            return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    /** Writes the public exponent and then the modulus of {@code address}, as the raw data has them */
+    private static void WriteAddress(DataOutputStream out, PublicKey address) throws IOException {
+        WriteBytes(out, ((RSAPublicKey) address).getPublicExponent().toByteArray());
+        WriteBytes(out, ((RSAPublicKey) address).getModulus().toByteArray());
+    }
+
+    /** @return the address whose exponent and modulus come next, shared through the {@link AddressRegistry} */
+    private PublicKey ReadAddress(ByteBuffer in) {
+        byte[] exponent = ReadBytes(in);
+        byte[] modulus = ReadBytes(in);
+        byte[] raw = new byte[exponent.length + modulus.length];
+        System.arraycopy(exponent, 0, raw, 0, exponent.length);
+        System.arraycopy(modulus, 0, raw, exponent.length, modulus.length);
+        ByteArrayWrapper key = new ByteArrayWrapper(raw);
+        PublicKey address = addresses.get(key);
+        if (address == null) {
+            try {
+                address = keyFactory.generatePublic(new RSAPublicKeySpec(new BigInteger(modulus), new BigInteger(exponent)));
+            } catch (GeneralSecurityException e) {
+                throw new UncheckedIOException(new IOException("corrupt address in " + directory, e));
+            }
+            address = AddressRegistry.getShared().intern(address).publicKey();
+            addresses.put(key, address);
+        }
+        return address;
+    }
+
+    private void Index(byte[] hash, long location, int height) {
+        if (size + 1 > capacity * MAX_LOAD)
+            Grow();
+        ByteBuffer words = ByteBuffer.wrap(hash);
+        long mask = capacity - 1;
+        long slot = Hash(words.getLong(0), words.getLong(8), words.getLong(16), words.getLong(24)) & mask;
+        while (!IsEmpty(slot))
+            slot = (slot + 1) & mask;
+        ByteBuffer chunk = Chunk(slot);
+        int offset = Offset(slot);
+        for (int word = 0; word < 4; word++)
+            chunk.putLong(offset + 8 * word, words.getLong(8 * word));
+        chunk.putLong(offset + LOCATION_OFFSET, location);
+        chunk.putInt(offset + HEIGHT_OFFSET, height);
+        chunk.putInt(offset + USED_OFFSET, 1);
+        size++;
+        header.putLong(SIZE_OFFSET, size);
+    }
+
+    /** @return the slot of the block with hash {@code hash}, or -1 if there is none */
+    private long Find(byte[] hash) {
+        if (hash == null || hash.length != HASH_LENGTH)
+            return -1;
+        ByteBuffer words = ByteBuffer.wrap(hash);
+        long word0 = words.getLong(0), word1 = words.getLong(8), word2 = words.getLong(16), word3 = words.getLong(24);
+        long mask = capacity - 1;
+        for (long slot = Hash(word0, word1, word2, word3) & mask; !IsEmpty(slot); slot = (slot + 1) & mask) {
+            ByteBuffer chunk = Chunk(slot);
+            int offset = Offset(slot);
+            if (chunk.getLong(offset) == word0 && chunk.getLong(offset + 8) == word1
+                    && chunk.getLong(offset + 16) == word2 && chunk.getLong(offset + 24) == word3)
+                return slot;
+        }
+        return -1;
+    }
+
+    private boolean IsEmpty(long slot) {
+        return Chunk(slot).getInt(Offset(slot) + USED_OFFSET) == 0;
+    }
+
+    /** Rehashes every entry into an index of twice the capacity, which then replaces this one */
+    private void Grow() {
+        try {
+            Path grown = indexFile.resolveSibling(indexFile.getFileName() + ".grow");
+            Files.deleteIfExists(grown);
+            CreateIndex(grown, capacity * 2);
+            FileChannel oldChannel = indexChannel;
+            MappedByteBuffer[] oldChunks = chunks;
+            long oldCapacity = capacity;
+            MapIndex(grown);
+            for (long slot = 0; slot < oldCapacity; slot++) {
+                ByteBuffer chunk = oldChunks[(int) (slot / CHUNK_SLOTS)];
+                int offset = Offset(slot);
+                if (chunk.getInt(offset + USED_OFFSET) == 0)
+                    continue;
+                byte[] hash = new byte[HASH_LENGTH];
+                for (int i = 0; i < HASH_LENGTH; i++)
+                    hash[i] = chunk.get(offset + i);
+                Index(hash, chunk.getLong(offset + LOCATION_OFFSET), chunk.getInt(offset + HEIGHT_OFFSET));
+            }
+            header.putLong(END_OFFSET, end);
+            header.force();
+            for (MappedByteBuffer chunk : chunks)
+                chunk.force();
+            indexChannel.close();
+            oldChannel.close();
+            Files.move(grown, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            MapIndex(indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void CreateIndex(Path file, long capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(0);
+            raf.setLength(HEADER_BYTES + capacity * SLOT_BYTES);
+            raf.writeLong(INDEX_MAGIC);
+            raf.writeInt(FORMAT);
+            raf.writeInt(Long.numberOfTrailingZeros(capacity));
+            raf.writeLong(0);
+            raf.writeLong(0);
+        }
+    }
+
+    private void MapIndex(Path file) throws IOException {
+        indexChannel = new RandomAccessFile(file.toFile(), "rw").getChannel();
+        header = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        if (header.getLong(0) != INDEX_MAGIC || header.getInt(8) != FORMAT)
+            throw new IOException(file + " is not a block index");
+        capacity = 1L << header.getInt(12);
+        size = header.getLong(SIZE_OFFSET);
+        int chunkCount = (int) ((capacity + CHUNK_SLOTS - 1) / CHUNK_SLOTS);
+        chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long slots = Math.min(CHUNK_SLOTS, capacity - (long) i * CHUNK_SLOTS);
+            chunks[i] = indexChannel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + (long) i * CHUNK_SLOTS * SLOT_BYTES, slots * SLOT_BYTES);
+        }
+    }
+
+    private ByteBuffer Chunk(long slot) {
+        return chunks[(int) (slot / CHUNK_SLOTS)];
+    }
+
+    private static int Offset(long slot) {
+        return (int) (slot % CHUNK_SLOTS) * SLOT_BYTES;
+    }
+
+    private Path SegmentFile(int segment) {
+        return directory.resolve(String.format("blocks-%05d.dat", segment));
+    }
+
+    private Path CheckpointFile() {
+        return directory.resolve("utxo.checkpoint");
+    }
+
+    /** @return where the record at {@code offset} of segment {@code segment} is, as one long */
+    private static long Location(int segment, long offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private static int SegmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static long PositionOf(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+
+    private static long Hash(long word0, long word1, long word2, long word3) {
+        long h = ((word0 * 31 + word1) * 31 + word2) * 31 + word3;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
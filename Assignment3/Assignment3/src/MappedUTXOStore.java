@@ -0,0 +1,479 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link UTXOStore} kept off the heap, in an open-addressing hash table with linear probing in a
+ * memory-mapped file, so that the pool can grow larger than the heap without adding to GC pauses.
+ *
+ * <p>
+ * Each slot holds the transaction hash, the output index, the value and a reference to the
+ * address, which is written once to a companion {@code .keys} file and shared by every output paid
+ * to it; see {@link AddressFile}. Only the addresses used most recently are kept on the heap. Removals shift the following entries back instead of leaving tombstones. Reopening the
+ * same file gives back the same UTXOs without rebuilding anything; the table is only rehashed, into
+ * a file twice as large, when it becomes more than {@code MAX_LOAD} full.
+ *
+ * <p>
+ * {@link #snapshot()} returns a view that keeps its changes on the heap, over the file, so that
+ * {@code new UTXOPool(pool)} stays O(1) in {@code TxHandler} and {@code BlockChain}.
+ * {@link #commit()} on that view writes its changes to the file and keeps the view usable; views
+ * taken before the file changed can no longer be used afterwards, but for those passed to
+ * {@link UTXOStore#commit(Collection)}, so a {@code BlockChain} writes its UTXO set with
+ * {@link BlockChain#commit()}, which commits the one view it keeps along with the views of its
+ * lowest blocks. Only transaction hashes of 32 bytes can be stored.
+ * Not thread-safe, and a crash in the middle of a change can leave the file inconsistent.
+ */
+public class MappedUTXOStore implements UTXOStore, Closeable {
+
+    private static final long MAGIC = 0x5554584f53544f52L;
+    private static final int FORMAT = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int SIZE_OFFSET = 16;
+    private static final int SLOT_BYTES = 48;
+    private static final int INDEX_OFFSET = 32;
+    private static final int KEY_OFFSET = 36;
+    private static final int VALUE_OFFSET = 40;
+    /** slots per mapped chunk, so that a chunk stays well below the 2 GB limit of a mapping */
+    private static final int CHUNK_SLOTS = 1 << 24;
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final double MAX_LOAD = 0.7;
+
+    /** key reference of an empty slot */
+    private static final int EMPTY = 0;
+
+    /** used to build the outputs read back from the file */
+    private static final Transaction OUTPUTS = new Transaction();
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] chunks;
+    private long capacity;
+    private long size;
+    /** incremented on every change to the file, to detect stale snapshots */
+    private long version;
+
+    private final AddressFile addresses;
+
+    private MappedUTXOStore(Path file) throws IOException {
+        this.file = file;
+        this.addresses = new AddressFile(file.resolveSibling(file.getFileName() + ".keys"));
+        if (Files.exists(file) && Files.size(file) > 0) {
+            Map(file);
+        } else {
+            Create(file, MIN_CAPACITY);
+            Map(file);
+        }
+    }
+
+    /** Opens the store kept in {@code file}, creating an empty one if the file does not exist */
+    public static MappedUTXOStore open(Path file) {
+        try {
+            return new MappedUTXOStore(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Transaction.Output get(UTXO utxo) {
+        long slot = Find(utxo);
+        if (slot < 0)
+            return null;
+        ByteBuffer chunk = Chunk(slot);
+        int offset = Offset(slot);
+        PublicKey address = addresses.address(chunk.getInt(offset + KEY_OFFSET));
+        return OUTPUTS.new Output(Double.longBitsToDouble(chunk.getLong(offset + VALUE_OFFSET)), address);
+    }
+
+    @Override
+    public boolean containsKey(UTXO utxo) {
+        return Find(utxo) >= 0;
+    }
+
+    @Override
+    public void put(UTXO utxo, Transaction.Output output) {
+        version++;
+        Write(utxo, output);
+    }
+
+    @Override
+    public void remove(UTXO utxo) {
+        version++;
+        Delete(utxo);
+    }
+
+    @Override
+    public int size() {
+        return (int) size;
+    }
+
+    @Override
+    public ArrayList<UTXO> keys() {
+        ArrayList<UTXO> utxos = new ArrayList<UTXO>();
+        byte[] txHash = new byte[32];
+        for (long slot = 0; slot < capacity; slot++) {
+            ByteBuffer chunk = Chunk(slot);
+            int offset = Offset(slot);
+            if (chunk.getInt(offset + KEY_OFFSET) == EMPTY)
+                continue;
+            for (int i = 0; i < txHash.length; i++)
+                txHash[i] = chunk.get(offset + i);
+            utxos.add(new UTXO(txHash, chunk.getInt(offset + INDEX_OFFSET)));
+        }
+        return utxos;
+    }
+
+    @Override
+    public UTXOStore snapshot() {
+        return new Snapshot(this);
+    }
+
+    /** Forces every change made so far to the storage device */
+    @Override
+    public void commit() {
+        try {
+            header.force();
+            for (MappedByteBuffer chunk : chunks)
+                chunk.force();
+            addresses.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+        channel.close();
+        addresses.close();
+    }
+
+    private void Write(UTXO utxo, Transaction.Output output) {
+        if (!utxo.hasCompactTxHash())
+            throw new IllegalArgumentException("only 32-byte transaction hashes can be stored");
+        if (output == null)
+            throw new IllegalArgumentException("null outputs cannot be stored");
+        long slot = Find(utxo);
+        if (slot < 0) {
+            if (size + 1 > capacity * MAX_LOAD) {
+                Grow();
+            }
+            slot = EmptySlotFor(utxo);
+            size++;
+            header.putLong(SIZE_OFFSET, size);
+        }
+        ByteBuffer chunk = Chunk(slot);
+        int offset = Offset(slot);
+        for (int word = 0; word < 4; word++)
+            chunk.putLong(offset + 8 * word, utxo.txHashWord(word));
+        chunk.putInt(offset + INDEX_OFFSET, utxo.getIndex());
+        chunk.putInt(offset + KEY_OFFSET, addresses.refOf(output.address));
+        chunk.putLong(offset + VALUE_OFFSET, Double.doubleToRawLongBits(output.value));
+    }
+
+    /** Removes {@code utxo} and shifts back the entries probed past it, so no tombstone is left */
+    private void Delete(UTXO utxo) {
+        long hole = Find(utxo);
+        if (hole < 0)
+            return;
+        long mask = capacity - 1;
+        for (long slot = (hole + 1) & mask; !IsEmpty(slot); slot = (slot + 1) & mask) {
+            long home = HomeOf(slot);
+            boolean canMoveBack = hole <= slot ? home <= hole || home > slot : home <= hole && home > slot;
+            if (canMoveBack) {
+                CopySlot(slot, hole);
+                hole = slot;
+            }
+        }
+        Chunk(hole).putInt(Offset(hole) + KEY_OFFSET, EMPTY);
+        size--;
+        header.putLong(SIZE_OFFSET, size);
+    }
+
+    /** @return the slot holding {@code utxo}, or -1 if there is none */
+    private long Find(UTXO utxo) {
+        if (!utxo.hasCompactTxHash())
+            return -1;
+        long mask = capacity - 1;
+        for (long slot = Hash(utxo) & mask; !IsEmpty(slot); slot = (slot + 1) & mask) {
+            ByteBuffer chunk = Chunk(slot);
+            int offset = Offset(slot);
+            if (chunk.getInt(offset + INDEX_OFFSET) == utxo.getIndex()
+                    && chunk.getLong(offset) == utxo.txHashWord(0)
+                    && chunk.getLong(offset + 8) == utxo.txHashWord(1)
+                    && chunk.getLong(offset + 16) == utxo.txHashWord(2)
+                    && chunk.getLong(offset + 24) == utxo.txHashWord(3))
+                return slot;
+        }
+        return -1;
+    }
+
+    private long EmptySlotFor(UTXO utxo) {
+        long mask = capacity - 1;
+        long slot = Hash(utxo) & mask;
+        while (!IsEmpty(slot))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private boolean IsEmpty(long slot) {
+        return Chunk(slot).getInt(Offset(slot) + KEY_OFFSET) == EMPTY;
+    }
+
+    private long HomeOf(long slot) {
+        ByteBuffer chunk = Chunk(slot);
+        int offset = Offset(slot);
+        return Hash(chunk.getLong(offset), chunk.getLong(offset + 8), chunk.getLong(offset + 16),
+                chunk.getLong(offset + 24), chunk.getInt(offset + INDEX_OFFSET)) & (capacity - 1);
+    }
+
+    private void CopySlot(long from, long to) {
+        ByteBuffer source = Chunk(from);
+        ByteBuffer target = Chunk(to);
+        int sourceOffset = Offset(from);
+        int targetOffset = Offset(to);
+        for (int i = 0; i < SLOT_BYTES; i += 8)
+            target.putLong(targetOffset + i, source.getLong(sourceOffset + i));
+    }
+
+    /** Rehashes every entry into a file of twice the capacity, which then replaces this one */
+    private void Grow() {
+        try {
+            Path grown = file.resolveSibling(file.getFileName() + ".grow");
+            Files.deleteIfExists(grown);
+            Create(grown, capacity * 2);
+            MappedUTXOStore target = new MappedUTXOStore(grown, this);
+            for (long slot = 0; slot < capacity; slot++) {
+                if (!IsEmpty(slot))
+                    target.CopyEntryFrom(this, slot);
+            }
+            target.header.putLong(SIZE_OFFSET, size);
+            target.header.force();
+            for (MappedByteBuffer chunk : target.chunks)
+                chunk.force();
+            target.channel.close();
+            channel.close();
+            Files.move(grown, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Opens {@code file} to grow {@code source} into it, sharing its keys */
+    private MappedUTXOStore(Path file, MappedUTXOStore source) throws IOException {
+        this.file = file;
+        this.addresses = source.addresses;
+        Map(file);
+    }
+
+    private void CopyEntryFrom(MappedUTXOStore source, long sourceSlot) {
+        ByteBuffer chunk = source.Chunk(sourceSlot);
+        int offset = source.Offset(sourceSlot);
+        long mask = capacity - 1;
+        long slot = Hash(chunk.getLong(offset), chunk.getLong(offset + 8), chunk.getLong(offset + 16),
+                chunk.getLong(offset + 24), chunk.getInt(offset + INDEX_OFFSET)) & mask;
+        while (!IsEmpty(slot))
+            slot = (slot + 1) & mask;
+        ByteBuffer target = Chunk(slot);
+        int targetOffset = Offset(slot);
+        for (int i = 0; i < SLOT_BYTES; i += 8)
+            target.putLong(targetOffset + i, chunk.getLong(offset + i));
+    }
+
+    private static void Create(Path file, long capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(HEADER_BYTES + capacity * SLOT_BYTES);
+            raf.writeLong(MAGIC);
+            raf.writeInt(FORMAT);
+            raf.writeInt(Long.numberOfTrailingZeros(capacity));
+            raf.writeLong(0);
+        }
+    }
+
+    private void Map(Path file) throws IOException {
+        channel = new RandomAccessFile(file.toFile(), "rw").getChannel();
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != FORMAT)
+            throw new IOException(file + " is not a UTXO store");
+        capacity = 1L << header.getInt(12);
+        size = header.getLong(SIZE_OFFSET);
+        int chunkCount = (int) ((capacity + CHUNK_SLOTS - 1) / CHUNK_SLOTS);
+        chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long slots = Math.min(CHUNK_SLOTS, capacity - (long) i * CHUNK_SLOTS);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + (long) i * CHUNK_SLOTS * SLOT_BYTES, slots * SLOT_BYTES);
+        }
+    }
+
+    private ByteBuffer Chunk(long slot) {
+        return chunks[(int) (slot / CHUNK_SLOTS)];
+    }
+
+    private int Offset(long slot) {
+        return (int) (slot % CHUNK_SLOTS) * SLOT_BYTES;
+    }
+
+    private static long Hash(UTXO utxo) {
+        return Hash(utxo.txHashWord(0), utxo.txHashWord(1), utxo.txHashWord(2), utxo.txHashWord(3), utxo.getIndex());
+    }
+
+    private static long Hash(long word0, long word1, long word2, long word3, int index) {
+        long h = ((word0 * 31 + word1) * 31 + word2) * 31 + word3 + index * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * A copy of the store that keeps its own changes on the heap, in a trie whose removed entries
+     * map to a null output. Copies of it share that trie, so they are O(1) too.
+     */
+    private static final class Snapshot implements UTXOStore {
+
+        private final MappedUTXOStore base;
+        private long baseVersion;
+        private UTXOTrie changes;
+        private int size;
+
+        private Snapshot(MappedUTXOStore base) {
+            this(base, base.version, new UTXOTrie(), base.size());
+        }
+
+        private Snapshot(MappedUTXOStore base, long baseVersion, UTXOTrie changes, int size) {
+            this.base = base;
+            this.baseVersion = baseVersion;
+            this.changes = changes;
+            this.size = size;
+        }
+
+        @Override
+        public Transaction.Output get(UTXO utxo) {
+            CheckBaseUnchanged();
+            if (changes.containsKey(utxo))
+                return changes.get(utxo);
+            return base.get(utxo);
+        }
+
+        @Override
+        public boolean containsKey(UTXO utxo) {
+            CheckBaseUnchanged();
+            if (changes.containsKey(utxo))
+                return changes.get(utxo) != null;
+            return base.containsKey(utxo);
+        }
+
+        @Override
+        public void put(UTXO utxo, Transaction.Output output) {
+            if (!utxo.hasCompactTxHash())
+                throw new IllegalArgumentException("only 32-byte transaction hashes can be stored");
+            if (output == null)
+                throw new IllegalArgumentException("null outputs cannot be stored");
+            if (!containsKey(utxo))
+                size++;
+            changes.put(utxo, output);
+        }
+
+        @Override
+        public void remove(UTXO utxo) {
+            if (!containsKey(utxo))
+                return;
+            if (base.containsKey(utxo))
+                changes.put(utxo, null);
+            else
+                changes.remove(utxo);
+            size--;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public ArrayList<UTXO> keys() {
+            CheckBaseUnchanged();
+            ArrayList<UTXO> utxos = new ArrayList<UTXO>(size);
+            for (UTXO utxo : base.keys()) {
+                if (!changes.containsKey(utxo))
+                    utxos.add(utxo);
+            }
+            for (UTXO utxo : changes.keys()) {
+                if (changes.get(utxo) != null)
+                    utxos.add(utxo);
+            }
+            return utxos;
+        }
+
+        @Override
+        public UTXOStore snapshot() {
+            CheckBaseUnchanged();
+            return new Snapshot(base, baseVersion, changes.snapshot(), size);
+        }
+
+        /** Writes the changes of this copy to the file, which other copies then stop seeing */
+        @Override
+        public void commit() {
+            CheckBaseUnchanged();
+            for (UTXO utxo : changes.keys()) {
+                Transaction.Output output = changes.get(utxo);
+                if (output == null)
+                    base.Delete(utxo);
+                else
+                    base.Write(utxo, output);
+            }
+            base.version++;
+            base.commit();
+            baseVersion = base.version;
+            changes = new UTXOTrie();
+        }
+
+        /**
+         * Writes the changes of this copy to the file, after first giving each copy of
+         * {@code kept} the outputs the file had for them, so that it keeps its entries
+         */
+        @Override
+        public void commit(Collection<UTXOStore> kept) {
+            CheckBaseUnchanged();
+            List<Snapshot> rebased = new ArrayList<Snapshot>(kept.size());
+            for (UTXOStore store : kept) {
+                if (!(store instanceof Snapshot) || ((Snapshot) store).base != base)
+                    throw new IllegalArgumentException("only copies of the same store can be kept");
+                Snapshot snapshot = (Snapshot) store;
+                snapshot.CheckBaseUnchanged();
+                if (snapshot != this)
+                    rebased.add(snapshot);
+            }
+            ArrayList<UTXO> changed = changes.keys();
+            for (Snapshot snapshot : rebased) {
+                for (UTXO utxo : changed) {
+                    if (!snapshot.changes.containsKey(utxo))
+                        snapshot.changes.put(utxo, base.get(utxo));
+                }
+            }
+            commit();
+            for (Snapshot snapshot : rebased)
+                snapshot.baseVersion = base.version;
+        }
+
+        private void CheckBaseUnchanged() {
+            if (baseVersion != base.version)
+                throw new IllegalStateException("the store this pool was copied from has changed since");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Amounts as exact longs of satoshis, the smallest unit of a coin. Output values stay doubles in
+ * coins, as the rest of the code expects, and are converted once to satoshis when they are summed
+ * or compared, so balances no longer depend on the order floating-point additions happen in.
+ */
+public final class Satoshis {
+
+    public static final long PER_COIN = 100_000_000L;
+
+    private static final double LIMIT = 0x1p63;
+
+    private Satoshis() {
+    }
+
+    /**
+     * @return {@code coins} rounded to the nearest satoshi
+     * @throws ArithmeticException if {@code coins} is not a number or does not fit in a long of
+     *                             satoshis
+     */
+    public static long fromCoins(double coins) {
+        double satoshis = Math.rint(coins * PER_COIN);
+        if (!(Math.abs(satoshis) < LIMIT))
+            throw new ArithmeticException("not an amount of satoshis: " + coins + " coins");
+        return (long) satoshis;
+    }
+
+    /**
+     * @return the exact total of the values of {@code outputs}
+     * @throws ArithmeticException if a value or the total is not an amount
+     */
+    public static long sumOf(Iterable<Transaction.Output> outputs) {
+        long total = 0;
+        for (Transaction.Output output : outputs)
+            total = Math.addExact(total, output.getSatoshis());
+        return total;
+    }
+
+    public static double toCoins(long satoshis) {
+        return (double) satoshis / PER_COIN;
+    }
+}
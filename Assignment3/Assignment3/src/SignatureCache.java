@@ -0,0 +1,127 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of signatures that {@link Crypto#verifySignature} already found
+ * valid, keyed by (address as interned by the {@link AddressRegistry}, SHA-256 of the signed
+ * message, signature). The same transactions are
+ * checked when they enter a block template, when the block is validated and when it is connected,
+ * so a hit saves a full RSA verification. Only valid signatures are remembered and the least
+ * recently used entry is evicted once {@code capacity} is reached.
+ */
+public class SignatureCache {
+
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    private static final SignatureCache SHARED = new SignatureCache(DEFAULT_CAPACITY);
+
+    private final Map<Key, Boolean> verified;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SignatureCache(int capacity) {
+        this.verified = new LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** @return the cache shared by every {@code TxHandler} of the process */
+    public static SignatureCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Same contract as {@link Crypto#verifySignature}, but a signature that was already verified
+     * under the same key and message is answered from the cache. A null key makes the signature
+     * invalid, as it does for {@link SignatureVerifier#verifySignature}, without being interned
+     */
+    public boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
+        if (pubKey == null)
+            return false;
+        AddressRegistry.Address address = AddressRegistry.getShared().intern(pubKey);
+        Key key = new Key(address, Sha256(message), signature);
+        synchronized (verified) {
+            if (verified.get(key) != null) {
+                hits.incrementAndGet();
+                return true;
+            }
+        }
+        misses.incrementAndGet();
+        if (!address.verifySignature(message, signature))
+            return false;
+        synchronized (verified) {
+            verified.put(key.Detached(), Boolean.TRUE);
+        }
+        return true;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (verified) {
+            return verified.size();
+        }
+    }
+
+    /** Forgets every cached signature and resets the counters */
+    public void clear() {
+        synchronized (verified) {
+            verified.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private static byte[] Sha256(byte[] message) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(message);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Key {
+        private final AddressRegistry.Address address;
+        private final byte[] digest;
+        private final byte[] signature;
+        private final int hash;
+
+        private Key(AddressRegistry.Address address, byte[] digest, byte[] signature) {
+            this.address = address;
+            this.digest = digest;
+            this.signature = signature;
+            this.hash = 31 * (31 * System.identityHashCode(address) + Arrays.hashCode(digest)) + Arrays.hashCode(signature);
+        }
+
+        /** @return a copy that no longer shares the caller's signature array */
+        private Key Detached() {
+            return new Key(address, digest, signature.clone());
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return hash == key.hash && address == key.address && Arrays.equals(digest, key.digest)
+                    && Arrays.equals(signature, key.signature);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Verifies SHA256withRSA signatures with one {@link Signature} per thread instead of one per call,
+ * which saves the provider lookup of {@code Signature.getInstance} on every verification. A
+ * {@code Signature} is not thread-safe, so each thread only ever uses its own. A batch of
+ * verifications can also be spread over an executor with {@link #verifyAll}.
+ *
+ * <p>
+ * The executor given to the constructor stays the caller's to shut down, while the pool of a
+ * verifier made by {@link #withParallelism} belongs to the verifier and is shut down by
+ * {@link #close}.
+ */
+public class SignatureVerifier implements AutoCloseable {
+
+    private static final String ALGORITHM = "SHA256withRSA";
+
+    private static final ThreadLocal<Signature> VERIFIERS = ThreadLocal.withInitial(SignatureVerifier::NewSignature);
+
+    private final Executor executor;
+    /** the pool the verifier created and shuts down, or null if the executor is the caller's */
+    private final ForkJoinPool ownedPool;
+
+    public SignatureVerifier(Executor executor) {
+        this(executor, null);
+    }
+
+    private SignatureVerifier(Executor executor, ForkJoinPool ownedPool) {
+        this.executor = executor;
+        this.ownedPool = ownedPool;
+    }
+
+    /** Creates a verifier backed by a ForkJoinPool with the given parallelism, shut down by {@link #close} */
+    public static SignatureVerifier withParallelism(int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        return new SignatureVerifier(pool, pool);
+    }
+
+    /**
+     * Same contract as {@link Crypto#verifySignature}, using the calling thread's {@code Signature}.
+     * A key or signature that cannot be checked makes the signature invalid
+     */
+    public static boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
+        Signature verifier = VERIFIERS.get();
+        try {
+            verifier.initVerify(pubKey);
+            verifier.update(message);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /** @return a new {@code Signature} for the algorithm of this class, not initialized */
+    static Signature NewSignature() {
+        try {
+            return Signature.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Verifies every request on the executor and waits for all of them
+     *
+     * @return whether each request, at the same position, carries a valid signature
+     */
+    public boolean[] verifyAll(List<VerifyRequest> requests) {
+        List<CompletableFuture<Boolean>> checks = new ArrayList<CompletableFuture<Boolean>>(requests.size());
+        for (VerifyRequest request : requests) {
+            checks.add(CompletableFuture.supplyAsync(
+                    () -> verifySignature(request.address, request.message, request.signature), executor));
+        }
+        boolean[] valid = new boolean[checks.size()];
+        for (int i = 0; i < valid.length; i++)
+            valid[i] = checks.get(i).join();
+        return valid;
+    }
+
+    /** Shuts down the pool of a verifier made by {@link #withParallelism}; leaves any other executor running */
+    @Override
+    public void close() {
+        if (ownedPool != null)
+            ownedPool.shutdown();
+    }
+
+    /** A signature to check against the message it signs and the address that signed it */
+    public static final class VerifyRequest {
+        private final PublicKey address;
+        private final byte[] message;
+        private final byte[] signature;
+
+        public VerifyRequest(PublicKey address, byte[] message, byte[] signature) {
+            this.address = address;
+            this.message = message;
+            this.signature = signature;
+        }
+    }
+}
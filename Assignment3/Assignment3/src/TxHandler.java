@@ -35,10 +35,14 @@ public class TxHandler {
                 TotalClaimedUTXOsAreAtLeastEqualToOutputs(tx);
 	}
 
+    // Compares exact sums of satoshis; amounts beyond a long of satoshis are invalid
     private boolean TotalClaimedUTXOsAreAtLeastEqualToOutputs(Transaction tx) {
-        double totalClaimedUTXOs = UTXOsFromInputs(tx).mapToDouble(utxo -> utxoPool.getTxOutput(utxo).value).sum();
-        double totalOutputs = tx.getOutputs().stream().mapToDouble(output -> output.value).sum();
-        return totalClaimedUTXOs >= totalOutputs;
+        try {
+            List<Transaction.Output> claimedOutputs = UTXOsFromInputs(tx).map(utxo -> utxoPool.getTxOutput(utxo)).collect(toList());
+            return Satoshis.sumOf(claimedOutputs) >= Satoshis.sumOf(tx.getOutputs());
+        } catch (ArithmeticException e) {
+            return false;
+        }
     }
 
     private boolean AllTxOutputsHaveNonNegativeValues(Transaction tx) {
@@ -55,41 +59,73 @@ public class TxHandler {
         return !(IntStream.range(0, txInputs.size())
                 .mapToObj(index -> {
                     Transaction.Input txInput = txInputs.get(index);
-                    Transaction.Output txOutput = utxoPool.getTxOutput(new UTXO(txInput.prevTxHash, txInput.outputIndex));
-                    return txInput.signature != null && Crypto.verifySignature(txOutput.address, tx.getRawDataToSign(index), txInput.signature);
+                    Transaction.Output txOutput = utxoPool.getTxOutput(new UTXO(txInput));
+                    return txInput.signature != null && SignatureCache.getShared().verifySignature(txOutput.address, tx.getRawDataToSign(index), txInput.signature);
                 }).collect(toList())
                 .contains(false));
     }
 
     protected boolean AllUTXOsRequiredByTransactionAreInPool(Transaction tx) {
-        ArrayList<UTXO> utxosInPool = utxoPool.getAllUTXO();
-        return UTXOsFromInputs(tx).allMatch(utxosInPool::contains);
+        return utxoPool.containsAll(UTXOsFromInputs(tx).collect(toList()));
     }
 
     /* Handles each epoch by receiving an unordered array of proposed
      * transactions, checking each transaction for correctness,
      * returning a mutually valid array of accepted transactions,
      * and updating the current UTXO pool as appropriate.
+     *
+     * Transactions are checked in rounds, in their order in possibleTxs. A
+     * rejected transaction that claims an output missing from the pool is
+     * parked on that output and only checked again once a later transaction
+     * creates it: in the current round if it comes after its parent, in the
+     * next one otherwise. This accepts the same transactions, in the same
+     * order, as re-checking every rejected transaction until a round accepts
+     * nothing, but each transaction is only checked again when it may have
+     * become valid.
      */
 	public Transaction[] handleTxs(Transaction[] possibleTxs) {
         ArrayList<Transaction> acceptedTransactions = new ArrayList<>();
-        ArrayList<Transaction> notAcceptedTransactions = new ArrayList<>();
-        for (Transaction tx : possibleTxs) {
-            if (isValidTx(tx)){
-                UpdateUTXOPool(tx);
-                acceptedTransactions.add(tx);
-            }else{
-                notAcceptedTransactions.add(tx);
+        HashMap<UTXO, List<Integer>> parkedTransactions = new HashMap<>();
+        PriorityQueue<Integer> currentRound = new PriorityQueue<>();
+        PriorityQueue<Integer> nextRound = new PriorityQueue<>();
+        IntStream.range(0, possibleTxs.length).forEach(currentRound::add);
+
+        while (!currentRound.isEmpty()) {
+            while (!currentRound.isEmpty()) {
+                int index = currentRound.poll();
+                Transaction tx = possibleTxs[index];
+                if (isValidTx(tx)) {
+                    UpdateUTXOPool(tx);
+                    acceptedTransactions.add(tx);
+                    ReleaseParkedChildren(tx, index, parkedTransactions, currentRound, nextRound);
+                } else {
+                    ParkOnFirstMissingUTXO(tx, index, parkedTransactions);
+                }
             }
-        }
-
-        if(!acceptedTransactions.isEmpty()){
-            acceptedTransactions.addAll(handleTxs(notAcceptedTransactions));
+            PriorityQueue<Integer> finishedRound = currentRound;
+            currentRound = nextRound;
+            nextRound = finishedRound;
         }
 
         return ToArray(acceptedTransactions);
 	}
 
+    private void ParkOnFirstMissingUTXO(Transaction tx, int index, Map<UTXO, List<Integer>> parkedTransactions) {
+        UTXOsFromInputs(tx)
+                .filter(utxo -> !utxoPool.contains(utxo))
+                .findFirst()
+                .ifPresent(utxo -> parkedTransactions.computeIfAbsent(utxo, missing -> new ArrayList<>()).add(index));
+    }
+
+    private void ReleaseParkedChildren(Transaction parent, int parentIndex, Map<UTXO, List<Integer>> parkedTransactions,
+                                       PriorityQueue<Integer> currentRound, PriorityQueue<Integer> nextRound) {
+        for (int outputIndex = 0; outputIndex < parent.numOutputs(); outputIndex++) {
+            List<Integer> children = parkedTransactions.remove(new UTXO(parent.getHash(), outputIndex));
+            if (children == null) continue;
+            children.forEach(childIndex -> (childIndex > parentIndex ? currentRound : nextRound).add(childIndex));
+        }
+    }
+
     private void UpdateUTXOPool(Transaction tx) {
         UTXOsFromInputs(tx).forEach(utxo -> utxoPool.removeUTXO(utxo));
         IntStream.range(0, tx.getOutputs().size())
@@ -105,7 +141,7 @@ public class TxHandler {
     }
 
     protected Stream<UTXO> UTXOsFromInputs(Transaction tx) {
-        return tx.getInputs().stream().map(input -> new UTXO(input.prevTxHash, input.outputIndex));
+        return tx.getInputs().stream().map(input -> new UTXO(input));
     }
 
     public UTXOPool getUTXOPool() {
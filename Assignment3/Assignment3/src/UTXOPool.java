@@ -1,22 +1,31 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Collection;
+import java.util.List;
 
 public class UTXOPool {
 
     /**
-     * The current collection of UTXOs, with each one mapped to its corresponding transaction output
+     * The current collection of UTXOs, with each one mapped to its corresponding transaction output.
+     * Copies of the pool share the parts of the store that neither of them changed.
      */
-    private HashMap<UTXO, Transaction.Output> H;
+    private UTXOStore H;
 
     /** Creates a new empty UTXOPool */
     public UTXOPool() {
-        H = new HashMap<UTXO, Transaction.Output>();
+        H = new UTXOTrie();
     }
 
-    /** Creates a new UTXOPool that is a copy of {@code uPool} */
+    /** Creates a new UTXOPool over the UTXOs already in {@code store}, e.g. a {@link MappedUTXOStore} */
+    public UTXOPool(UTXOStore store) {
+        H = store;
+    }
+
+    /**
+     * Creates a new UTXOPool that is a copy of {@code uPool}. This is O(1): both pools keep sharing
+     * the entries that neither of them changes afterwards
+     */
     public UTXOPool(UTXOPool uPool) {
-        H = new HashMap<UTXO, Transaction.Output>(uPool.H);
+        H = uPool.H.snapshot();
     }
 
     /** Adds a mapping from UTXO {@code utxo} to transaction output @code{txOut} to the pool */
@@ -42,13 +51,44 @@ public class UTXOPool {
         return H.containsKey(utxo);
     }
 
+    /**
+     * @return true if every UTXO in {@code utxos} is in the pool and false otherwise. Each UTXO is
+     *         answered by a single hash lookup, independently of the size of the pool
+     */
+    public boolean containsAll(Collection<UTXO> utxos) {
+        for (UTXO ut : utxos) {
+            if (!H.containsKey(ut))
+                return false;
+        }
+        return true;
+    }
+
+    /** @return the number of UTXOs in the pool */
+    public int size() {
+        return H.size();
+    }
+
+    /**
+     * Writes the changes made to this pool since it was copied to the file backing it, if any. See
+     * {@link UTXOStore#commit()}
+     */
+    public void commit() {
+        H.commit();
+    }
+
+    /**
+     * Same as {@link #commit()}, after which each pool of {@code kept}, a copy of this one or of a
+     * pool it was copied from, can still be used. See {@link UTXOStore#commit(Collection)}
+     */
+    public void commit(Collection<UTXOPool> kept) {
+        List<UTXOStore> stores = new ArrayList<UTXOStore>(kept.size());
+        for (UTXOPool pool : kept)
+            stores.add(pool.H);
+        H.commit(stores);
+    }
+
     /** Returns an {@code ArrayList} of all UTXOs in the pool */
     public ArrayList<UTXO> getAllUTXO() {
-        Set<UTXO> setUTXO = H.keySet();
-        ArrayList<UTXO> allUTXO = new ArrayList<UTXO>();
-        for (UTXO ut : setUTXO) {
-            allUTXO.add(ut);
-        }
-        return allUTXO;
+        return H.keys();
     }
 }
@@ -0,0 +1,44 @@
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Where a {@link UTXOPool} keeps its UTXOs. {@link UTXOTrie} keeps them on the heap and
+ * {@link MappedUTXOStore} in a memory-mapped file.
+ */
+public interface UTXOStore {
+
+    /** @return the output mapped to {@code utxo}, or null if there is none */
+    Transaction.Output get(UTXO utxo);
+
+    /** @return true if {@code utxo} is mapped to an output */
+    boolean containsKey(UTXO utxo);
+
+    /** Maps {@code utxo} to {@code output}, replacing any previous mapping */
+    void put(UTXO utxo, Transaction.Output output);
+
+    /** Removes the mapping of {@code utxo}, if any */
+    void remove(UTXO utxo);
+
+    int size();
+
+    /** @return every UTXO in the store */
+    ArrayList<UTXO> keys();
+
+    /** @return a store with the same entries as this one, that later changes to either do not affect */
+    UTXOStore snapshot();
+
+    /**
+     * Makes the changes of this store durable in the store it was snapshotted from, for stores
+     * backed by a file. Does nothing for stores that only live on the heap
+     */
+    void commit();
+
+    /**
+     * Same as {@link #commit()}, after which each store of {@code kept}, a copy of the same store
+     * as this one, still has the entries it had and can still be used. Stores that only live on
+     * the heap keep every copy usable anyway
+     */
+    default void commit(Collection<UTXOStore> kept) {
+        commit();
+    }
+}
@@ -0,0 +1,345 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hash array mapped trie from UTXOs to transaction outputs whose snapshots share structure.
+ *
+ * <p>
+ * {@link #snapshot()} is O(1): it hands the current root over to a new trie and both tries stop
+ * owning any existing node. From then on a change to either trie copies the nodes on the path to
+ * the changed entry, at most seven nodes of up to 32 slots, and leaves the shared ones untouched.
+ * Nodes created by a trie since its last snapshot are owned by it and changed in place, so a trie
+ * that is never snapshotted costs about the same as a hash map. A chain of tries snapshotted from
+ * one another therefore only pays, for each of them, for the entries it changed.
+ *
+ * <p>
+ * Outputs are kept as their value and their address as interned by the {@link AddressRegistry}, and
+ * {@link #get} hands out a new, equal output each time.
+ */
+public class UTXOTrie implements UTXOStore {
+
+    private static final int BITS_PER_LEVEL = 5;
+    /** address of a UTXO mapped to a null output */
+    private static final Object NO_OUTPUT = new Object();
+
+    /** used to build the outputs handed out by {@link #get} */
+    private static final Transaction OUTPUTS = new Transaction();
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    private Node root;
+    private int size;
+    /** token identifying the nodes this trie may change in place */
+    private Object owner;
+
+    /** Creates a new empty trie */
+    public UTXOTrie() {
+        this.owner = new Object();
+        this.root = new Node(owner, 0, new Object[0]);
+    }
+
+    private UTXOTrie(Node root, int size) {
+        this.owner = new Object();
+        this.root = root;
+        this.size = size;
+    }
+
+    /** @return a trie with the same entries as this one, that later changes to either do not affect */
+    @Override
+    public UTXOTrie snapshot() {
+        owner = new Object();
+        return new UTXOTrie(root, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Does nothing, the trie only lives on the heap */
+    @Override
+    public void commit() {
+    }
+
+    /** @return the output mapped to {@code utxo}, or null if there is none */
+    @Override
+    public Transaction.Output get(UTXO utxo) {
+        Leaf leaf = Find(utxo);
+        if (leaf == null || leaf.address == NO_OUTPUT)
+            return null;
+        return OUTPUTS.new Output(leaf.value, leaf.address == null ? null : ((AddressRegistry.Address) leaf.address).publicKey());
+    }
+
+    /** @return true if {@code utxo} is mapped to an output, even a null one */
+    @Override
+    public boolean containsKey(UTXO utxo) {
+        return Find(utxo) != null;
+    }
+
+    /** Maps {@code utxo} to {@code output}, replacing any previous mapping */
+    @Override
+    public void put(UTXO utxo, Transaction.Output output) {
+        Object address = output == null ? NO_OUTPUT : AddressRegistry.getShared().intern(output.address);
+        root = Put(root, 0, new Leaf(Spread(utxo.hashCode()), utxo, output == null ? 0 : output.value, address));
+    }
+
+    /** Removes the mapping of {@code utxo}, if any */
+    @Override
+    public void remove(UTXO utxo) {
+        Object newRoot = Remove(root, 0, Spread(utxo.hashCode()), utxo);
+        root = newRoot == null ? new Node(owner, 0, new Object[0]) : (Node) newRoot;
+    }
+
+    /** @return every UTXO in the trie */
+    @Override
+    public ArrayList<UTXO> keys() {
+        ArrayList<UTXO> keys = new ArrayList<UTXO>(size);
+        CollectKeys(root, keys);
+        return keys;
+    }
+
+    private Node Put(Node node, int shift, Leaf entry) {
+        int hash = entry.hash;
+        int bit = Bit(hash, shift);
+        int index = node.index(bit);
+        if ((node.bitmap & bit) == 0) {
+            size++;
+            Node editable = node.editableBy(owner);
+            editable.slots = Inserted(editable.slots, index, entry);
+            editable.bitmap |= bit;
+            return editable;
+        }
+
+        Object slot = node.slots[index];
+        Object newSlot;
+        if (slot instanceof Node) {
+            newSlot = Put((Node) slot, shift + BITS_PER_LEVEL, entry);
+        } else if (HashOf(slot) == hash) {
+            newSlot = Merged(slot, entry);
+        } else {
+            Node split = new Node(owner, Bit(HashOf(slot), shift + BITS_PER_LEVEL), new Object[]{slot});
+            newSlot = Put(split, shift + BITS_PER_LEVEL, entry);
+        }
+        if (newSlot == slot)
+            return node;
+        Node editable = node.editableBy(owner);
+        editable.slots[index] = newSlot;
+        return editable;
+    }
+
+    /** @return {@code node} without {@code utxo}, or its only remaining entry, or null if it is empty */
+    private Object Remove(Node node, int shift, int hash, UTXO utxo) {
+        int bit = Bit(hash, shift);
+        if ((node.bitmap & bit) == 0)
+            return node;
+        int index = node.index(bit);
+        Object slot = node.slots[index];
+        Object newSlot;
+        if (slot instanceof Node) {
+            newSlot = Remove((Node) slot, shift + BITS_PER_LEVEL, hash, utxo);
+        } else if (slot instanceof Leaf) {
+            Leaf leaf = (Leaf) slot;
+            if (leaf.hash != hash || !leaf.utxo.equals(utxo))
+                return node;
+            size--;
+            newSlot = null;
+        } else {
+            newSlot = ((Collision) slot).without(hash, utxo);
+            if (newSlot != slot)
+                size--;
+        }
+        if (newSlot == slot)
+            return node;
+
+        if (newSlot == null) {
+            if (Integer.bitCount(node.bitmap) == 1)
+                return null;
+            if (Integer.bitCount(node.bitmap) == 2 && shift > 0 && !(node.slots[1 - index] instanceof Node))
+                return node.slots[1 - index];
+            Node editable = node.editableBy(owner);
+            editable.slots = Removed(editable.slots, index);
+            editable.bitmap &= ~bit;
+            return editable;
+        }
+        if (Integer.bitCount(node.bitmap) == 1 && shift > 0 && !(newSlot instanceof Node))
+            return newSlot;
+        Node editable = node.editableBy(owner);
+        editable.slots[index] = newSlot;
+        return editable;
+    }
+
+    private Leaf Find(UTXO utxo) {
+        int hash = Spread(utxo.hashCode());
+        Node node = root;
+        for (int shift = 0; ; shift += BITS_PER_LEVEL) {
+            int bit = Bit(hash, shift);
+            if ((node.bitmap & bit) == 0)
+                return null;
+            Object slot = node.slots[node.index(bit)];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+            } else if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.hash == hash && leaf.utxo.equals(utxo) ? leaf : null;
+            } else {
+                return ((Collision) slot).find(hash, utxo);
+            }
+        }
+    }
+
+    /** @return {@code existing}, a Leaf or a Collision, with {@code leaf} of the same hash put in it */
+    private Object Merged(Object existing, Leaf leaf) {
+        if (existing instanceof Leaf) {
+            Leaf other = (Leaf) existing;
+            if (other.utxo.equals(leaf.utxo))
+                return other.sameOutputAs(leaf) ? other : leaf;
+            size++;
+            return new Collision(leaf.hash, new Leaf[]{other, leaf});
+        }
+        Collision collision = (Collision) existing;
+        Collision merged = collision.with(leaf);
+        if (merged.leaves.length > collision.leaves.length)
+            size++;
+        return merged;
+    }
+
+    private static int HashOf(Object entry) {
+        return entry instanceof Leaf ? ((Leaf) entry).hash : ((Collision) entry).hash;
+    }
+
+    private static void CollectKeys(Node node, List<UTXO> keys) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Node) {
+                CollectKeys((Node) slot, keys);
+            } else if (slot instanceof Leaf) {
+                keys.add(((Leaf) slot).utxo);
+            } else {
+                for (Leaf leaf : ((Collision) slot).leaves)
+                    keys.add(leaf.utxo);
+            }
+        }
+    }
+
+    private static int Spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int Bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & LEVEL_MASK);
+    }
+
+    private static Object[] Inserted(Object[] slots, int index, Object slot) {
+        Object[] inserted = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, inserted, 0, index);
+        inserted[index] = slot;
+        System.arraycopy(slots, index, inserted, index + 1, slots.length - index);
+        return inserted;
+    }
+
+    private static Object[] Removed(Object[] slots, int index) {
+        Object[] removed = new Object[slots.length - 1];
+        System.arraycopy(slots, 0, removed, 0, index);
+        System.arraycopy(slots, index + 1, removed, index, slots.length - index - 1);
+        return removed;
+    }
+
+    /** An inner node: one slot per set bit of {@code bitmap}, each a Node, a Leaf or a Collision */
+    private static final class Node {
+        private final Object owner;
+        private int bitmap;
+        private Object[] slots;
+
+        private Node(Object owner, int bitmap, Object[] slots) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /** @return this node if {@code owner} may change it in place, or a copy owned by it */
+        private Node editableBy(Object owner) {
+            return this.owner == owner ? this : new Node(owner, bitmap, slots.clone());
+        }
+    }
+
+    /**
+     * A UTXO and its output, kept as the value and the address interned by the shared
+     * {@link AddressRegistry} rather than as a {@code Transaction.Output}, which would also keep
+     * its whole transaction reachable. The address is null for a null address and
+     * {@code NO_OUTPUT} for a null output.
+     */
+    private static final class Leaf {
+        private final int hash;
+        private final UTXO utxo;
+        private final double value;
+        private final Object address;
+
+        private Leaf(int hash, UTXO utxo, double value, Object address) {
+            this.hash = hash;
+            this.utxo = utxo;
+            this.value = value;
+            this.address = address;
+        }
+
+        private boolean sameOutputAs(Leaf other) {
+            return address == other.address
+                    && Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(other.value);
+        }
+    }
+
+    /** UTXOs whose hashes are all equal, which no level of the trie can tell apart */
+    private static final class Collision {
+        private final int hash;
+        private final Leaf[] leaves;
+
+        private Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private Leaf find(int hash, UTXO utxo) {
+            if (hash != this.hash)
+                return null;
+            for (Leaf leaf : leaves) {
+                if (leaf.utxo.equals(utxo))
+                    return leaf;
+            }
+            return null;
+        }
+
+        private Collision with(Leaf leaf) {
+            Leaf[] updated = leaves.clone();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i].utxo.equals(leaf.utxo)) {
+                    if (updated[i].sameOutputAs(leaf))
+                        return this;
+                    updated[i] = leaf;
+                    return new Collision(hash, updated);
+                }
+            }
+            Leaf[] grown = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, grown, 0, leaves.length);
+            grown[leaves.length] = leaf;
+            return new Collision(hash, grown);
+        }
+
+        /** @return this collision without {@code utxo}, or its only remaining leaf */
+        private Object without(int hash, UTXO utxo) {
+            if (hash != this.hash)
+                return this;
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].utxo.equals(utxo)) {
+                    if (leaves.length == 2)
+                        return leaves[1 - i];
+                    Leaf[] shrunk = new Leaf[leaves.length - 1];
+                    System.arraycopy(leaves, 0, shrunk, 0, i);
+                    System.arraycopy(leaves, i + 1, shrunk, i, leaves.length - i - 1);
+                    return new Collision(hash, shrunk);
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What connecting a block changed in the UTXO set: every UTXO its transactions and its coinbase
+ * spent or created, in order, with the output it was mapped to before and after. {@link #undo}
+ * disconnects the block from a pool that is in the state right after it, and {@link #redo}
+ * connects it again to a pool in the state right before it, without validating anything.
+ */
+public class UndoJournal {
+
+    /** Stands for "no output" in the overlay of {@link #of} */
+    private static final Transaction.Output ABSENT = new Transaction().new Output(0, null);
+
+    private final List<UTXO> utxos = new ArrayList<UTXO>();
+    private final List<Transaction.Output> before = new ArrayList<Transaction.Output>();
+    private final List<Transaction.Output> after = new ArrayList<Transaction.Output>();
+
+    private UndoJournal() {
+    }
+
+    /**
+     * Records the changes of applying {@code txs}, in order, and then {@code coinbase} to
+     * {@code utxoPool}, which is only read
+     */
+    public static UndoJournal of(UTXOPool utxoPool, List<Transaction> txs, Transaction coinbase) {
+        UndoJournal journal = new UndoJournal();
+        Map<UTXO, Transaction.Output> changed = new HashMap<UTXO, Transaction.Output>();
+        for (Transaction tx : txs) {
+            for (Transaction.Input input : tx.getInputs())
+                journal.Record(utxoPool, changed, new UTXO(input), null);
+            journal.RecordOutputs(utxoPool, changed, tx);
+        }
+        journal.RecordOutputs(utxoPool, changed, coinbase);
+        return journal;
+    }
+
+    /** Takes the block out of {@code utxoPool}, which must be in the state right after it */
+    public void undo(UTXOPool utxoPool) {
+        for (int i = utxos.size() - 1; i >= 0; i--)
+            Set(utxoPool, utxos.get(i), before.get(i));
+    }
+
+    /** Puts the block back into {@code utxoPool}, which must be in the state right before it */
+    public void redo(UTXOPool utxoPool) {
+        for (int i = 0; i < utxos.size(); i++)
+            Set(utxoPool, utxos.get(i), after.get(i));
+    }
+
+    /** @return the number of UTXOs changed, counting a UTXO once per change */
+    public int size() {
+        return utxos.size();
+    }
+
+    private void RecordOutputs(UTXOPool utxoPool, Map<UTXO, Transaction.Output> changed, Transaction tx) {
+        for (int index = 0; index < tx.numOutputs(); index++)
+            Record(utxoPool, changed, new UTXO(tx.getHash(), index), tx.getOutput(index));
+    }
+
+    private void Record(UTXOPool utxoPool, Map<UTXO, Transaction.Output> changed, UTXO utxo, Transaction.Output output) {
+        Transaction.Output previous = changed.get(utxo);
+        if (previous == null)
+            previous = utxoPool.getTxOutput(utxo);
+        utxos.add(utxo);
+        before.add(previous == ABSENT ? null : previous);
+        after.add(output);
+        changed.put(utxo, output == null ? ABSENT : output);
+    }
+
+    private static void Set(UTXOPool utxoPool, UTXO utxo, Transaction.Output output) {
+        if (output == null)
+            utxoPool.removeUTXO(utxo);
+        else
+            utxoPool.addUTXO(utxo, output);
+    }
+}
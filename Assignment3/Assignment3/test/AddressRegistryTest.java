@@ -0,0 +1,79 @@
+import org.junit.Test;
+
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AddressRegistryTest {
+
+    @Test
+    public void ShouldGiveEqualAddressesTheSameInstance() throws Exception {
+        PublicKey address = KeyPair().getPublic();
+        PublicKey sameAddress = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(address.getEncoded()));
+        AddressRegistry registry = new AddressRegistry();
+
+        AddressRegistry.Address interned = registry.intern(address);
+
+        assertThat(registry.intern(sameAddress) == interned, equalTo(true));
+        assertThat(interned.publicKey() == address, equalTo(true));
+        assertThat(registry.size(), equalTo(1));
+        assertThat(registry.intern(null) == null, equalTo(true));
+    }
+
+    @Test
+    public void ShouldDropAddressesNothingHoldsAnymore() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(512, new SecureRandom());
+        AddressRegistry registry = new AddressRegistry();
+        AddressRegistry.Address kept = registry.intern(generator.generateKeyPair().getPublic());
+        for (int i = 0; i < 10; i++)
+            registry.intern(generator.generateKeyPair().getPublic());
+
+        for (int attempt = 0; attempt < 50 && registry.size() > 1; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(registry.size(), equalTo(1));
+        assertThat(registry.intern(kept.publicKey()) == kept, equalTo(true));
+    }
+
+    @Test
+    public void PoolOutputsPaidToTheSameAddressShouldShareItsInstance() throws Exception {
+        PublicKey address = KeyPair().getPublic();
+        PublicKey sameAddress = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(address.getEncoded()));
+        UTXOPool pool = new UTXOPool();
+        UTXO first = new UTXO(new byte[32], 0);
+        UTXO second = new UTXO(new byte[32], 1);
+
+        pool.addUTXO(first, new Transaction().new Output(1, address));
+        pool.addUTXO(second, new Transaction().new Output(2, sameAddress));
+
+        assertThat(pool.getTxOutput(first).address == pool.getTxOutput(second).address, equalTo(true));
+        assertThat(pool.getTxOutput(second), equalTo(new Transaction().new Output(2, sameAddress)));
+    }
+
+    @Test
+    public void ShouldVerifySignaturesWithTheRegisteredAddress() throws Exception {
+        KeyPair keyPair = KeyPair();
+        byte[] message = {1, 2, 3};
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(message);
+        byte[] signature = signer.sign();
+        AddressRegistry registry = new AddressRegistry();
+        AddressRegistry.Address address = registry.intern(keyPair.getPublic());
+
+        assertThat(address.verifySignature(message, signature), equalTo(true));
+        assertThat(address.verifySignature(new byte[]{4}, signature), equalTo(false));
+        assertThat(registry.verifySignature(keyPair.getPublic(), message, signature), equalTo(true));
+    }
+
+    private KeyPair KeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, new SecureRandom());
+        return generator.generateKeyPair();
+    }
+}
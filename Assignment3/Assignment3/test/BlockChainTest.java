@@ -1,20 +1,29 @@
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.nio.file.Path;
 import java.security.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class BlockChainTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     @After
     public void setUp() throws Exception {
         BlockChain.CUT_OFF_AGE = 10;
+        BlockChain.CHECKPOINT_INTERVAL = 1000;
     }
 
     @Test
@@ -73,6 +82,117 @@ public class BlockChainTest {
         assertThat(blockChain.getMaxHeightBlock().getCoinbase(), equalTo(new Transaction(25, secondKeyPair.getPublic())));
     }
 
+    @Test
+    public void ShouldVerifyEachSignatureOfABlockOnce() throws Exception {
+        KeyPair genesisPair = KeyPair();
+        Block genesisBlock = new Block(null, genesisPair.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+
+        Block block = new Block(genesisBlock.getHash(), KeyPair().getPublic());
+        block.addTransaction(TransactionSpendingAllCoinBase(genesisBlock, genesisPair, KeyPair()));
+        block.finalize();
+        SignatureCache.getShared().clear();
+
+        assertThat(blockChain.addBlock(block), equalTo(true));
+        assertThat(SignatureCache.getShared().getMisses(), equalTo(1L));
+        assertThat(SignatureCache.getShared().getHits(), equalTo(0L));
+    }
+
+    @Test
+    public void ShouldLeaveChainUnchangedWhenABlockHasAnInvalidTransaction() throws Exception {
+        KeyPair genesisPair = KeyPair();
+        Block genesisBlock = new Block(null, genesisPair.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+
+        Transaction txSpendingGenesisCoinBase = TransactionSpendingAllCoinBase(genesisBlock, genesisPair, KeyPair());
+        Block invalidBlock = new Block(genesisBlock.getHash(), KeyPair().getPublic());
+        invalidBlock.addTransaction(txSpendingGenesisCoinBase);
+        invalidBlock.addTransaction(TransactionSpendingAllCoinBase(genesisBlock, genesisPair, KeyPair()));
+        invalidBlock.finalize();
+        Block validBlock = new Block(genesisBlock.getHash(), KeyPair().getPublic());
+        validBlock.addTransaction(txSpendingGenesisCoinBase);
+        validBlock.finalize();
+
+        assertThat(blockChain.addBlock(invalidBlock), equalTo(false));
+        assertThat(blockChain.getMaxHeightBlock(), equalTo(genesisBlock));
+        assertThat(blockChain.getMaxHeightUTXOPool().getAllUTXO(), equalTo(Arrays.asList(new UTXO(genesisBlock.getCoinbase().getHash(), 0))));
+        assertThat(blockChain.addBlock(validBlock), equalTo(true));
+    }
+
+    @Test
+    public void ShouldMoveUTXOSetToTheForkThatBecomesTheLongest() throws Exception {
+        KeyPair genesisPair = KeyPair();
+        Block genesisBlock = new Block(null, genesisPair.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+
+        Transaction mainSpend = TransactionSpendingAllCoinBase(genesisBlock, genesisPair, KeyPair());
+        Block mainBlock = new Block(genesisBlock.getHash(), KeyPair().getPublic());
+        mainBlock.addTransaction(mainSpend);
+        mainBlock.finalize();
+        Transaction forkSpend = TransactionSpendingAllCoinBase(genesisBlock, genesisPair, KeyPair());
+        Block firstForkBlock = new Block(genesisBlock.getHash(), KeyPair().getPublic());
+        firstForkBlock.addTransaction(forkSpend);
+        firstForkBlock.finalize();
+        Block secondForkBlock = new Block(firstForkBlock.getHash(), KeyPair().getPublic());
+        secondForkBlock.finalize();
+
+        assertThat(blockChain.addBlock(mainBlock), equalTo(true));
+        assertThat(blockChain.addBlock(firstForkBlock), equalTo(true));
+        assertThat(blockChain.getMaxHeightBlock(), equalTo(mainBlock));
+        assertThat(blockChain.getMaxHeightUTXOPool().contains(new UTXO(mainSpend.getHash(), 0)), equalTo(true));
+        assertThat(blockChain.addBlock(secondForkBlock), equalTo(true));
+
+        UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+        assertThat(blockChain.getMaxHeightBlock(), equalTo(secondForkBlock));
+        assertThat(utxoPool.size(), equalTo(3));
+        assertThat(utxoPool.contains(new UTXO(forkSpend.getHash(), 0)), equalTo(true));
+        assertThat(utxoPool.contains(new UTXO(firstForkBlock.getCoinbase().getHash(), 0)), equalTo(true));
+        assertThat(utxoPool.contains(new UTXO(secondForkBlock.getCoinbase().getHash(), 0)), equalTo(true));
+        assertThat(utxoPool.contains(new UTXO(mainSpend.getHash(), 0)), equalTo(false));
+    }
+
+    @Test
+    public void ShouldExtendAForkThatBranchedOffBelowTheCutOff() throws Exception {
+        BlockChain.CUT_OFF_AGE = 2;
+        PublicKey miner = KeyPair().getPublic();
+        Block genesisBlock = new Block(null, miner);
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+
+        Block firstBlock = EmptyBlock(genesisBlock, miner);
+        Block secondBlock = EmptyBlock(firstBlock, miner);
+        Block forkBlock = new Block(firstBlock.getHash(), KeyPair().getPublic());
+        forkBlock.addTransaction(ZeroValueTransaction(miner));
+        forkBlock.finalize();
+        Block thirdBlock = EmptyBlock(secondBlock, miner);
+        Block fourthBlock = EmptyBlock(thirdBlock, miner);
+        for (Block block : Arrays.asList(firstBlock, secondBlock, forkBlock, thirdBlock, fourthBlock))
+            assertThat(blockChain.addBlock(block), equalTo(true));
+
+        Block onFork = EmptyBlock(forkBlock, KeyPair().getPublic());
+        assertThat(blockChain.addBlock(onFork), equalTo(true));
+        assertThat(blockChain.getMaxHeightBlock(), equalTo(fourthBlock));
+        assertThat(blockChain.getMaxHeightUTXOPool().size(), equalTo(1));
+    }
+
+    @Test
+    public void ShouldFindParentByContentOfItsHash() throws Exception {
+        KeyPair genesisPair = KeyPair();
+        Block genesisBlock = new Block(null, genesisPair.getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+
+        byte[] deserializedParentHash = Arrays.copyOf(genesisBlock.getHash(), genesisBlock.getHash().length);
+        Block block = new Block(deserializedParentHash, KeyPair().getPublic());
+        block.finalize();
+
+        assertThat(blockChain.addBlock(block), equalTo(true));
+        assertThat(blockChain.getMaxHeightBlock(), equalTo(block));
+    }
+
     @Test
     public void ShouldNotBeValidToAddBlockThatViolatesTheHeightConstraint() throws Exception {
 
@@ -102,6 +222,207 @@ public class BlockChainTest {
         assertThat(blockChain.addBlock(invalidHeightBlock), equalTo(false));
     }
 
+    @Test
+    public void ShouldKeepOnlyTheBlocksAndJournalsThatCanStillBeExtendedAsOutputsAndAddressesChurn() throws Exception {
+        int blocks = 200;
+        int spendAfter = 5;
+        KeyPair[] miners = {KeyPair(), KeyPair(), KeyPair()};
+        KeyPair[] owners = {KeyPair(), KeyPair(), KeyPair(), KeyPair()};
+        Block genesisBlock = new Block(null, owners[0].getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        Transaction zeroTx = ZeroValueTransaction(miners[0].getPublic());
+
+        List<Transaction> payments = new ArrayList<>();
+        int maxRetainedBlocks = 0;
+        int maxRetainedJournalSize = 0;
+        for (int height = 1; height <= blocks; height++) {
+            byte[] parentHash = blockChain.getMaxHeightBlock().getHash();
+            Transaction payment = NextChurningPayment(genesisBlock, payments, owners, spendAfter);
+            payments.add(payment);
+            Block block = new Block(parentHash, miners[height % miners.length].getPublic());
+            block.addTransaction(payment);
+            block.finalize();
+            assertThat(blockChain.addBlock(block), equalTo(true));
+            if (height % 10 == 0) {
+                Block fork = new Block(parentHash, miners[(height + 1) % miners.length].getPublic());
+                fork.addTransaction(zeroTx);
+                fork.finalize();
+                assertThat(blockChain.addBlock(fork), equalTo(true));
+            }
+            maxRetainedBlocks = Math.max(maxRetainedBlocks, blockChain.getRetainedBlockCount());
+            maxRetainedJournalSize = Math.max(maxRetainedJournalSize, blockChain.getRetainedJournalSize());
+        }
+
+        // a block changes at most five UTXOs: the two its payment spends, the two it pays and its coinbase
+        assertThat(maxRetainedBlocks <= 2 * (BlockChain.CUT_OFF_AGE + 1), equalTo(true));
+        assertThat(maxRetainedJournalSize <= 5 * 2 * (BlockChain.CUT_OFF_AGE + 1), equalTo(true));
+        // the last payment, the second outputs not spent yet and a coinbase per miner
+        assertThat(blockChain.getMaxHeightUTXOPool().size(), equalTo(1 + spendAfter + miners.length));
+        Block onPrunedParent = new Block(genesisBlock.getHash(), miners[0].getPublic());
+        onPrunedParent.finalize();
+        assertThat(blockChain.addBlock(onPrunedParent), equalTo(false));
+    }
+
+    @Test
+    public void ShouldKeepOnlyTheBlocksAboveTheCutOffWhileTwoForksKeepOvertakingEachOther() throws Exception {
+        int blocks = 400;
+        KeyPair[] miners = {KeyPair(), KeyPair()};
+        Block genesisBlock = new Block(null, KeyPair().getPublic());
+        genesisBlock.finalize();
+        BlockChain blockChain = new BlockChain(genesisBlock);
+        Block[] tips = {genesisBlock, genesisBlock};
+        int[] heights = {0, 0};
+        int leader = 0;
+
+        int maxRetainedBlocks = 0;
+        int maxRetainedJournalSize = 0;
+        for (int i = 0; i < blocks; i++) {
+            // each fork is extended twice in a row, so the other one overtakes it every other block
+            int fork = (i + 1) / 2 % 2;
+            Block block = new Block(tips[fork].getHash(), miners[fork].getPublic());
+            block.addTransaction(ZeroValueTransaction(miners[fork].getPublic()));
+            block.finalize();
+            tips[fork] = block;
+            heights[fork]++;
+            if (heights[fork] > heights[leader])
+                leader = fork;
+            assertThat(blockChain.addBlock(block), equalTo(true));
+            assertThat(blockChain.getMaxHeightBlock(), equalTo(tips[leader]));
+            maxRetainedBlocks = Math.max(maxRetainedBlocks, blockChain.getRetainedBlockCount());
+            maxRetainedJournalSize = Math.max(maxRetainedJournalSize, blockChain.getRetainedJournalSize());
+        }
+
+        // the forks share no block above the cut-off, and a block only records its two outputs
+        assertThat(maxRetainedBlocks <= 2 * (BlockChain.CUT_OFF_AGE + 1), equalTo(true));
+        assertThat(maxRetainedJournalSize <= 2 * 2 * (BlockChain.CUT_OFF_AGE + 1), equalTo(true));
+        // the blocks of a fork all pay the same two outputs, so its UTXO set is those and the genesis coinbase
+        UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+        assertThat(utxoPool.size(), equalTo(3));
+        assertThat(utxoPool.contains(new UTXO(tips[leader].getCoinbase().getHash(), 0)), equalTo(true));
+        assertThat(utxoPool.contains(new UTXO(tips[1 - leader].getCoinbase().getHash(), 0)), equalTo(false));
+    }
+
+    @Test
+    public void ShouldKeepAddingBlocksAfterCommittingItsUTXOSetAndReopenFromIt() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("utxos");
+        KeyPair miner = KeyPair();
+        KeyPair receiver = KeyPair();
+        Block genesisBlock = new Block(null, miner.getPublic());
+        genesisBlock.finalize();
+
+        Block tip;
+        HashSet<UTXO> utxos;
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            BlockChain blockChain = new BlockChain(genesisBlock, new UTXOPool(store));
+            Block firstBlock = new Block(genesisBlock.getHash(), receiver.getPublic());
+            firstBlock.addTransaction(TransactionSpendingAllCoinBase(genesisBlock, miner, receiver));
+            firstBlock.finalize();
+            assertThat(blockChain.addBlock(firstBlock), equalTo(true));
+            blockChain.commit();
+
+            Block secondBlock = new Block(firstBlock.getHash(), miner.getPublic());
+            secondBlock.addTransaction(TransactionSpendingAllCoinBase(firstBlock, receiver, KeyPair()));
+            secondBlock.finalize();
+            assertThat(blockChain.addBlock(secondBlock), equalTo(true));
+            tip = EmptyBlock(secondBlock, miner.getPublic());
+            assertThat(blockChain.addBlock(tip), equalTo(true));
+            blockChain.commit();
+            utxos = new HashSet<>(blockChain.getMaxHeightUTXOPool().getAllUTXO());
+        }
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            BlockChain blockChain = new BlockChain(tip, new UTXOPool(store));
+
+            assertThat(new HashSet<>(blockChain.getMaxHeightUTXOPool().getAllUTXO()), equalTo(utxos));
+            assertThat(blockChain.addBlock(EmptyBlock(tip, receiver.getPublic())), equalTo(true));
+        }
+    }
+
+    @Test
+    public void ShouldMoveToAForkWithNoRetainedBlockInCommonAfterCommittingItsUTXOSet() throws Exception {
+        BlockChain.CUT_OFF_AGE = 2;
+        KeyPair genesisPair = KeyPair();
+        KeyPair receiver = KeyPair();
+        Block genesisBlock = new Block(null, genesisPair.getPublic());
+        genesisBlock.finalize();
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(folder.getRoot().toPath().resolve("utxos"))) {
+            BlockChain blockChain = new BlockChain(genesisBlock, new UTXOPool(store));
+            Block firstBlock = EmptyBlock(genesisBlock, KeyPair().getPublic());
+            Block secondBlock = EmptyBlock(firstBlock, KeyPair().getPublic());
+            Transaction forkSpend = TransactionSpendingAllCoinBase(genesisBlock, genesisPair, receiver);
+            Block forkBlock = new Block(firstBlock.getHash(), KeyPair().getPublic());
+            forkBlock.addTransaction(forkSpend);
+            forkBlock.finalize();
+            Block thirdBlock = EmptyBlock(secondBlock, KeyPair().getPublic());
+            Block fourthBlock = EmptyBlock(thirdBlock, KeyPair().getPublic());
+            for (Block block : Arrays.asList(firstBlock, secondBlock, forkBlock, thirdBlock, fourthBlock))
+                assertThat(blockChain.addBlock(block), equalTo(true));
+            blockChain.commit();
+
+            Transaction onForkSpend = new Transaction();
+            onForkSpend.addInput(forkSpend.getHash(), 0);
+            onForkSpend.addOutput(25, genesisPair.getPublic());
+            onForkSpend.addSignature(SignatureForSingleInputTx(onForkSpend, receiver).sign(), 0);
+            onForkSpend.finalize();
+            Block onFork = new Block(forkBlock.getHash(), KeyPair().getPublic());
+            onFork.addTransaction(onForkSpend);
+            onFork.finalize();
+            assertThat(blockChain.addBlock(onFork), equalTo(true));
+
+            UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+            assertThat(blockChain.getMaxHeightBlock(), equalTo(fourthBlock));
+            assertThat(utxoPool.contains(new UTXO(genesisBlock.getCoinbase().getHash(), 0)), equalTo(true));
+            assertThat(utxoPool.contains(new UTXO(forkSpend.getHash(), 0)), equalTo(false));
+            assertThat(utxoPool.contains(new UTXO(onForkSpend.getHash(), 0)), equalTo(false));
+        }
+    }
+
+    @Test
+    public void ShouldReopenFromBlockStoreWithoutValidatingBlocksAgain() throws Exception {
+        BlockChain.CUT_OFF_AGE = 3;
+        BlockChain.CHECKPOINT_INTERVAL = 5;
+        Path directory = folder.getRoot().toPath().resolve("blocks");
+        KeyPair miner = KeyPair();
+        KeyPair receiver = KeyPair();
+        Block genesisBlock = new Block(null, miner.getPublic());
+        genesisBlock.finalize();
+
+        Block tip;
+        HashSet<UTXO> utxos;
+        try (BlockStore blockStore = BlockStore.open(directory)) {
+            BlockChain blockChain = new BlockChain(genesisBlock, blockStore);
+            Block block = new Block(genesisBlock.getHash(), miner.getPublic());
+            block.addTransaction(TransactionSpendingAllCoinBase(genesisBlock, miner, receiver));
+            block.finalize();
+            assertThat(blockChain.addBlock(block), equalTo(true));
+            for (int height = 2; height <= 9; height++) {
+                Block parent = blockChain.getMaxHeightBlock();
+                assertThat(blockChain.addBlock(EmptyBlock(parent, miner.getPublic())), equalTo(true));
+                if (height % 3 == 0) {
+                    Block fork = new Block(parent.getHash(), receiver.getPublic());
+                    fork.addTransaction(ZeroValueTransaction(receiver.getPublic()));
+                    fork.finalize();
+                    assertThat(blockChain.addBlock(fork), equalTo(true));
+                }
+            }
+            tip = blockChain.getMaxHeightBlock();
+            utxos = new HashSet<>(blockChain.getMaxHeightUTXOPool().getAllUTXO());
+        }
+
+        long verifications = SignatureCache.getShared().getHits() + SignatureCache.getShared().getMisses();
+        try (BlockStore blockStore = BlockStore.open(directory)) {
+            BlockChain blockChain = new BlockChain(genesisBlock, blockStore);
+
+            assertThat(SignatureCache.getShared().getHits() + SignatureCache.getShared().getMisses(), equalTo(verifications));
+            assertThat(blockChain.getMaxHeightBlock().getHash(), equalTo(tip.getHash()));
+            assertThat(new HashSet<>(blockChain.getMaxHeightUTXOPool().getAllUTXO()), equalTo(utxos));
+            assertThat(blockChain.getRetainedBlockCount() <= 2 * (BlockChain.CUT_OFF_AGE + 1), equalTo(true));
+            assertThat(blockChain.addBlock(EmptyBlock(tip, miner.getPublic())), equalTo(true));
+        }
+    }
+
     @Test
     public void ShouldAddTransactionToPool() throws Exception {
         KeyPair genesisPair = KeyPair();
@@ -134,6 +455,110 @@ public class BlockChainTest {
         assertThat(blockChain.getTransactionPool().getTransactions().isEmpty(), equalTo(true));
     }
 
+    @Test
+    public void HandlerShouldMineFromTheMempoolItKeepsAcrossBlocks() throws Exception {
+        KeyPair genesisPair = KeyPair();
+        KeyPair miner = KeyPair();
+        KeyPair receiver = KeyPair();
+        Block genesisBlock = new Block(null, genesisPair.getPublic());
+        genesisBlock.finalize();
+        BlockHandler blockHandler = new BlockHandler(new BlockChain(genesisBlock));
+        Transaction tx = TransactionSpendingAllCoinBase(genesisBlock, genesisPair, receiver);
+        Transaction child = new Transaction();
+        child.addInput(tx.getHash(), 0);
+        child.addOutput(25, miner.getPublic());
+        child.addSignature(SignatureForSingleInputTx(child, receiver).sign(), 0);
+        child.finalize();
+
+        blockHandler.processTx(child);
+        blockHandler.processTx(tx);
+        Block first = blockHandler.createBlock(miner.getPublic());
+        blockHandler.processTx(TransactionSpendingAllCoinBase(genesisBlock, genesisPair, miner));
+        Transaction spendingFirstCoinbase = TransactionSpendingAllCoinBase(first, miner, receiver);
+        blockHandler.processTx(spendingFirstCoinbase);
+        Block minedElsewhere = new Block(first.getHash(), receiver.getPublic());
+        minedElsewhere.addTransaction(spendingFirstCoinbase);
+        minedElsewhere.finalize();
+        assertThat(blockHandler.processBlock(minedElsewhere), equalTo(true));
+        Transaction spendingMinedElsewhereCoinbase = TransactionSpendingAllCoinBase(minedElsewhere, receiver, miner);
+        blockHandler.processTx(spendingMinedElsewhereCoinbase);
+        Block third = blockHandler.createBlock(miner.getPublic());
+
+        assertThat(first.getTransactions(), equalTo(new ArrayList<>(Arrays.asList(tx, child))));
+        assertThat(third.getTransactions(), equalTo(new ArrayList<>(Arrays.asList(spendingMinedElsewhereCoinbase))));
+    }
+
+    @Test
+    public void HandlerShouldKeepMiningFromItsMempoolAfterTheChainIsCommitted() throws Exception {
+        KeyPair genesisPair = KeyPair();
+        KeyPair miner = KeyPair();
+        Block genesisBlock = new Block(null, genesisPair.getPublic());
+        genesisBlock.finalize();
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(folder.getRoot().toPath().resolve("utxos"))) {
+            BlockChain blockChain = new BlockChain(genesisBlock, new UTXOPool(store));
+            BlockHandler blockHandler = new BlockHandler(blockChain);
+            Block first = blockHandler.createBlock(miner.getPublic());
+            blockChain.commit();
+            Transaction tx = TransactionSpendingAllCoinBase(genesisBlock, genesisPair, miner);
+            blockHandler.processTx(tx);
+            blockChain.commit();
+            Block second = blockHandler.createBlock(miner.getPublic());
+
+            assertThat(second.getPrevBlockHash(), equalTo(first.getHash()));
+            assertThat(second.getTransactions(), equalTo(new ArrayList<>(Arrays.asList(tx))));
+        }
+    }
+
+    /** A valid transaction that gives a block a hash of its own, where an empty one adds no bytes */
+    private Transaction ZeroValueTransaction(PublicKey address) {
+        Transaction tx = new Transaction();
+        tx.addOutput(0, address);
+        tx.finalize();
+        return tx;
+    }
+
+    /**
+     * The next payment of a chain moving coins between {@code owners}: it spends the first output of
+     * the previous payment, or the genesis coinbase, and the second output of the payment
+     * {@code spendAfter} payments back, and pays all but 1 to the next owner and 1 to the one after
+     */
+    private Transaction NextChurningPayment(Block genesisBlock, List<Transaction> payments, KeyPair[] owners, int spendAfter) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        int n = payments.size();
+        List<KeyPair> signers = new ArrayList<>();
+        Transaction tx = new Transaction();
+        double value = 25;
+        if (n == 0) {
+            tx.addInput(genesisBlock.getCoinbase().getHash(), 0);
+        } else {
+            Transaction previous = payments.get(n - 1);
+            tx.addInput(previous.getHash(), 0);
+            value = previous.getOutput(0).value;
+        }
+        signers.add(owners[n % owners.length]);
+        if (n >= spendAfter) {
+            tx.addInput(payments.get(n - spendAfter).getHash(), 1);
+            signers.add(owners[(n - spendAfter + 2) % owners.length]);
+            value += 1;
+        }
+        tx.addOutput(value - 1, owners[(n + 1) % owners.length].getPublic());
+        tx.addOutput(1, owners[(n + 2) % owners.length].getPublic());
+        for (int i = 0; i < signers.size(); i++) {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(signers.get(i).getPrivate());
+            signature.update(tx.getRawDataToSign(i));
+            tx.addSignature(signature.sign(), i);
+        }
+        tx.finalize();
+        return tx;
+    }
+
+    private Block EmptyBlock(Block parent, PublicKey miner) {
+        Block block = new Block(parent.getHash(), miner);
+        block.finalize();
+        return block;
+    }
+
     private Transaction TransactionSpendingAllCoinBase(Block block, KeyPair blockMiner, KeyPair receiver) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
         Transaction tx = new Transaction();
         tx.addInput(block.getCoinbase().getHash(), 0);
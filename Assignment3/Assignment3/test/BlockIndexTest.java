@@ -0,0 +1,65 @@
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BlockIndexTest {
+
+    @Test
+    public void ShouldFindBlockByContentOfItsHash() throws Exception {
+        Block genesisBlock = FinalizedBlock(null, 0);
+        BlockIndex index = new BlockIndex();
+        index.add(new BlockChainNode(genesisBlock, null, 0));
+
+        byte[] deserializedHash = Arrays.copyOf(genesisBlock.getHash(), genesisBlock.getHash().length);
+
+        assertThat(index.contains(deserializedHash), equalTo(true));
+        assertThat(index.get(deserializedHash).getBlock(), equalTo(genesisBlock));
+        assertThat(BlockHash.of(deserializedHash), equalTo(BlockHash.of(genesisBlock.getHash())));
+        assertThat(BlockHash.of(deserializedHash).hashCode(), equalTo(BlockHash.of(genesisBlock.getHash()).hashCode()));
+    }
+
+    @Test
+    public void ShouldIndexBlocksByHeightAndByParent() throws Exception {
+        Block genesisBlock = FinalizedBlock(null, 0);
+        Block firstFork = FinalizedBlock(genesisBlock.getHash(), 1);
+        Block secondFork = FinalizedBlock(genesisBlock.getHash(), 2);
+        Block childOfFirstFork = FinalizedBlock(firstFork.getHash(), 3);
+        BlockIndex index = new BlockIndex();
+        BlockChainNode genesisNode = new BlockChainNode(genesisBlock, null, 0);
+        BlockChainNode firstForkNode = new BlockChainNode(firstFork, null, 1);
+        BlockChainNode secondForkNode = new BlockChainNode(secondFork, null, 1);
+        BlockChainNode childNode = new BlockChainNode(childOfFirstFork, null, 2);
+        for (BlockChainNode node : Arrays.asList(genesisNode, firstForkNode, secondForkNode, childNode))
+            index.add(node);
+
+        assertThat(index.size(), equalTo(4));
+        assertThat(index.atHeight(1), equalTo(Arrays.asList(firstForkNode, secondForkNode)));
+        assertThat(index.atHeight(3).isEmpty(), equalTo(true));
+        assertThat(index.childrenOf(genesisNode.getHash()), equalTo(Arrays.asList(firstForkNode, secondForkNode)));
+        assertThat(index.childrenOf(firstForkNode.getHash()), equalTo(Arrays.asList(childNode)));
+        assertThat(index.parentOf(childNode), equalTo(firstForkNode));
+    }
+
+    private Block FinalizedBlock(byte[] prevHash, int nonce) throws NoSuchAlgorithmException {
+        Block block = new Block(prevHash, Address());
+        Transaction tx = new Transaction();
+        tx.addInput(new byte[]{(byte) nonce}, 0);
+        tx.finalize();
+        block.addTransaction(tx);
+        block.finalize();
+        return block;
+    }
+
+    private PublicKey Address() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, new SecureRandom());
+        return generator.generateKeyPair().getPublic();
+    }
+}
@@ -0,0 +1,88 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.security.*;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BlockStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ShouldReadBackTheSameRawBlockAfterReopening() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("blocks");
+        KeyPair miner = KeyPair();
+        KeyPair receiver = KeyPair();
+        Block genesisBlock = new Block(null, miner.getPublic());
+        genesisBlock.finalize();
+        Block block = new Block(genesisBlock.getHash(), receiver.getPublic());
+        block.addTransaction(Spending(genesisBlock, miner, receiver));
+        block.finalize();
+
+        try (BlockStore store = BlockStore.open(directory)) {
+            store.append(genesisBlock, 0);
+            store.append(block, 1);
+        }
+
+        try (BlockStore store = BlockStore.open(directory)) {
+            Block read = store.get(block.getHash());
+            assertThat(store.size(), equalTo(2));
+            assertThat(store.heightOf(block.getHash()), equalTo(1));
+            assertThat(read.getRawBlock(), equalTo(block.getRawBlock()));
+            assertThat(read.getCoinbase(), equalTo(block.getCoinbase()));
+            assertThat(read.getTransaction(0), equalTo(block.getTransaction(0)));
+        }
+    }
+
+    @Test
+    public void ShouldCutOffATornLastRecordWhenReopening() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("blocks");
+        PublicKey miner = KeyPair().getPublic();
+        Block genesisBlock = new Block(null, miner);
+        genesisBlock.finalize();
+        Block block = new Block(genesisBlock.getHash(), miner);
+        block.finalize();
+
+        try (BlockStore store = BlockStore.open(directory)) {
+            store.append(genesisBlock, 0);
+        }
+        Path segment = directory.resolve("blocks-00000.dat");
+        long intact;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            intact = file.length();
+            file.seek(intact);
+            file.writeInt(1000);
+            file.writeInt(0);
+        }
+
+        try (BlockStore store = BlockStore.open(directory)) {
+            assertThat(segment.toFile().length(), equalTo(intact));
+            store.append(block, 1);
+            assertThat(store.get(block.getHash()).getRawBlock(), equalTo(block.getRawBlock()));
+        }
+    }
+
+    private Transaction Spending(Block block, KeyPair owner, KeyPair receiver) throws GeneralSecurityException {
+        Transaction tx = new Transaction();
+        tx.addInput(block.getCoinbase().getHash(), 0);
+        tx.addOutput(25, receiver.getPublic());
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(owner.getPrivate());
+        signature.update(tx.getRawDataToSign(0));
+        tx.addSignature(signature.sign(), 0);
+        tx.finalize();
+        return tx;
+    }
+
+    private KeyPair KeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, new SecureRandom());
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FeeMempoolTest {
+
+    private PublicKey address;
+
+    @Test
+    public void ShouldListTransactionsInTheOrderTheyWouldBeDrainedWithoutRemovingThem() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        address = generator.generateKeyPair().getPublic();
+        UTXOPool utxoPool = new UTXOPool();
+        for (byte i = 1; i <= 3; i++)
+            utxoPool.addUTXO(new UTXO(new byte[]{i}, 0), new Transaction().new Output(10, address));
+        Transaction lowFeeParent = ATransaction(new byte[]{1}, 0, 8, new byte[]{11});
+        Transaction highFeeChild = ATransaction(new byte[]{11}, 0, 3, new byte[]{12});
+        Transaction sibling = ATransaction(new byte[]{11}, 1, 0.5, new byte[]{13});
+        Transaction mediumFee = ATransaction(new byte[]{2}, 0, 6, new byte[]{14});
+        Transaction lowFee = ATransaction(new byte[]{3}, 0, 9, new byte[]{15});
+        Transaction unknownFee = ATransaction(new byte[]{4}, 0, 1, new byte[]{16});
+        lowFeeParent.addOutput(2, address);
+        lowFeeParent.setHash(new byte[]{11});
+        FeeMempool mempool = new FeeMempool(utxoPool);
+        FeeMempool drained = new FeeMempool(utxoPool);
+        for (Transaction tx : new Transaction[]{unknownFee, lowFee, sibling, highFeeChild, mediumFee, lowFeeParent}) {
+            mempool.add(tx);
+            drained.add(tx);
+        }
+
+        Transaction[] inPackageOrder = mempool.inPackageOrder();
+
+        assertThat(inPackageOrder, equalTo(drained.drainInPackageOrder()));
+        assertThat(inPackageOrder, equalTo(new Transaction[]{mediumFee, lowFeeParent, highFeeChild, sibling, lowFee, unknownFee}));
+        assertThat(mempool.size(), equalTo(6));
+        assertThat(mempool.getAncestorCount(sibling), equalTo(2));
+    }
+
+    private Transaction ATransaction(byte[] previousTransaction, int index, double value, byte[] txHash) {
+        Transaction transaction = new Transaction();
+        transaction.addInput(previousTransaction, index);
+        transaction.addOutput(value, address);
+        transaction.addSignature(new byte[]{0}, 0);
+        transaction.setHash(txHash);
+        return transaction;
+    }
+}
@@ -0,0 +1,160 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.*;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MappedUTXOStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ShouldFindTheSameUTXOsAfterReopeningTheFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("utxos");
+        PublicKey address = KeyPair().getPublic();
+        Random random = new Random(1);
+        HashMap<UTXO, Double> expected = new HashMap<>();
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            for (int i = 0; i < 5000; i++) {
+                UTXO utxo = new UTXO(RandomHash(random), i % 3);
+                store.put(utxo, new Transaction().new Output(i, address));
+                expected.put(utxo, (double) i);
+            }
+            for (UTXO utxo : new HashSet<>(expected.keySet())) {
+                if (random.nextBoolean()) {
+                    store.remove(utxo);
+                    expected.remove(utxo);
+                }
+            }
+        }
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            assertThat(store.size(), equalTo(expected.size()));
+            assertThat(new HashSet<>(store.keys()), equalTo(expected.keySet()));
+            for (UTXO utxo : expected.keySet()) {
+                assertThat(store.get(utxo), equalTo(new Transaction().new Output(expected.get(utxo), address)));
+            }
+        }
+    }
+
+    @Test
+    public void CopyShouldKeepItsChangesOffTheFileUntilCommitted() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("utxos");
+        KeyPair owner = KeyPair();
+        KeyPair receiver = KeyPair();
+        Transaction coinbase = new Transaction(25, owner.getPublic());
+        UTXO coin = new UTXO(coinbase.getHash(), 0);
+        Transaction tx = new Transaction();
+        tx.addInput(coinbase.getHash(), 0);
+        tx.addOutput(25, receiver.getPublic());
+        tx.addSignature(Sign(tx.getRawDataToSign(0), owner), 0);
+        tx.finalize();
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            store.put(coin, coinbase.getOutput(0));
+            TxHandler txHandler = new TxHandler(new UTXOPool(store));
+
+            assertThat(txHandler.handleTxs(new Transaction[]{tx}).length, equalTo(1));
+            assertThat(store.containsKey(coin), equalTo(true));
+            txHandler.getUTXOPool().commit();
+        }
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            assertThat(store.containsKey(coin), equalTo(false));
+            assertThat(store.get(new UTXO(tx.getHash(), 0)), equalTo(tx.getOutput(0)));
+            assertThat(store.size(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void ShouldReadAddressesBackFromTheKeysFileAndWriteEachOnlyOnce() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("utxos");
+        Path keysFile = folder.getRoot().toPath().resolve("utxos.keys");
+        Random random = new Random(1);
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        PublicKey[] addresses = new PublicKey[AddressFile.CACHE_CAPACITY + 1000];
+        for (int i = 0; i < addresses.length; i++)
+            addresses[i] = keyFactory.generatePublic(new RSAPublicKeySpec(new BigInteger(512, random).setBit(511), BigInteger.valueOf(65537)));
+        UTXO[] utxos = new UTXO[addresses.length];
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            for (int i = 0; i < addresses.length; i++) {
+                utxos[i] = new UTXO(RandomHash(random), 0);
+                store.put(utxos[i], new Transaction().new Output(i, addresses[i]));
+            }
+        }
+        long keysLength = Files.size(keysFile);
+        Files.delete(folder.getRoot().toPath().resolve("utxos.keys.index"));
+
+        try (MappedUTXOStore store = MappedUTXOStore.open(file)) {
+            for (int i = 0; i < addresses.length; i++)
+                assertThat(store.get(utxos[i]), equalTo(new Transaction().new Output(i, addresses[i])));
+            store.put(new UTXO(RandomHash(random), 1), new Transaction().new Output(1, addresses[0]));
+            store.put(new UTXO(RandomHash(random), 1), new Transaction().new Output(1, addresses[addresses.length - 1]));
+        }
+        assertThat(Files.size(keysFile), equalTo(keysLength));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ShouldRefuseACopyTakenBeforeTheFileChanged() throws Exception {
+        try (MappedUTXOStore store = MappedUTXOStore.open(folder.getRoot().toPath().resolve("utxos"))) {
+            UTXOPool copy = new UTXOPool(new UTXOPool(store));
+            store.put(new UTXO(new byte[32], 0), new Transaction().new Output(1, null));
+
+            copy.contains(new UTXO(new byte[32], 0));
+        }
+    }
+
+    @Test
+    public void CopiesKeptWhenCommittingShouldKeepTheirEntries() throws Exception {
+        try (MappedUTXOStore store = MappedUTXOStore.open(folder.getRoot().toPath().resolve("utxos"))) {
+            UTXO spent = new UTXO(new byte[32], 0);
+            UTXO created = new UTXO(new byte[32], 1);
+            store.put(spent, new Transaction().new Output(1, null));
+            UTXOPool committed = new UTXOPool(new UTXOPool(store));
+            UTXOPool kept = new UTXOPool(committed);
+            committed.removeUTXO(spent);
+            committed.addUTXO(created, new Transaction().new Output(2, null));
+
+            committed.commit(Arrays.asList(kept));
+
+            assertThat(store.containsKey(spent), equalTo(false));
+            assertThat(kept.contains(spent), equalTo(true));
+            assertThat(kept.contains(created), equalTo(false));
+            assertThat(new HashSet<>(kept.getAllUTXO()), equalTo(new HashSet<>(Arrays.asList(spent))));
+            assertThat(committed.getAllUTXO(), equalTo(Arrays.asList(created)));
+        }
+    }
+
+    private byte[] RandomHash(Random random) {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    private byte[] Sign(byte[] message, KeyPair keyPair) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(message);
+        return signature.sign();
+    }
+
+    private KeyPair KeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, new SecureRandom());
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.Test;
+
+import java.security.*;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SignatureCacheTest {
+
+    @Test
+    public void ShouldVerifyAValidSignatureOnlyOnce() throws Exception {
+        KeyPair keyPair = KeyPair();
+        byte[] message = {1, 2, 3};
+        byte[] signature = Sign(message, keyPair);
+        SignatureCache cache = new SignatureCache(10);
+
+        assertThat(cache.verifySignature(keyPair.getPublic(), message, signature), equalTo(true));
+        assertThat(cache.verifySignature(keyPair.getPublic(), message, signature), equalTo(true));
+        assertThat(cache.getMisses(), equalTo(1L));
+        assertThat(cache.getHits(), equalTo(1L));
+    }
+
+    @Test
+    public void ShouldNotRememberInvalidSignatures() throws Exception {
+        KeyPair keyPair = KeyPair();
+        byte[] signature = Sign(new byte[]{1, 2, 3}, keyPair);
+        SignatureCache cache = new SignatureCache(10);
+
+        assertThat(cache.verifySignature(keyPair.getPublic(), new byte[]{4, 5, 6}, signature), equalTo(false));
+        assertThat(cache.verifySignature(keyPair.getPublic(), new byte[]{4, 5, 6}, signature), equalTo(false));
+        assertThat(cache.getHits(), equalTo(0L));
+        assertThat(cache.size(), equalTo(0));
+    }
+
+    @Test
+    public void ShouldAnswerInvalidForANullKey() throws Exception {
+        byte[] message = {1, 2, 3};
+        byte[] signature = Sign(message, KeyPair());
+        SignatureCache cache = new SignatureCache(10);
+
+        assertThat(cache.verifySignature(null, message, signature), equalTo(false));
+        assertThat(cache.size(), equalTo(0));
+    }
+
+    @Test
+    public void ShouldEvictLeastRecentlyUsedSignatureWhenFull() throws Exception {
+        KeyPair keyPair = KeyPair();
+        byte[] first = {1};
+        byte[] second = {2};
+        byte[] third = {3};
+        SignatureCache cache = new SignatureCache(2);
+
+        cache.verifySignature(keyPair.getPublic(), first, Sign(first, keyPair));
+        cache.verifySignature(keyPair.getPublic(), second, Sign(second, keyPair));
+        cache.verifySignature(keyPair.getPublic(), first, Sign(first, keyPair));
+        cache.verifySignature(keyPair.getPublic(), third, Sign(third, keyPair));
+        cache.verifySignature(keyPair.getPublic(), second, Sign(second, keyPair));
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.getHits(), equalTo(1L));
+        assertThat(cache.getMisses(), equalTo(4L));
+    }
+
+    private byte[] Sign(byte[] message, KeyPair keyPair) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(message);
+        return signature.sign();
+    }
+
+    private KeyPair KeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, new SecureRandom());
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.Test;
+
+import java.security.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SignatureVerifierTest {
+
+    @Test
+    public void VerifyAllShouldAnswerEachRequestAtItsPosition() throws Exception {
+        KeyPair keyPair = KeyPair();
+        byte[] message = {1, 2, 3};
+        byte[] signature = Sign(message, keyPair);
+        boolean[] valid;
+
+        try (SignatureVerifier verifier = SignatureVerifier.withParallelism(2)) {
+            valid = verifier.verifyAll(Arrays.asList(
+                    new SignatureVerifier.VerifyRequest(keyPair.getPublic(), message, signature),
+                    new SignatureVerifier.VerifyRequest(keyPair.getPublic(), new byte[]{4}, signature),
+                    new SignatureVerifier.VerifyRequest(keyPair.getPublic(), message, new byte[]{5}),
+                    new SignatureVerifier.VerifyRequest(keyPair.getPublic(), message, signature)));
+        }
+
+        assertThat(valid, equalTo(new boolean[]{true, false, false, true}));
+    }
+
+    @Test
+    public void CloseShouldLeaveTheCallersExecutorRunning() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new SignatureVerifier(executor).close();
+
+            assertThat(executor.isShutdown(), equalTo(false));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private byte[] Sign(byte[] message, KeyPair keyPair) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(message);
+        return signature.sign();
+    }
+
+    private KeyPair KeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, new SecureRandom());
+        return generator.generateKeyPair();
+    }
+}
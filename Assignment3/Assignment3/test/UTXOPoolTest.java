@@ -0,0 +1,96 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class UTXOPoolTest {
+
+    @Test
+    public void CopyShouldNotSeeChangesMadeToTheOriginalAndViceVersa() throws Exception {
+        UTXO shared = new UTXO(new byte[]{1}, 0);
+        UTXO addedToOriginal = new UTXO(new byte[]{2}, 0);
+        UTXO addedToCopy = new UTXO(new byte[]{3}, 0);
+        Transaction.Output output = AnOutput(1);
+        UTXOPool original = new UTXOPool();
+        original.addUTXO(shared, output);
+
+        UTXOPool copy = new UTXOPool(original);
+        original.addUTXO(addedToOriginal, output);
+        copy.addUTXO(addedToCopy, output);
+        copy.removeUTXO(shared);
+
+        assertThat(original.contains(shared), equalTo(true));
+        assertThat(original.contains(addedToOriginal), equalTo(true));
+        assertThat(original.contains(addedToCopy), equalTo(false));
+        assertThat(copy.contains(shared), equalTo(false));
+        assertThat(copy.contains(addedToOriginal), equalTo(false));
+        assertThat(copy.contains(addedToCopy), equalTo(true));
+    }
+
+    @Test
+    public void ShouldTellApartUTXOsWithTheSameHashCode() throws Exception {
+        UTXO first = new UTXO(new byte[]{31}, 0);
+        UTXO second = new UTXO(new byte[]{0}, 1);
+        assertThat(first.hashCode(), equalTo(second.hashCode()));
+        UTXOPool pool = new UTXOPool();
+
+        pool.addUTXO(first, AnOutput(1));
+        pool.addUTXO(second, AnOutput(2));
+        UTXOPool copy = new UTXOPool(pool);
+        pool.removeUTXO(first);
+
+        assertThat(pool.getAllUTXO(), equalTo(new ArrayList<>(Arrays.asList(second))));
+        assertThat(pool.getTxOutput(second).value, equalTo(2.0));
+        assertThat(copy.size(), equalTo(2));
+        assertThat(copy.getTxOutput(first).value, equalTo(1.0));
+    }
+
+    @Test
+    public void ShouldBehaveLikeAMapThroughRandomChangesToPoolsAndTheirCopies() throws Exception {
+        Random random = new Random(42);
+        List<UTXOPool> pools = new ArrayList<>();
+        List<HashMap<UTXO, Transaction.Output>> expected = new ArrayList<>();
+        pools.add(new UTXOPool());
+        expected.add(new HashMap<>());
+
+        for (int step = 0; step < 20000; step++) {
+            int which = random.nextInt(pools.size());
+            UTXOPool pool = pools.get(which);
+            HashMap<UTXO, Transaction.Output> map = expected.get(which);
+            UTXO utxo = new UTXO(new byte[]{(byte) random.nextInt(64)}, random.nextInt(64));
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                Transaction.Output output = AnOutput(step);
+                pool.addUTXO(utxo, output);
+                map.put(utxo, output);
+            } else if (operation < 9) {
+                pool.removeUTXO(utxo);
+                map.remove(utxo);
+            } else if (pools.size() < 8) {
+                pools.add(new UTXOPool(pool));
+                expected.add(new HashMap<>(map));
+            }
+        }
+
+        for (int i = 0; i < pools.size(); i++) {
+            UTXOPool pool = pools.get(i);
+            HashMap<UTXO, Transaction.Output> map = expected.get(i);
+            assertThat(pool.size(), equalTo(map.size()));
+            assertThat(new HashSet<>(pool.getAllUTXO()), equalTo(map.keySet()));
+            for (UTXO utxo : map.keySet()) {
+                assertThat(pool.getTxOutput(utxo).value, equalTo(map.get(utxo).value));
+            }
+        }
+    }
+
+    private Transaction.Output AnOutput(double value) {
+        return new Transaction().new Output(value, null);
+    }
+}